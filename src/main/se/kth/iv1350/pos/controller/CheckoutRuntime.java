@@ -0,0 +1,259 @@
+package se.kth.iv1350.pos.controller;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Serves the command streams of many registers. The commands of one register are executed in the
+ * order they were submitted, one at a time, on the register's own session. Commands of different
+ * registers run at the same time.
+ *
+ * When the JVM supports virtual threads (Java 21 and later), each register's commands run on a
+ * virtual thread, so a register that waits for the inventory or discount database is parked and does
+ * not occupy a platform thread. The number of carrier threads is then bounded by the JVM, and can be
+ * set with the system property jdk.virtualThreadScheduler.parallelism. On older JVMs the registers
+ * share a fixed pool of platform threads instead.
+ *
+ * Submitting shares the read lock of a read-write lock, and close takes the write lock to stop
+ * accepting commands. A command is therefore either rejected, or queued on its lane before the
+ * executor is shut down. A lane task that finds new commands when it is done keeps running them
+ * instead of scheduling itself again, so a queued command never needs the executor after shutdown.
+ * close waits a bounded time for the queued commands. Those that are still queued when the time
+ * is up are completed exceptionally and never run, and only the sessions of lanes that are idle
+ * are closed, since a running command may still use its session.
+ */
+public final class CheckoutRuntime implements AutoCloseable {
+    private static final int DEFAULT_PLATFORM_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Controller contr;
+    private final ExecutorService executor;
+    private final boolean usesVirtualThreads;
+    private final ConcurrentMap<Integer, Lane> lanes = new ConcurrentHashMap<>();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    /*
+     * Creates a new runtime for the registers of the specified controller.
+     *
+     * @param contr The controller that registers are connected to.
+     */
+    public CheckoutRuntime(Controller contr) {
+        this(contr, DEFAULT_PLATFORM_THREADS);
+    }
+
+    /*
+     * Creates a new runtime for the registers of the specified controller.
+     *
+     * @param contr The controller that registers are connected to.
+     * @param platformThreads The number of platform threads to use if virtual threads are not supported.
+     */
+    public CheckoutRuntime(Controller contr, int platformThreads) {
+        this.contr = contr;
+        ExecutorService virtualThreadExecutor = createVirtualThreadExecutor();
+        this.usesVirtualThreads = virtualThreadExecutor != null;
+        this.executor = usesVirtualThreads ? virtualThreadExecutor : createPlatformThreadExecutor(platformThreads);
+    }
+
+    /*
+     * Submits a command from the specified register. The register's session is opened the first
+     * time it submits a command, unless the register already has an open session on the controller,
+     * which is then used.
+     *
+     * @param registerId The identifier of the register that sent the command.
+     * @param command The command to execute.
+     * @return A future that is completed when the command has been executed, or completed
+     *         exceptionally with the exception thrown by the command.
+     */
+    public CompletableFuture<Void> submit(int registerId, RegisterCommand command) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Lock submitLock = closeLock.readLock();
+        submitLock.lock();
+        try {
+            if (closed) {
+                result.completeExceptionally(new IllegalStateException("The checkout runtime is closed."));
+                return result;
+            }
+            Lane lane = lanes.computeIfAbsent(registerId, this::openLane);
+            lane.submit(new PendingCommand(command, result));
+        } finally {
+            submitLock.unlock();
+        }
+        return result;
+    }
+
+    /*
+     * Creates the lane of a register, on the register's open session if it has one. Only sessions
+     * opened here are closed by this runtime.
+     */
+    private Lane openLane(int registerId) {
+        while (true) {
+            RegisterSession existingSession = contr.getSession(registerId);
+            if (existingSession != null) {
+                return new Lane(existingSession, false);
+            }
+            try {
+                return new Lane(contr.openSession(registerId), true);
+            } catch (IllegalStateException e) {
+                // Another caller opened a session for the register in the meantime, use that one.
+            }
+        }
+    }
+
+    /*
+     * Checks if register commands are executed on virtual threads.
+     *
+     * @return true if virtual threads are used, false if a pool of platform threads is used.
+     */
+    public boolean usesVirtualThreads() {
+        return usesVirtualThreads;
+    }
+
+    /*
+     * Stops accepting commands, waits for submitted commands to finish and closes the register
+     * sessions this runtime opened. If the commands do not finish in time, the commands that have
+     * not started are completed exceptionally, and the sessions of lanes with a running command
+     * are left open.
+     */
+    @Override
+    public void close() {
+        close(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Package private to allow access from test files
+    void close(long timeout, TimeUnit unit) {
+        Lock stopLock = closeLock.writeLock();
+        stopLock.lock();
+        try {
+            closed = true;
+        } finally {
+            stopLock.unlock();
+        }
+        executor.shutdown();
+        boolean terminated = false;
+        try {
+            terminated = executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!terminated) {
+            System.err.println("Checkout runtime: register commands did not finish in time, commands that have not started are cancelled.");
+            IllegalStateException cause = new IllegalStateException("The checkout runtime was closed before the command was executed.");
+            for (Lane lane : lanes.values()) {
+                lane.failQueuedCommands(cause);
+            }
+        }
+        for (Lane lane : lanes.values()) {
+            if (lane.ownsSession && (terminated || !lane.scheduled.get())) {
+                lane.session.close();
+            }
+        }
+        lanes.clear();
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Virtual threads are not supported by this JVM.
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformThreadExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "checkout-lane");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class PendingCommand {
+        private final RegisterCommand command;
+        private final CompletableFuture<Void> result;
+
+        PendingCommand(RegisterCommand command, CompletableFuture<Void> result) {
+            this.command = command;
+            this.result = result;
+        }
+
+        void executeOn(RegisterSession session) {
+            try {
+                command.execute(session);
+                result.complete(null);
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /*
+     * The queue of commands from one register. At most one task per lane is running at any time,
+     * which keeps the commands of a register in order.
+     */
+    private final class Lane implements Runnable {
+        private final RegisterSession session;
+        private final boolean ownsSession;
+        private final Queue<PendingCommand> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Lane(RegisterSession session, boolean ownsSession) {
+            this.session = session;
+            this.ownsSession = ownsSession;
+        }
+
+        void submit(PendingCommand command) {
+            commands.add(command);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    failQueuedCommands(e);
+                }
+            }
+        }
+
+        /*
+         * A command that is added after the queue was found empty, but before scheduled was
+         * cleared, did not schedule the lane, so the queue is checked again after clearing it.
+         */
+        @Override
+        public void run() {
+            do {
+                try {
+                    PendingCommand command;
+                    while ((command = commands.poll()) != null) {
+                        command.executeOn(session);
+                    }
+                } finally {
+                    scheduled.set(false);
+                }
+            } while (!commands.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        private void failQueuedCommands(RuntimeException cause) {
+            PendingCommand command;
+            while ((command = commands.poll()) != null) {
+                command.result.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -6,26 +6,40 @@ import se.kth.iv1350.pos.integration.DiscountDatabase;
 import se.kth.iv1350.pos.integration.InventorySystem;
 import se.kth.iv1350.pos.integration.Printer;
 import se.kth.iv1350.pos.integration.ItemDTO;
+import se.kth.iv1350.pos.integration.ItemLookupResult;
 import se.kth.iv1350.pos.integration.ItemNotFoundException;
 import se.kth.iv1350.pos.model.Sale;
 import se.kth.iv1350.pos.model.SaleInfoDTO;
 import se.kth.iv1350.pos.integration.DiscountInfoDTO;
 import se.kth.iv1350.pos.model.Amount;
 import se.kth.iv1350.pos.model.ReceiptDTO;
+import se.kth.iv1350.pos.model.RevenueAggregator;
+import se.kth.iv1350.pos.model.SaleEventBus;
 import se.kth.iv1350.pos.model.SaleObserver; 
-import java.util.ArrayList; 
 import java.util.List; 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
 /*
  * This is the application's controller class. All calls to the model pass through here.
+ * The methods without a register session serve one checkout. Several checkouts can be served
+ * at the same time by opening one RegisterSession per register, they all share the integrations.
  */
 public class Controller {
-    private InventorySystem invSys;
-    private DiscountDatabase discDB;
-    private AccountingSystem accSys;
-    private Printer printer;
-    private List<SaleObserver> saleObservers = new ArrayList<>(); 
+    private final InventorySystem invSys;
+    private final DiscountDatabase discDB;
+    private final AccountingSystem accSys;
+    private final Printer printer;
+    private final PostPaymentPipeline postPayment;
+    private final SaleEventBus saleEvents = new SaleEventBus();
+    private final RevenueAggregator revenue = new RevenueAggregator();
+    private final ConcurrentMap<Integer, RegisterSession> sessions = new ConcurrentHashMap<>();
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    private boolean shutDown;
 
     // Package private to allow access from test files
     Sale sale;
@@ -40,10 +54,25 @@ public class Controller {
      */
     public Controller(InventorySystem invSys, DiscountDatabase discDB, 
                         AccountingSystem accSys, Printer printer) {
+        this(invSys, discDB, accSys, printer, new PostPaymentPipeline(printer, accSys, invSys));
+    }
+
+    /*
+     * Creates a controller that hands paid sales to the specified post-payment pipeline.
+     * 
+     * @param invSys The inventory system used for managing products
+     * @param discDB The discount database used for managing discounts
+     * @param accSys The accounting system used for managing transactions
+     * @param printer The printer used for printing receipts
+     * @param postPayment The pipeline that prints receipts and updates accounting and inventory
+     */
+    public Controller(InventorySystem invSys, DiscountDatabase discDB, 
+                        AccountingSystem accSys, Printer printer, PostPaymentPipeline postPayment) {
         this.invSys = invSys;
         this.discDB = discDB;
         this.accSys = accSys;
         this.printer = printer;
+        this.postPayment = postPayment;
     }
 
     /*
@@ -51,11 +80,14 @@ public class Controller {
      *   *cant register an item before a sale is started for example.*
      */
     public void startSale() {
-        sale = new Sale();
-        // Register observers with the new Sale instance
-        for (SaleObserver obs : saleObservers) {
-            sale.addSaleObserver(obs);
-        }
+        sale = createSale();
+    }
+
+    Sale createSale() {
+        Sale newSale = new Sale(discDB.getPromotions(), saleEvents);
+        // The revenue is updated before the payment is published, so sale observers can read it
+        newSale.addSaleObserver(revenue);
+        return newSale;
     }
 
     /*
@@ -64,38 +96,86 @@ public class Controller {
      * @param itemID The unique identifier of the item to enter.
      * @param quantity The quantity of the item to enter.
      * @throws ItemNotFoundException If the itemID does not correspond to a known item.
+     * @throws OperationFailedException If the item could not be retrieved because of a database error.
      */
     public void enterItem(int itemID, int quantity) throws ItemNotFoundException, OperationFailedException {
-        if (!isSaleStarted()) {
-            // System.err.println("Error: Sale has not been started. Cannot enter item.");
-            return;
+        enterItem(sale, itemID, quantity);
+    }
+
+    void enterItem(Sale sale, int itemID, int quantity) throws ItemNotFoundException, OperationFailedException {
+        EnterItemResult result = tryEnterItem(sale, itemID, quantity);
+        switch (result.getStatus()) {
+            case NOT_FOUND:
+                throw new ItemNotFoundException(itemID);
+            case OPERATION_FAILED:
+                ItemLookupResult lookup = result.getLookup();
+                DatabaseFailureException cause = lookup.getFailureCause() instanceof DatabaseFailureException
+                    ? (DatabaseFailureException) lookup.getFailureCause()
+                    : new DatabaseFailureException(lookup.getFailureMessage());
+                throw new OperationFailedException("Operation failed due to a database error.", cause);
+            default:
+                break;
         }
+    }
 
-        if (!isValidQuantity(quantity, itemID)) {
-             // System.err.println("Error: Invalid quantity (" + quantity + ") for item ID " + itemID + ".");
-             return;
+    /*
+     * Enters an item into the current sale without throwing when the item is not found or the
+     * item database fails. Nothing is entered if no sale is started or the quantity is not positive.
+     *
+     * @param itemID The unique identifier of the item to enter.
+     * @param quantity The quantity of the item to enter.
+     * @return The outcome.
+     */
+    public EnterItemResult tryEnterItem(int itemID, int quantity) {
+        return tryEnterItem(sale, itemID, quantity);
+    }
+
+    EnterItemResult tryEnterItem(Sale sale, int itemID, int quantity) {
+        if (!isSaleStarted(sale)) {
+            return EnterItemResult.ignored();
         }
 
-        try {
-            ItemDTO itemInfo = invSys.getItemInfo(itemID);
+        if (!isValidQuantity(quantity, itemID)) {
+            return EnterItemResult.ignored();
+        }
 
-            sale.addItem(itemInfo, quantity);
-            // System.out.println("Successfully added " + quantity + " of item " + itemID); // For debugging
-        } catch (ItemNotFoundException e) {
-            throw e;
-        } catch (DatabaseFailureException e) {
-            throw new OperationFailedException("Operation failed due to a database error.", e);
+        ItemLookupResult lookup = invSys.lookupItem(itemID);
+        if (lookup.isFound()) {
+            sale.addItem(lookup.getItem(), quantity);
         }
+        return EnterItemResult.of(lookup);
+    }
+
+    /*
+     * Finds items by their description, for items that cannot be scanned.
+     *
+     * @param query The words to search for, each word may be the start of a longer word.
+     * @param limit The largest number of items to return.
+     * @return The matching items, best matches first.
+     */
+    public List<ItemDTO> searchItems(String query, int limit) {
+        return invSys.searchItems(query, limit);
     }
 
     /*
      * Requests a discount for the specified customer ID.
-     * Retrieves sale info, checks for discounts, and applies it to the sale.
+     * Retrieves sale info, checks for discounts, and applies it to the sale. An applied discount
+     * also covers items scanned later, so if only customer rules exist and this customer's discount
+     * is already applied, the discount database is not asked again.
      *
      * @param customerID The ID of the customer requesting the discount.
      */
     public void requestDiscount(int customerID) {
-        if (!isSaleStarted()) {
+        requestDiscount(sale, customerID);
+    }
+
+    void requestDiscount(Sale sale, int customerID) {
+        if (!isSaleStarted(sale)) {
+            return;
+        }
+
+        if (sale.isDiscountRequestedBy(customerID) && !discDB.getRules().hasCustomerIndependentRules()) {
+            // The customer's discount is already applied and follows every scanned item.
             return;
         }
 
@@ -103,7 +183,7 @@ public class Controller {
 
         DiscountInfoDTO discountInfo = discDB.getDiscount(customerID, saleInfo);
 
-        sale.applyDiscount(discountInfo);
+        sale.applyDiscount(customerID, discountInfo);
     }
 
     /*
@@ -111,7 +191,11 @@ public class Controller {
      * (Further steps like payment and receipt printing would follow).
      */
     public void endSale() {
-        if (!isSaleStarted()) {
+        endSale(sale);
+    }
+
+    void endSale(Sale sale) {
+        if (!isSaleStarted(sale)) {
             return;
         }
 
@@ -119,42 +203,56 @@ public class Controller {
     }
 
      /*
-     * Processes the payment received from the customer, generates and prints a receipt,
-     * and updates external systems (accounting, inventory).
-     * This method assumes endSale() has already been called.
+     * Processes the payment received from the customer and queues the receipt printing and
+     * the updates of external systems (accounting, inventory) in the post-payment pipeline.
+     * The method returns when the paid sale is queued, not when the external systems are updated.
+     * This method assumes endSale() has already been called. The sale is marked as paid, and its
+     * observers notified, only after the pipeline has accepted it, so a payment that is rejected
+     * after shutdown or because the pipeline could not journal it leaves the sale unpaid.
      * Corresponds to sequence diagram for makePayment.
      *
      * @param paidAmount The amount of money paid by the customer.
      */
     public void makePayment(Amount paidAmount) {
-        if (!isSaleStarted()) {
+        makePayment(sale, paidAmount);
+    }
+
+    void makePayment(Sale sale, Amount paidAmount) {
+        if (!isSaleStarted(sale)) {
             System.err.println("Controller: Sale has not been started. Cannot make payment.");
             return;
         }
-        if (!isSaleEnded()) {
+        if (!isSaleEnded(sale)) {
             System.err.println("Controller: Sale has not been ended. Cannot make payment.");
              return;
         }
 
+        Lock paymentLock = shutdownLock.readLock();
+        paymentLock.lock();
         try {
-            ReceiptDTO receiptData = sale.processPaymentAndGetReceiptDetails(paidAmount); 
-
-            printer.printReceipt(receiptData);
+            if (shutDown) {
+                System.err.println("Controller: The controller has been shut down. Cannot make payment.");
+                return;
+            }
+            ReceiptDTO receiptData = sale.createReceiptForPayment(paidAmount); 
 
             SaleInfoDTO saleInfoAccounting = sale.getSaleInfoForAccounting(); 
 
-            accSys.updateAccounting(saleInfoAccounting);
-
             SaleInfoDTO saleInfoInventory = sale.getSaleInfoForInventory(); 
 
-            invSys.updateInventory(saleInfoInventory);
+            postPayment.submit(receiptData, saleInfoAccounting, saleInfoInventory);
+            sale.completePayment(receiptData);
         } catch (IllegalArgumentException e) {
             System.err.println("Controller: Payment failed - " + e.getMessage());
             // In a real application, a more robust logging mechanism would be used.
+        } catch (IllegalStateException e) {
+            System.err.println("Controller: Payment could not be queued, the sale is not paid - " + e.getMessage());
+        } finally {
+            paymentLock.unlock();
         }
     }
 
-    private boolean isSaleStarted() {
+    private boolean isSaleStarted(Sale sale) {
         if (sale == null) {
             return false;
         }
@@ -168,7 +266,7 @@ public class Controller {
         return true;
     }
     
-    private boolean isSaleEnded() {
+    private boolean isSaleEnded(Sale sale) {
         if (sale.getFinalTotalWithTax() == null) {
             return false;
        }
@@ -176,13 +274,25 @@ public class Controller {
    }
 
     /**
-     * Adds a SaleObserver to be notified of completed sales.
+     * Adds a SaleObserver to be notified of completed sales. The observer is notified on a thread
+     * of its own, shortly after the payment, so a slow observer does not delay any payment.
      * @param observer The observer to add.
+     * @return The subscription of the observer, which is cancelled to remove the observer, or null if the observer is null.
      */
-    public void addSaleObserver(SaleObserver observer) {
+    public SaleEventBus.Subscription addSaleObserver(SaleObserver observer) {
         if (observer != null) {
-            this.saleObservers.add(observer);
+            return saleEvents.subscribe(observer);
         }
+        return null;
+    }
+
+    /*
+     * Gets the revenue of all sales paid through this controller, from all registers.
+     *
+     * @return The shared revenue aggregator.
+     */
+    public RevenueAggregator getRevenueAggregator() {
+        return revenue;
     }
 
     /*
@@ -191,12 +301,74 @@ public class Controller {
      * @return The change amount, or zero if sale is not available or change not calculated.
      */
     public Amount getChange() {
-        if (isSaleStarted()) {
+        return getChange(sale);
+    }
+
+    Amount getChange(Sale sale) {
+        if (isSaleStarted(sale)) {
             return sale.getChange();
         } else {
             return new Amount(0);
         }
     }
 
+    /*
+     * Shuts down the controller. Waits until all paid sales have been printed, sent to the
+     * accounting and inventory systems and seen by all sale observers. Is called when the
+     * application is shutting down. Payments in progress are completed first, later payments
+     * are rejected.
+     */
+    public void shutdown() {
+        Lock stopLock = shutdownLock.writeLock();
+        stopLock.lock();
+        try {
+            shutDown = true;
+        } finally {
+            stopLock.unlock();
+        }
+        postPayment.shutdown();
+        saleEvents.shutdown();
+    }
+
+    /*
+     * Opens a session for the specified register. Each session has its own sale, so
+     * several registers can be served at the same time by this controller.
+     *
+     * @param registerId The identifier of the register.
+     * @return The session, which is used for all calls made by the register.
+     * @throws IllegalStateException If the register already has an open session.
+     */
+    public RegisterSession openSession(int registerId) {
+        RegisterSession newSession = new RegisterSession(this, registerId);
+        RegisterSession existingSession = sessions.putIfAbsent(registerId, newSession);
+        if (existingSession != null) {
+            throw new IllegalStateException("Register " + registerId + " already has an open session.");
+        }
+        return newSession;
+    }
+
+    /*
+     * Gets the open session of the specified register.
+     *
+     * @param registerId The identifier of the register.
+     * @return The session, or null if the register has no open session.
+     */
+    public RegisterSession getSession(int registerId) {
+        return sessions.get(registerId);
+    }
+
+    /*
+     * Gets the number of registers that currently have an open session.
+     *
+     * @return The number of open sessions.
+     */
+    public int getOpenSessionCount() {
+        return sessions.size();
+    }
+
+    void closeSession(RegisterSession session) {
+        sessions.remove(session.getRegisterId(), session);
+    }
+
 }
 
@@ -0,0 +1,71 @@
+package se.kth.iv1350.pos.controller;
+
+import se.kth.iv1350.pos.integration.ItemLookupResult;
+
+/*
+ * The outcome of entering an item into a sale with Controller.tryEnterItem. The outcomes that are
+ * expected while scanning, an unknown item and an unreachable item database, are returned instead
+ * of thrown.
+ */
+public final class EnterItemResult {
+    /*
+     * The possible outcomes of entering an item.
+     */
+    public enum Status {
+        ADDED,
+        NOT_FOUND,
+        OPERATION_FAILED,
+        IGNORED
+    }
+
+    private static final EnterItemResult IGNORED = new EnterItemResult(Status.IGNORED, null);
+
+    private final Status status;
+    private final ItemLookupResult lookup;
+
+    private EnterItemResult(Status status, ItemLookupResult lookup) {
+        this.status = status;
+        this.lookup = lookup;
+    }
+
+    static EnterItemResult ignored() {
+        return IGNORED;
+    }
+
+    static EnterItemResult of(ItemLookupResult lookup) {
+        switch (lookup.getStatus()) {
+            case FOUND:
+                return new EnterItemResult(Status.ADDED, lookup);
+            case NOT_FOUND:
+                return new EnterItemResult(Status.NOT_FOUND, lookup);
+            default:
+                return new EnterItemResult(Status.OPERATION_FAILED, lookup);
+        }
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isAdded() {
+        return status == Status.ADDED;
+    }
+
+    /*
+     * Gets the item lookup that this result is based on.
+     *
+     * @return The lookup, or null if the item was ignored without being looked up.
+     */
+    public ItemLookupResult getLookup() {
+        return lookup;
+    }
+
+    /*
+     * Gets a description of why the item was not added.
+     *
+     * @return The message, or null if the item was added or ignored.
+     */
+    public String getFailureMessage() {
+        return lookup == null ? null : lookup.getFailureMessage();
+    }
+}
@@ -0,0 +1,310 @@
+package se.kth.iv1350.pos.controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.ReceiptDTO;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+
+/*
+ * An append-only file with the paid sales of a post-payment pipeline, so a paid sale that has not
+ * been processed by all stages is not lost if the application stops. A sale is written, and forced
+ * to the disk, before the pipeline accepts it. When a stage is done with a sale, that is written
+ * too, without forcing it, so a stage that finished just before a power failure may run again.
+ *
+ * Each line is one record, fields are separated by '|'. A queued sale is "Q|id|" followed by the
+ * receipt and the two sale infos, a finished stage is "D|id|stage". Descriptions are Base64
+ * encoded, so they can contain any character. A line that was only partly written when the
+ * application stopped belongs to a sale that was never accepted, and is ignored.
+ *
+ * When the file is opened, the unfinished sales are read and the file is rewritten with only those
+ * sales. The file is emptied when no sale is unfinished and it has grown beyond a limit.
+ */
+final class PostPaymentJournal {
+    static final int RECEIPT_STAGE = 0;
+    static final int ACCOUNTING_STAGE = 1;
+    static final int INVENTORY_STAGE = 2;
+    static final int STAGE_COUNT = 3;
+
+    private static final String QUEUED = "Q";
+    private static final String STAGE_DONE = "D";
+    private static final String FIELD_SEPARATOR = "|";
+    private static final String LINE_SEPARATOR = ";";
+    private static final String LINE_FIELD_SEPARATOR = ",";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final List<PendingSale> recoveredSales;
+    private final Map<Long, boolean[]> unfinishedSales = new LinkedHashMap<>();
+    private long nextSaleID;
+
+    private PostPaymentJournal(FileChannel channel, List<PendingSale> recoveredSales, long nextSaleID) {
+        this.channel = channel;
+        this.recoveredSales = recoveredSales;
+        this.nextSaleID = nextSaleID;
+        for (PendingSale sale : recoveredSales) {
+            unfinishedSales.put(sale.saleID, sale.stagesDone);
+        }
+    }
+
+    /*
+     * Opens the journal in the specified file, which is created if it does not exist.
+     *
+     * @param journalFile The file to use.
+     * @return The opened journal.
+     * @throws UncheckedIOException If the file could not be read or written.
+     */
+    static PostPaymentJournal open(Path journalFile) {
+        try {
+            Map<Long, PendingSale> sales = new LinkedHashMap<>();
+            long nextSaleID = 1;
+            if (Files.exists(journalFile)) {
+                for (String record : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                    try {
+                        nextSaleID = Math.max(nextSaleID, readRecord(record, sales) + 1);
+                    } catch (RuntimeException e) {
+                        System.err.println("Ignoring a damaged record in the post-payment journal - " + record);
+                    }
+                }
+            }
+            List<PendingSale> unfinished = new ArrayList<>();
+            for (PendingSale sale : sales.values()) {
+                if (!sale.isFinished()) {
+                    unfinished.add(sale);
+                }
+            }
+            rewrite(journalFile, unfinished);
+            FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.APPEND);
+            return new PostPaymentJournal(channel, unfinished, nextSaleID);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The post-payment journal " + journalFile + " could not be opened.", e);
+        }
+    }
+
+    private static long readRecord(String record, Map<Long, PendingSale> sales) {
+        String[] fields = record.split("\\" + FIELD_SEPARATOR, -1);
+        long saleID = Long.parseLong(fields[1]);
+        if (fields[0].equals(QUEUED)) {
+            ReceiptDTO receipt = new ReceiptDTO(LocalDateTime.parse(fields[2]), decodeLines(fields[6]), decodeAmount(fields[3]),
+                                                decodeAmount(fields[4]), decodeAmount(fields[5]));
+            sales.put(saleID, new PendingSale(saleID, receipt, decodeSaleInfo(fields, 7), decodeSaleInfo(fields, 11)));
+        } else if (fields[0].equals(STAGE_DONE)) {
+            PendingSale sale = sales.get(saleID);
+            if (sale != null) {
+                sale.stagesDone[Integer.parseInt(fields[2])] = true;
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown record type " + fields[0]);
+        }
+        return saleID;
+    }
+
+    private static void rewrite(Path journalFile, List<PendingSale> unfinished) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (PendingSale sale : unfinished) {
+            content.append(queuedRecord(sale.saleID, sale.receipt, sale.saleInfoAccounting, sale.saleInfoInventory));
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                if (sale.stagesDone[stage]) {
+                    content.append(stageDoneRecord(sale.saleID, stage));
+                }
+            }
+        }
+        Path temporaryFile = journalFile.resolveSibling(journalFile.getFileName() + TEMPORARY_SUFFIX);
+        Files.writeString(temporaryFile, content, StandardCharsets.UTF_8);
+        Files.move(temporaryFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * Gets the sales that were not finished when the journal was last used, in the order they were paid.
+     *
+     * @return The unfinished sales.
+     */
+    List<PendingSale> getRecoveredSales() {
+        return recoveredSales;
+    }
+
+    /*
+     * Writes a paid sale to the journal and forces it to the disk.
+     *
+     * @return The identifier of the sale in the journal.
+     * @throws UncheckedIOException If the sale could not be written.
+     */
+    synchronized long append(ReceiptDTO receipt, SaleInfoDTO saleInfoAccounting, SaleInfoDTO saleInfoInventory) {
+        long saleID = nextSaleID++;
+        try {
+            write(queuedRecord(saleID, receipt, saleInfoAccounting, saleInfoInventory));
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The paid sale could not be written to the post-payment journal.", e);
+        }
+        unfinishedSales.put(saleID, new boolean[STAGE_COUNT]);
+        return saleID;
+    }
+
+    /*
+     * Writes that a stage is done with a sale. When no sale is unfinished, a large journal is emptied.
+     *
+     * @throws UncheckedIOException If the record could not be written.
+     */
+    synchronized void stageDone(long saleID, int stage) {
+        try {
+            write(stageDoneRecord(saleID, stage));
+            boolean[] stagesDone = unfinishedSales.get(saleID);
+            if (stagesDone == null) {
+                return;
+            }
+            stagesDone[stage] = true;
+            if (isFinished(stagesDone)) {
+                unfinishedSales.remove(saleID);
+                if (unfinishedSales.isEmpty() && channel.size() > COMPACT_THRESHOLD_BYTES) {
+                    channel.truncate(0);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("A finished stage could not be written to the post-payment journal.", e);
+        }
+    }
+
+    /*
+     * Closes the journal file. If no sale is unfinished, the file is emptied first.
+     */
+    synchronized void close() {
+        try {
+            if (unfinishedSales.isEmpty()) {
+                channel.truncate(0);
+            }
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("The post-payment journal could not be closed - " + e.getMessage());
+        }
+    }
+
+    private void write(String record) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private static String queuedRecord(long saleID, ReceiptDTO receipt, SaleInfoDTO saleInfoAccounting,
+                                       SaleInfoDTO saleInfoInventory) {
+        return String.join(FIELD_SEPARATOR, QUEUED, Long.toString(saleID), receipt.getDateTime().toString(),
+                           encodeAmount(receipt.getTotalAmount()), encodeAmount(receipt.getAmountPaid()),
+                           encodeAmount(receipt.getChange()), encodeLines(receipt.getItems()),
+                           encodeSaleInfo(saleInfoAccounting), encodeSaleInfo(saleInfoInventory)) + System.lineSeparator();
+    }
+
+    private static String stageDoneRecord(long saleID, int stage) {
+        return String.join(FIELD_SEPARATOR, STAGE_DONE, Long.toString(saleID), Integer.toString(stage)) + System.lineSeparator();
+    }
+
+    private static String encodeSaleInfo(SaleInfoDTO saleInfo) {
+        return String.join(FIELD_SEPARATOR, encodeAmount(saleInfo.getRunningTotal()), encodeAmount(saleInfo.getTotalBeforeDiscount()),
+                           encodeAmount(saleInfo.getTotalVAT()), encodeLines(saleInfo.getItems()));
+    }
+
+    private static SaleInfoDTO decodeSaleInfo(String[] fields, int first) {
+        return new SaleInfoDTO(decodeAmount(fields[first]), decodeAmount(fields[first + 1]), decodeLines(fields[first + 3]),
+                               decodeAmount(fields[first + 2]));
+    }
+
+    private static String encodeLines(List<SaleLineDTO> lines) {
+        List<String> encodedLines = new ArrayList<>(lines.size());
+        for (SaleLineDTO line : lines) {
+            String description = Base64.getEncoder().encodeToString(line.getDescription().getBytes(StandardCharsets.UTF_8));
+            encodedLines.add(String.join(LINE_FIELD_SEPARATOR, Integer.toString(line.getItemID()), description,
+                                         Integer.toString(line.getQuantity()), encodeAmount(line.getUnitPrice()),
+                                         Integer.toString(line.getTaxRate()), encodeAmount(line.getLineTotal())));
+        }
+        return String.join(LINE_SEPARATOR, encodedLines);
+    }
+
+    private static List<SaleLineDTO> decodeLines(String encodedLines) {
+        List<SaleLineDTO> lines = new ArrayList<>();
+        if (encodedLines.isEmpty()) {
+            return lines;
+        }
+        for (String encodedLine : encodedLines.split(LINE_SEPARATOR)) {
+            String[] fields = encodedLine.split(LINE_FIELD_SEPARATOR);
+            String description = new String(Base64.getDecoder().decode(fields[1]), StandardCharsets.UTF_8);
+            lines.add(new SaleLineDTO(Integer.parseInt(fields[0]), description, Integer.parseInt(fields[2]),
+                                      decodeAmount(fields[3]), Integer.parseInt(fields[4]), decodeAmount(fields[5])));
+        }
+        return lines;
+    }
+
+    private static String encodeAmount(Amount amount) {
+        return Long.toString(amount.getMinorUnits());
+    }
+
+    private static Amount decodeAmount(String encodedAmount) {
+        return Amount.ofMinorUnits(Long.parseLong(encodedAmount));
+    }
+
+    private static boolean isFinished(boolean[] stagesDone) {
+        for (boolean done : stagesDone) {
+            if (!done) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * A paid sale read from the journal, and the stages that were already done with it.
+     */
+    static final class PendingSale {
+        private final long saleID;
+        private final ReceiptDTO receipt;
+        private final SaleInfoDTO saleInfoAccounting;
+        private final SaleInfoDTO saleInfoInventory;
+        private final boolean[] stagesDone = new boolean[STAGE_COUNT];
+
+        private PendingSale(long saleID, ReceiptDTO receipt, SaleInfoDTO saleInfoAccounting, SaleInfoDTO saleInfoInventory) {
+            this.saleID = saleID;
+            this.receipt = receipt;
+            this.saleInfoAccounting = saleInfoAccounting;
+            this.saleInfoInventory = saleInfoInventory;
+        }
+
+        long getSaleID() {
+            return saleID;
+        }
+
+        ReceiptDTO getReceipt() {
+            return receipt;
+        }
+
+        SaleInfoDTO getSaleInfoAccounting() {
+            return saleInfoAccounting;
+        }
+
+        SaleInfoDTO getSaleInfoInventory() {
+            return saleInfoInventory;
+        }
+
+        boolean isStageDone(int stage) {
+            return stagesDone[stage];
+        }
+
+        private boolean isFinished() {
+            return PostPaymentJournal.isFinished(stagesDone);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package se.kth.iv1350.pos.controller;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import se.kth.iv1350.pos.integration.AccountingSystem;
+import se.kth.iv1350.pos.integration.InventorySystem;
+import se.kth.iv1350.pos.integration.Printer;
+import se.kth.iv1350.pos.model.ReceiptDTO;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+
+/*
+ * Performs the work that follows a payment, that is printing the receipt, updating the accounting
+ * system and updating the inventory system. Each of the three is a separate stage with its own
+ * queue and worker thread, so a paid sale only has to be queued before the register can start the
+ * next sale, and a slow external system only delays its own stage.
+ *
+ * A paid sale is queued in all three stages or in none of them. At most queueCapacity sales are in
+ * the pipeline at a time, a sale leaves it when all stages are done with it. The queues are kept in
+ * memory. If the pipeline has a journal, each sale is also written to the journal file, and forced
+ * to the disk, before submit returns, and the stages that had not finished a sale when the
+ * application stopped process it when the pipeline is created again. Without a journal, sales that
+ * are queued when the application crashes are lost. shutdown waits for all queued sales.
+ *
+ * The accounting stage retries failed updates. The receipt stage never retries, since a printer that
+ * fails halfway may already have printed the receipt, so a receipt is printed at most once. The
+ * inventory stage never retries either, since an update that fails after some stock levels were
+ * decreased would decrease them again.
+ */
+public class PostPaymentPipeline {
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 50;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private static final int RECEIPT_ATTEMPTS = 1;
+    private static final int INVENTORY_ATTEMPTS = 1;
+
+    private final Stage<ReceiptDTO> receiptStage;
+    private final Stage<SaleInfoDTO> accountingStage;
+    private final Stage<SaleInfoDTO> inventoryStage;
+    private final Semaphore freeCapacity;
+    private final PostPaymentJournal journal;
+    private final Object submitLock = new Object();
+    private boolean accepting = true;
+
+    /*
+     * Creates a new pipeline with default queue capacity and number of attempts.
+     *
+     * @param printer The printer used for printing receipts.
+     * @param accSys The accounting system that is updated with every paid sale.
+     * @param invSys The inventory system that is updated with every paid sale.
+     */
+    public PostPaymentPipeline(Printer printer, AccountingSystem accSys, InventorySystem invSys) {
+        this(printer, accSys, invSys, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /*
+     * Creates a new pipeline.
+     *
+     * @param printer The printer used for printing receipts.
+     * @param accSys The accounting system that is updated with every paid sale.
+     * @param invSys The inventory system that is updated with every paid sale.
+     * @param queueCapacity The number of paid sales the pipeline can hold before submit blocks.
+     * @param maxAttempts The number of times the accounting stage tries to process a sale before giving up.
+     */
+    public PostPaymentPipeline(Printer printer, AccountingSystem accSys, InventorySystem invSys,
+                               int queueCapacity, int maxAttempts) {
+        this(printer, accSys, invSys, queueCapacity, maxAttempts, null);
+    }
+
+    /*
+     * Creates a new pipeline that writes every paid sale to a journal file before accepting it.
+     * Sales that were not finished when the journal was last used are processed again by the
+     * stages that had not finished them.
+     *
+     * @param printer The printer used for printing receipts.
+     * @param accSys The accounting system that is updated with every paid sale.
+     * @param invSys The inventory system that is updated with every paid sale.
+     * @param journalFile The journal file, which is created if it does not exist.
+     * @throws UncheckedIOException If the journal file could not be read or written.
+     */
+    public PostPaymentPipeline(Printer printer, AccountingSystem accSys, InventorySystem invSys, Path journalFile) {
+        this(printer, accSys, invSys, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_ATTEMPTS, PostPaymentJournal.open(journalFile));
+    }
+
+    private PostPaymentPipeline(Printer printer, AccountingSystem accSys, InventorySystem invSys,
+                                int queueCapacity, int maxAttempts, PostPaymentJournal journal) {
+        this.freeCapacity = new Semaphore(queueCapacity);
+        this.journal = journal;
+        this.receiptStage = new Stage<>("receipt-printing", PostPaymentJournal.RECEIPT_STAGE, RECEIPT_ATTEMPTS,
+                                        printer::printReceipt);
+        this.accountingStage = new Stage<>("accounting-update", PostPaymentJournal.ACCOUNTING_STAGE, maxAttempts,
+                                           accSys::updateAccounting);
+        this.inventoryStage = new Stage<>("inventory-update", PostPaymentJournal.INVENTORY_STAGE, INVENTORY_ATTEMPTS,
+                                          invSys::updateInventory);
+        if (journal != null) {
+            resumeRecoveredSales();
+        }
+    }
+
+    /*
+     * Recovered sales do not take any capacity, they are queued before the pipeline accepts new sales.
+     */
+    private void resumeRecoveredSales() {
+        for (PostPaymentJournal.PendingSale recovered : journal.getRecoveredSales()) {
+            int stagesLeft = 0;
+            for (int stage = 0; stage < PostPaymentJournal.STAGE_COUNT; stage++) {
+                if (!recovered.isStageDone(stage)) {
+                    stagesLeft++;
+                }
+            }
+            PaidSale paidSale = new PaidSale(recovered.getSaleID(), stagesLeft, false);
+            if (!recovered.isStageDone(PostPaymentJournal.RECEIPT_STAGE)) {
+                receiptStage.submit(recovered.getReceipt(), paidSale);
+            }
+            if (!recovered.isStageDone(PostPaymentJournal.ACCOUNTING_STAGE)) {
+                accountingStage.submit(recovered.getSaleInfoAccounting(), paidSale);
+            }
+            if (!recovered.isStageDone(PostPaymentJournal.INVENTORY_STAGE)) {
+                inventoryStage.submit(recovered.getSaleInfoInventory(), paidSale);
+            }
+        }
+    }
+
+    /*
+     * Queues a paid sale in all stages. Returns as soon as the sale is queued, and written to the
+     * journal if the pipeline has one, which only waits if the pipeline is full. The sale is either
+     * queued in all stages or, if an exception is thrown, in none of them.
+     *
+     * @param receipt The receipt to print.
+     * @param saleInfoAccounting The sale information for the accounting system.
+     * @param saleInfoInventory The sale information for the inventory system.
+     * @throws IllegalStateException If the pipeline has been shut down, the thread was interrupted while waiting,
+     *                               or the sale could not be written to the journal.
+     */
+    public void submit(ReceiptDTO receipt, SaleInfoDTO saleInfoAccounting, SaleInfoDTO saleInfoInventory) {
+        try {
+            freeCapacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing the sale for post-payment processing.", e);
+        }
+        synchronized (submitLock) {
+            if (!accepting) {
+                freeCapacity.release();
+                throw new IllegalStateException("The post-payment pipeline has been shut down.");
+            }
+            long saleID = 0;
+            if (journal != null) {
+                try {
+                    saleID = journal.append(receipt, saleInfoAccounting, saleInfoInventory);
+                } catch (UncheckedIOException e) {
+                    freeCapacity.release();
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+            PaidSale paidSale = new PaidSale(saleID, PostPaymentJournal.STAGE_COUNT, true);
+            receiptStage.submit(receipt, paidSale);
+            accountingStage.submit(saleInfoAccounting, paidSale);
+            inventoryStage.submit(saleInfoInventory, paidSale);
+        }
+    }
+
+    /*
+     * Stops accepting sales and waits until all queued sales have been processed by all stages.
+     * A sale submitted after this method is called is rejected, it is never left in a queue.
+     */
+    public void shutdown() {
+        synchronized (submitLock) {
+            accepting = false;
+        }
+        receiptStage.shutdown();
+        accountingStage.shutdown();
+        inventoryStage.shutdown();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /*
+     * Gets the number of sales that could not be processed by some stage, even after retrying.
+     *
+     * @return The number of failed stage operations.
+     */
+    public long getFailedCount() {
+        return receiptStage.failed.get() + accountingStage.failed.get() + inventoryStage.failed.get();
+    }
+
+    /*
+     * Gets the number of stage operations that have been processed successfully.
+     *
+     * @return The number of successful stage operations.
+     */
+    public long getCompletedCount() {
+        return receiptStage.completed.get() + accountingStage.completed.get() + inventoryStage.completed.get();
+    }
+
+    /*
+     * The work performed by one stage for one paid sale.
+     */
+    @FunctionalInterface
+    interface StageAction<T> {
+        void process(T item) throws Exception;
+    }
+
+    /*
+     * A sale in the pipeline. The capacity it takes is freed when the last stage is done with it.
+     */
+    private final class PaidSale {
+        private final long saleID;
+        private final AtomicInteger stagesLeft;
+        private final boolean holdsCapacity;
+
+        PaidSale(long saleID, int stageCount, boolean holdsCapacity) {
+            this.saleID = saleID;
+            this.stagesLeft = new AtomicInteger(stageCount);
+            this.holdsCapacity = holdsCapacity;
+        }
+
+        void stageDone(int stage) {
+            if (journal != null) {
+                try {
+                    journal.stageDone(saleID, stage);
+                } catch (UncheckedIOException e) {
+                    System.err.println("Post-payment journal not updated, the stage may run again after a restart - " + e.getMessage());
+                }
+            }
+            if (stagesLeft.decrementAndGet() == 0 && holdsCapacity) {
+                freeCapacity.release();
+            }
+        }
+    }
+
+    /*
+     * One stage of the pipeline, with a queue and a worker thread that is started when the first
+     * sale is submitted. The queue does not need a bound of its own, the pipeline limits the number
+     * of sales in all stages.
+     */
+    private static final class Stage<T> {
+        private final String name;
+        private final int stage;
+        private final BlockingQueue<Job<T>> queue = new LinkedBlockingQueue<>();
+        private final int maxAttempts;
+        private final StageAction<T> action;
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private Thread worker;
+        private volatile boolean running = true;
+
+        Stage(String name, int stage, int maxAttempts, StageAction<T> action) {
+            this.name = name;
+            this.stage = stage;
+            this.maxAttempts = maxAttempts;
+            this.action = action;
+        }
+
+        // Is only called while the pipeline accepts sales, so the worker is still running
+        void submit(T item, PostPaymentPipeline.PaidSale paidSale) {
+            startWorkerIfNeeded();
+            queue.add(new Job<>(item, paidSale));
+        }
+
+        private synchronized void startWorkerIfNeeded() {
+            if (worker == null) {
+                worker = new Thread(this::processQueue, name);
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+
+        private void processQueue() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Job<T> job = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (job != null) {
+                        try {
+                            processWithRetries(job.item);
+                        } finally {
+                            job.paidSale.stageDone(stage);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void processWithRetries(T item) throws InterruptedException {
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                try {
+                    action.process(item);
+                    completed.incrementAndGet();
+                    return;
+                } catch (Exception e) {
+                    if (attempt == maxAttempts) {
+                        failed.incrementAndGet();
+                        System.err.println("Post-payment stage " + name + " failed after " + attempt + " attempts - " + e.getMessage());
+                        return;
+                    }
+                    Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+                }
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            Thread workerToJoin;
+            synchronized (this) {
+                workerToJoin = worker;
+            }
+            if (workerToJoin == null) {
+                return;
+            }
+            try {
+                workerToJoin.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Job<T> {
+        private final T item;
+        private final PostPaymentPipeline.PaidSale paidSale;
+
+        Job(T item, PostPaymentPipeline.PaidSale paidSale) {
+            this.item = item;
+            this.paidSale = paidSale;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package se.kth.iv1350.pos.controller;
+
+import se.kth.iv1350.pos.model.Amount;
+
+/*
+ * One command sent from a register, which is executed on the register's session by a CheckoutRuntime.
+ */
+@FunctionalInterface
+public interface RegisterCommand {
+
+    /*
+     * Executes this command.
+     *
+     * @param session The session of the register that sent the command.
+     * @throws Exception If the command fails, the exception is reported to the register.
+     */
+    void execute(RegisterSession session) throws Exception;
+
+    /*
+     * Creates a command that starts a new sale.
+     */
+    static RegisterCommand startSale() {
+        return RegisterSession::startSale;
+    }
+
+    /*
+     * Creates a command that enters an item into the sale.
+     *
+     * @param itemID The unique identifier of the item to enter.
+     * @param quantity The quantity of the item to enter.
+     */
+    static RegisterCommand enterItem(int itemID, int quantity) {
+        return session -> session.enterItem(itemID, quantity);
+    }
+
+    /*
+     * Creates a command that requests a discount for the specified customer.
+     *
+     * @param customerID The ID of the customer requesting the discount.
+     */
+    static RegisterCommand requestDiscount(int customerID) {
+        return session -> session.requestDiscount(customerID);
+    }
+
+    /*
+     * Creates a command that ends the sale.
+     */
+    static RegisterCommand endSale() {
+        return RegisterSession::endSale;
+    }
+
+    /*
+     * Creates a command that pays the sale.
+     *
+     * @param paidAmount The amount of money paid by the customer.
+     */
+    static RegisterCommand makePayment(Amount paidAmount) {
+        return session -> session.makePayment(paidAmount);
+    }
+}
@@ -0,0 +1,193 @@
+package se.kth.iv1350.pos.controller;
+
+import se.kth.iv1350.pos.integration.ItemNotFoundException;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.Sale;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * The connection between one register and the controller. Each session has its own sale,
+ * while the integrations are shared with all other sessions of the same controller.
+ * A session is created with Controller.openSession and is meant to be used by one register,
+ * calls to the same session are still serialized so that a sale is never changed concurrently.
+ * A lock is used instead of synchronized methods, so that a virtual thread that blocks in an
+ * integration call while holding it is parked instead of pinning its carrier thread.
+ */
+public final class RegisterSession {
+    private final Controller contr;
+    private final int registerId;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Sale sale;
+    private boolean closed;
+
+    RegisterSession(Controller contr, int registerId) {
+        this.contr = contr;
+        this.registerId = registerId;
+    }
+
+    /*
+     * Gets the identifier of the register that owns this session.
+     *
+     * @return The register identifier.
+     */
+    public int getRegisterId() {
+        return registerId;
+    }
+
+    /*
+     * Starts a new sale at this register.
+     *
+     * @throws IllegalStateException If the session is closed or the current sale has not been paid.
+     */
+    public void startSale() {
+        lock.lock();
+        try {
+            ensureOpen();
+            if (isSaleInProgress()) {
+                throw new IllegalStateException("Register " + registerId + " has a sale that is not paid yet.");
+            }
+            sale = contr.createSale();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Enters an item into the sale of this register.
+     *
+     * @param itemID The unique identifier of the item to enter.
+     * @param quantity The quantity of the item to enter.
+     * @throws ItemNotFoundException If the itemID does not correspond to a known item.
+     * @throws OperationFailedException If the item could not be retrieved because of a database error.
+     */
+    public void enterItem(int itemID, int quantity) throws ItemNotFoundException, OperationFailedException {
+        lock.lock();
+        try {
+            ensureOpen();
+            contr.enterItem(sale, itemID, quantity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Enters an item into the sale of this register without throwing when the item is not found
+     * or the item database fails.
+     *
+     * @param itemID The unique identifier of the item to enter.
+     * @param quantity The quantity of the item to enter.
+     * @return The outcome.
+     */
+    public EnterItemResult tryEnterItem(int itemID, int quantity) {
+        lock.lock();
+        try {
+            ensureOpen();
+            return contr.tryEnterItem(sale, itemID, quantity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Requests a discount for the specified customer on the sale of this register.
+     *
+     * @param customerID The ID of the customer requesting the discount.
+     */
+    public void requestDiscount(int customerID) {
+        lock.lock();
+        try {
+            ensureOpen();
+            contr.requestDiscount(sale, customerID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Ends the sale of this register, which calculates the final total.
+     */
+    public void endSale() {
+        lock.lock();
+        try {
+            ensureOpen();
+            contr.endSale(sale);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Processes the payment of the sale of this register.
+     *
+     * @param paidAmount The amount of money paid by the customer.
+     */
+    public void makePayment(Amount paidAmount) {
+        lock.lock();
+        try {
+            ensureOpen();
+            contr.makePayment(sale, paidAmount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Gets the change of the latest sale of this register.
+     *
+     * @return The change amount, or zero if no sale is available.
+     */
+    public Amount getChange() {
+        lock.lock();
+        try {
+            return contr.getChange(sale);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Checks if this register has a sale that has been started but not paid.
+     *
+     * @return true if there is an unpaid sale, false otherwise.
+     */
+    public boolean isSaleInProgress() {
+        lock.lock();
+        try {
+            return sale != null && !sale.isPaid();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Closes this session, which frees the register identifier so that a new session can be opened.
+     * An unpaid sale is discarded.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                contr.closeSession(this);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Package private to allow access from test files
+    Sale getSale() {
+        lock.lock();
+        try {
+            return sale;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The session of register " + registerId + " is closed.");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package se.kth.iv1350.pos.integration;
 
+import java.util.List;
 import se.kth.iv1350.pos.model.SaleInfoDTO; 
 
 /*
@@ -15,4 +16,18 @@ public class AccountingSystem {
     public void updateAccounting(SaleInfoDTO saleInfoAccounting) {
         // In a real system, this would record the transaction details.
     }
-}
\ No newline at end of file
+
+    /*
+     * Updates the external accounting system with details of several completed sales.
+     * All sales in the batch are recorded in one call, which a real ledger would commit
+     * as one transaction. This implementation records the sales one at a time with
+     * updateAccounting, so a subclass that only overrides updateAccounting still sees every sale.
+     *
+     * @param salesInfoAccounting DTOs containing financial information about the sales, in the order they were paid.
+     */
+    public void updateAccountingBatch(List<SaleInfoDTO> salesInfoAccounting) {
+        for (SaleInfoDTO saleInfoAccounting : salesInfoAccounting) {
+            updateAccounting(saleInfoAccounting);
+        }
+    }
+}
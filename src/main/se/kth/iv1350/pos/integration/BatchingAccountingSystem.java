@@ -0,0 +1,146 @@
+package se.kth.iv1350.pos.integration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+
+/*
+ * Collects completed sales and sends them to the accounting system in batches, using
+ * updateAccountingBatch. A batch is sent when it reaches the maximum batch size, and all collected
+ * sales are also sent every time the maximum delay has passed, so no sale waits longer than that.
+ * If sending a batch fails, its sales are kept and sent with the next batch, so no sale is lost
+ * or recorded twice. This class is thread safe.
+ */
+public class BatchingAccountingSystem extends AccountingSystem {
+    private final AccountingSystem ledger;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService flushTimer;
+    private final Object flushLock = new Object();
+    private List<SaleInfoDTO> pendingSales;
+    private boolean closed;
+
+    /*
+     * Creates a new instance that sends batches to the specified accounting system.
+     *
+     * @param ledger The accounting system that receives the batches.
+     * @param maxBatchSize The number of sales that triggers sending a batch.
+     * @param maxDelay The longest time a sale waits before it is sent.
+     */
+    public BatchingAccountingSystem(AccountingSystem ledger, int maxBatchSize, Duration maxDelay) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("The maximum batch size must be at least one, was " + maxBatchSize + ".");
+        }
+        this.ledger = ledger;
+        this.maxBatchSize = maxBatchSize;
+        this.pendingSales = new ArrayList<>(maxBatchSize);
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "accounting-batch-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long delayMillis = Math.max(1, maxDelay.toMillis());
+        flushTimer.scheduleWithFixedDelay(this::flushQuietly, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Adds the completed sale to the current batch. The batch is sent if it is full.
+     *
+     * @param saleInfoAccounting A DTO containing financial information about the sale.
+     * @throws IllegalStateException If this instance has been closed.
+     */
+    @Override
+    public void updateAccounting(SaleInfoDTO saleInfoAccounting) {
+        boolean batchIsFull;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The batching accounting system has been closed.");
+            }
+            pendingSales.add(saleInfoAccounting);
+            batchIsFull = pendingSales.size() >= maxBatchSize;
+        }
+        if (batchIsFull) {
+            flushQuietly();
+        }
+    }
+
+    /*
+     * Adds all the completed sales to the current batch.
+     *
+     * @param salesInfoAccounting DTOs containing financial information about the sales.
+     */
+    @Override
+    public void updateAccountingBatch(List<SaleInfoDTO> salesInfoAccounting) {
+        for (SaleInfoDTO saleInfo : salesInfoAccounting) {
+            updateAccounting(saleInfo);
+        }
+    }
+
+    /*
+     * Sends all collected sales to the accounting system now.
+     *
+     * @throws RuntimeException If the accounting system fails, the sales are then kept for the next attempt.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<SaleInfoDTO> batch = takePendingSales();
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                ledger.updateAccountingBatch(batch);
+            } catch (RuntimeException e) {
+                restorePendingSales(batch);
+                throw e;
+            }
+        }
+    }
+
+    /*
+     * Gets the number of sales that have been collected but not yet sent.
+     *
+     * @return The number of pending sales.
+     */
+    public synchronized int getPendingCount() {
+        return pendingSales.size();
+    }
+
+    /*
+     * Sends the remaining sales and stops the timer. Is called when the application is shutting down.
+     * If the remaining sales cannot be sent, the failure is logged and the sales are kept, so closing
+     * never hides an earlier failure or stops other resources from being closed.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flushTimer.shutdown();
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Accounting: " + getPendingCount() + " sales could not be sent when closing - " + e.getMessage());
+        }
+    }
+
+    private synchronized List<SaleInfoDTO> takePendingSales() {
+        List<SaleInfoDTO> batch = pendingSales;
+        pendingSales = new ArrayList<>(maxBatchSize);
+        return batch;
+    }
+
+    private synchronized void restorePendingSales(List<SaleInfoDTO> failedBatch) {
+        failedBatch.addAll(pendingSales);
+        pendingSales = failedBatch;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Accounting batch could not be sent, it will be retried - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package se.kth.iv1350.pos.integration;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/*
+ * A bounded read-through cache in front of another item catalog, typically one that is reached over
+ * the network. Found items are cached until they are evicted. Item IDs that were not found are also
+ * cached, for a short time only, so repeated scans of the same unknown barcode do not reach the
+ * backing catalog. Lookups that fail with an exception are never cached.
+ *
+ * The cache is two-way set associative: an item ID can only be stored in one of two slots, chosen
+ * by its hash. When both are taken, the least recently used of the two is evicted. This keeps
+ * lookups free of locks and boxing, at the cost of evicting slightly earlier than a full LRU cache.
+ */
+public final class CachingItemCatalog implements ItemCatalog {
+    private static final int WAYS = 2;
+
+    private final ItemCatalog backingCatalog;
+    private final AtomicReferenceArray<Entry> slots;
+    private final int setMask;
+    private final long notFoundTtlNanos;
+    private final LongSupplier nanoClock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /*
+     * Creates a new cache in front of the specified catalog.
+     *
+     * @param backingCatalog The catalog that is read when an item is not in the cache.
+     * @param capacity The largest number of item IDs that can be cached, rounded up to a power of two.
+     * @param notFoundTtl For how long an item ID that was not found is cached.
+     */
+    public CachingItemCatalog(ItemCatalog backingCatalog, int capacity, Duration notFoundTtl) {
+        this(backingCatalog, capacity, notFoundTtl, System::nanoTime);
+    }
+
+    CachingItemCatalog(ItemCatalog backingCatalog, int capacity, Duration notFoundTtl, LongSupplier nanoClock) {
+        int sets = 1;
+        while (sets * WAYS < capacity) {
+            sets <<= 1;
+        }
+        this.backingCatalog = backingCatalog;
+        this.slots = new AtomicReferenceArray<>(sets * WAYS);
+        this.setMask = sets - 1;
+        this.notFoundTtlNanos = notFoundTtl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /*
+     * Finds the item in the cache, or in the backing catalog if it is not cached.
+     *
+     * @param itemID The unique identifier of the item.
+     * @return The item, or null if there is no item with the specified ID.
+     */
+    @Override
+    public ItemDTO findItem(int itemID) {
+        long now = nanoClock.getAsLong();
+        int firstSlot = firstSlotOf(itemID);
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = slots.get(firstSlot + way);
+            if (entry != null && entry.itemID == itemID && entry.isValidAt(now)) {
+                entry.lastUsedNanos = now;
+                hits.increment();
+                return entry.item;
+            }
+        }
+        misses.increment();
+        ItemDTO item = backingCatalog.findItem(itemID);
+        long expiresAtNanos = item == null ? now + notFoundTtlNanos : Entry.NEVER_EXPIRES;
+        store(firstSlot, new Entry(itemID, item, expiresAtNanos, now), now);
+        return item;
+    }
+
+    private void store(int firstSlot, Entry newEntry, long now) {
+        int victimSlot = firstSlot;
+        Entry victim = slots.get(firstSlot);
+        for (int way = 0; way < WAYS; way++) {
+            Entry candidate = slots.get(firstSlot + way);
+            if (candidate == null || candidate.itemID == newEntry.itemID || !candidate.isValidAt(now)) {
+                victimSlot = firstSlot + way;
+                victim = candidate;
+                break;
+            }
+            if (candidate.lastUsedNanos < victim.lastUsedNanos) {
+                victimSlot = firstSlot + way;
+                victim = candidate;
+            }
+        }
+        if (victim != null && victim.itemID != newEntry.itemID && victim.isValidAt(now)) {
+            evictions.increment();
+        }
+        slots.set(victimSlot, newEntry);
+    }
+
+    private int firstSlotOf(int itemID) {
+        int hash = itemID * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & setMask) * WAYS;
+    }
+
+    /*
+     * Removes all cached items and item IDs that were not found.
+     */
+    public void clear() {
+        for (int slot = 0; slot < slots.length(); slot++) {
+            slots.set(slot, null);
+        }
+    }
+
+    @Override
+    public int size() {
+        return backingCatalog.size();
+    }
+
+    @Override
+    public void forEachItem(Consumer<ItemDTO> consumer) {
+        backingCatalog.forEachItem(consumer);
+    }
+
+    /*
+     * Gets the number of lookups that were answered by the cache, including item IDs cached as not found.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /*
+     * Gets the number of lookups that had to read the backing catalog.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /*
+     * Gets the number of cached entries that were removed to make room for new ones.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /*
+     * One cached lookup result. The item is null if the item ID was not found.
+     */
+    private static final class Entry {
+        static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+        final int itemID;
+        final ItemDTO item;
+        final long expiresAtNanos;
+        volatile long lastUsedNanos;
+
+        Entry(int itemID, ItemDTO item, long expiresAtNanos, long lastUsedNanos) {
+            this.itemID = itemID;
+            this.item = item;
+            this.expiresAtNanos = expiresAtNanos;
+            this.lastUsedNanos = lastUsedNanos;
+        }
+
+        boolean isValidAt(long nowNanos) {
+            return expiresAtNanos == NEVER_EXPIRES || nowNanos - expiresAtNanos < 0;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package se.kth.iv1350.pos.integration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+import se.kth.iv1350.pos.util.StripedIntIntHashMap;
+
+/*
+ * Updates the inventory system write-behind. Instead of one write per sale, the sold quantities
+ * are summed per item over a flush window, and then sent as one stock decrease per item. Items
+ * that are sold in almost every sale are thereby written once per window instead of once per sale.
+ * Item lookups and the catalog and stock levels are passed directly to the inventory system, so
+ * a replaced catalog is seen at once. This class is thread safe.
+ */
+public class CoalescingInventorySystem extends InventorySystem {
+    private final InventorySystem inventory;
+    private final StripedIntIntHashMap pendingDecreases = new StripedIntIntHashMap();
+    private final ScheduledExecutorService flushTimer;
+    private final AtomicLong sentDecreaseCount = new AtomicLong();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    /*
+     * Creates a new instance that writes to the specified inventory system.
+     *
+     * @param inventory The inventory system that receives the summed stock decreases.
+     * @param flushWindow How often the summed stock decreases are sent.
+     */
+    public CoalescingInventorySystem(InventorySystem inventory, Duration flushWindow) {
+        super(inventory);
+        this.inventory = inventory;
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "inventory-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long windowMillis = Math.max(1, flushWindow.toMillis());
+        flushTimer.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Retrieves information about a specific item from the inventory system.
+     *
+     * @param itemID The unique identifier for the item to retrieve.
+     * @return An ItemDTO containing the item's information if found.
+     * @throws ItemNotFoundException If the itemID does not correspond to a known item.
+     */
+    @Override
+    public ItemDTO getItemInfo(int itemID) throws ItemNotFoundException {
+        return inventory.getItemInfo(itemID);
+    }
+
+    /*
+     * Looks up information about a specific item in the inventory system, without throwing.
+     *
+     * @param itemID The unique identifier for the item to retrieve.
+     * @return The result, which contains the item if it was found.
+     */
+    @Override
+    public ItemLookupResult lookupItem(int itemID) {
+        return inventory.lookupItem(itemID);
+    }
+
+    /*
+     * Finds the items whose description matches the specified query in the inventory system.
+     *
+     * @param query The words to search for.
+     * @param limit The largest number of items to return.
+     * @return The matching items, best matches first.
+     */
+    @Override
+    public List<ItemDTO> searchItems(String query, int limit) {
+        return inventory.searchItems(query, limit);
+    }
+
+    /*
+     * Gets the catalog of the inventory system.
+     *
+     * @return The item catalog.
+     */
+    @Override
+    public ItemCatalog getCatalog() {
+        return inventory.getCatalog();
+    }
+
+    /*
+     * Replaces the item catalog of the inventory system.
+     *
+     * @param newCatalog The catalog to use from now on.
+     */
+    @Override
+    public void replaceCatalog(ItemCatalog newCatalog) {
+        inventory.replaceCatalog(newCatalog);
+    }
+
+    /*
+     * Gets the stock levels of the inventory system. Pending stock decreases are not included.
+     *
+     * @return The stock levels.
+     */
+    @Override
+    public StockLevels getStockLevels() {
+        return inventory.getStockLevels();
+    }
+
+    /*
+     * Adds the sold quantities of the sale to the pending stock decreases. Nothing is sent to
+     * the inventory system until the next flush. All quantities of the sale are added, or none
+     * of them if this instance has been closed.
+     *
+     * @param saleInfoInventory A DTO containing information about the sold items.
+     * @throws IllegalStateException If this instance has been closed.
+     */
+    @Override
+    public void updateInventory(SaleInfoDTO saleInfoInventory) {
+        Lock updateLock = closeLock.readLock();
+        updateLock.lock();
+        try {
+            ensureOpen();
+            for (SaleLineDTO line : saleInfoInventory.getItems()) {
+                pendingDecreases.addTo(line.getItemID(), line.getQuantity());
+            }
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /*
+     * Adds the quantity to the pending stock decrease of the item.
+     *
+     * @param itemID The unique identifier of the item.
+     * @param quantity The number of units to remove from the stock.
+     * @throws IllegalStateException If this instance has been closed.
+     */
+    @Override
+    public void decreaseStock(int itemID, int quantity) {
+        Lock updateLock = closeLock.readLock();
+        updateLock.lock();
+        try {
+            ensureOpen();
+            pendingDecreases.addTo(itemID, quantity);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The coalescing inventory system has been closed.");
+        }
+    }
+
+    /*
+     * Sends the summed stock decrease of every item to the inventory system now. A decrease that
+     * fails is kept and sent with the next flush.
+     */
+    public void flush() {
+        pendingDecreases.drain(this::sendDecrease);
+    }
+
+    private void sendDecrease(int itemID, int quantity) {
+        try {
+            inventory.decreaseStock(itemID, quantity);
+            sentDecreaseCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            pendingDecreases.addTo(itemID, quantity);
+            System.err.println("Stock decrease for item " + itemID + " could not be sent, it will be retried - " + e.getMessage());
+        }
+    }
+
+    /*
+     * Gets the number of items that have a pending stock decrease.
+     *
+     * @return The number of items waiting for the next flush.
+     */
+    public int getPendingItemCount() {
+        return pendingDecreases.size();
+    }
+
+    /*
+     * Gets the number of stock decreases sent to the inventory system so far.
+     *
+     * @return The number of sent decreases.
+     */
+    public long getSentDecreaseCount() {
+        return sentDecreaseCount.get();
+    }
+
+    /*
+     * Sends the remaining stock decreases and stops the timer. Is called when the application is shutting down.
+     * Updates that are in progress finish before the final flush, and every later update is rejected,
+     * so no decrease is added after the final flush.
+     */
+    public void close() {
+        flushTimer.shutdown();
+        try {
+            flushTimer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Lock finalFlushLock = closeLock.writeLock();
+        finalFlushLock.lock();
+        try {
+            closed = true;
+            flush();
+        } finally {
+            finalFlushLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package se.kth.iv1350.pos.integration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import se.kth.iv1350.pos.util.IntIntHashMap;
+
+/*
+ * A search index over the descriptions of all items in a catalog, used to find items that have no
+ * label by name. Each description is split into lower case words, called tokens. The index keeps a
+ * sorted array of all distinct tokens, so every token starting with a prefix is found with two
+ * binary searches, and a posting list per token with the items whose description contains it.
+ * All posting lists are stored after each other in one int array, and an offset array tells where
+ * each list starts, so the number of items matching a prefix is known without reading any list.
+ *
+ * A query matches an item if every word of the query is the start of some token in the item's
+ * description. Items whose description contains a word of the query exactly are returned before
+ * items that only contain a longer word starting with it. The index is immutable after it has
+ * been built, so it can be searched by any number of threads.
+ */
+public final class DescriptionIndex {
+    private final ItemCatalog catalog;
+    private final ItemDTO[] items;
+    private final String[] tokens;
+    private final int[] postingOffsets;
+    private final int[] postings;
+    private final int[] itemTokenOffsets;
+    private final int[] itemTokens;
+
+    /*
+     * Builds an index over the descriptions of all items in the specified catalog.
+     *
+     * @param catalog The catalog to index.
+     */
+    public DescriptionIndex(ItemCatalog catalog) {
+        this.catalog = catalog;
+        List<ItemDTO> itemList = new ArrayList<>(catalog.size());
+        catalog.forEachItem(itemList::add);
+        this.items = itemList.toArray(new ItemDTO[0]);
+
+        String[][] tokensOfItem = new String[items.length][];
+        Map<String, int[]> postingCounts = new HashMap<>();
+        for (int item = 0; item < items.length; item++) {
+            tokensOfItem[item] = tokenize(items[item].getDescription());
+            for (String token : tokensOfItem[item]) {
+                postingCounts.computeIfAbsent(token, unused -> new int[1])[0]++;
+            }
+        }
+
+        this.tokens = postingCounts.keySet().toArray(new String[0]);
+        Arrays.sort(tokens);
+        this.postingOffsets = new int[tokens.length + 1];
+        for (int token = 0; token < tokens.length; token++) {
+            postingOffsets[token + 1] = postingOffsets[token] + postingCounts.get(tokens[token])[0];
+        }
+        this.postings = new int[postingOffsets[tokens.length]];
+        this.itemTokenOffsets = new int[items.length + 1];
+        this.itemTokens = new int[postings.length];
+        int[] nextPosting = Arrays.copyOf(postingOffsets, tokens.length);
+        for (int item = 0; item < items.length; item++) {
+            int[] tokenIDs = new int[tokensOfItem[item].length];
+            for (int i = 0; i < tokenIDs.length; i++) {
+                tokenIDs[i] = Arrays.binarySearch(tokens, tokensOfItem[item][i]);
+                postings[nextPosting[tokenIDs[i]]++] = item;
+            }
+            Arrays.sort(tokenIDs);
+            System.arraycopy(tokenIDs, 0, itemTokens, itemTokenOffsets[item], tokenIDs.length);
+            itemTokenOffsets[item + 1] = itemTokenOffsets[item] + tokenIDs.length;
+        }
+    }
+
+    /*
+     * Splits a text into distinct lower case tokens of letters and digits.
+     */
+    static String[] tokenize(String text) {
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        List<String> found = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= lowerCaseText.length(); i++) {
+            boolean partOfToken = i < lowerCaseText.length() && Character.isLetterOrDigit(lowerCaseText.charAt(i));
+            if (partOfToken && start < 0) {
+                start = i;
+            } else if (!partOfToken && start >= 0) {
+                String token = lowerCaseText.substring(start, i);
+                if (!found.contains(token)) {
+                    found.add(token);
+                }
+                start = -1;
+            }
+        }
+        return found.toArray(new String[0]);
+    }
+
+    /*
+     * Finds the items whose description matches the specified query.
+     *
+     * @param query The words to search for, typically what the cashier has typed so far.
+     * @param limit The largest number of items to return.
+     * @return The matching items, best matches first. The list is empty if the query contains no words.
+     */
+    public List<ItemDTO> search(String query, int limit) {
+        String[] queryTokens = tokenize(query);
+        List<ItemDTO> matches = new ArrayList<>(Math.min(limit, 16));
+        if (queryTokens.length == 0 || limit <= 0) {
+            return matches;
+        }
+
+        int[] rangeStarts = new int[queryTokens.length];
+        int[] rangeEnds = new int[queryTokens.length];
+        int driver = 0;
+        for (int i = 0; i < queryTokens.length; i++) {
+            rangeStarts[i] = firstTokenNotBefore(queryTokens[i]);
+            rangeEnds[i] = firstTokenNotBefore(queryTokens[i] + Character.MAX_VALUE);
+            if (rangeStarts[i] == rangeEnds[i]) {
+                return matches;
+            }
+            if (postingCount(rangeStarts[i], rangeEnds[i]) < postingCount(rangeStarts[driver], rangeEnds[driver])) {
+                driver = i;
+            }
+        }
+
+        IntIntHashMap returnedItems = new IntIntHashMap();
+        for (int token = rangeStarts[driver]; token < rangeEnds[driver]; token++) {
+            for (int posting = postingOffsets[token]; posting < postingOffsets[token + 1]; posting++) {
+                int item = postings[posting];
+                if (!returnedItems.containsKey(item) && matchesAll(item, rangeStarts, rangeEnds, driver)) {
+                    returnedItems.put(item, 0);
+                    matches.add(items[item]);
+                    if (matches.size() == limit) {
+                        return matches;
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /*
+     * Finds the items whose description matches the specified query by reading every item of the
+     * catalog, without an index. Is used while the index of the catalog is being built. Matches the
+     * same items as search, and also returns items that contain a word of the query exactly first,
+     * but the order within those two groups may differ from the order of search.
+     *
+     * @param catalog The catalog to search.
+     * @param query The words to search for.
+     * @param limit The largest number of items to return.
+     * @return The matching items, best matches first.
+     */
+    static List<ItemDTO> scan(ItemCatalog catalog, String query, int limit) {
+        String[] queryTokens = tokenize(query);
+        List<ItemDTO> exactMatches = new ArrayList<>();
+        List<ItemDTO> prefixMatches = new ArrayList<>();
+        if (queryTokens.length == 0 || limit <= 0) {
+            return exactMatches;
+        }
+        catalog.forEachItem(item -> {
+            if (exactMatches.size() == limit) {
+                return;
+            }
+            String[] descriptionTokens = tokenize(item.getDescription());
+            boolean containsExactWord = false;
+            for (String queryToken : queryTokens) {
+                boolean prefixFound = false;
+                for (String descriptionToken : descriptionTokens) {
+                    if (descriptionToken.equals(queryToken)) {
+                        containsExactWord = true;
+                        prefixFound = true;
+                        break;
+                    }
+                    prefixFound |= descriptionToken.startsWith(queryToken);
+                }
+                if (!prefixFound) {
+                    return;
+                }
+            }
+            if (containsExactWord) {
+                exactMatches.add(item);
+            } else if (prefixMatches.size() < limit) {
+                prefixMatches.add(item);
+            }
+        });
+        for (int i = 0; exactMatches.size() < limit && i < prefixMatches.size(); i++) {
+            exactMatches.add(prefixMatches.get(i));
+        }
+        return exactMatches;
+    }
+
+    private boolean matchesAll(int item, int[] rangeStarts, int[] rangeEnds, int driver) {
+        for (int i = 0; i < rangeStarts.length; i++) {
+            if (i != driver && !hasTokenInRange(item, rangeStarts[i], rangeEnds[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * The tokens of each item are sorted, so the first token not before rangeStart tells if the
+     * item has any token in the range.
+     */
+    private boolean hasTokenInRange(int item, int rangeStart, int rangeEnd) {
+        int position = Arrays.binarySearch(itemTokens, itemTokenOffsets[item], itemTokenOffsets[item + 1], rangeStart);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        return position < itemTokenOffsets[item + 1] && itemTokens[position] < rangeEnd;
+    }
+
+    private int firstTokenNotBefore(String token) {
+        int position = Arrays.binarySearch(tokens, token);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private int postingCount(int rangeStart, int rangeEnd) {
+        return postingOffsets[rangeEnd] - postingOffsets[rangeStart];
+    }
+
+    /*
+     * Gets the catalog this index was built from.
+     *
+     * @return The indexed catalog.
+     */
+    public ItemCatalog getCatalog() {
+        return catalog;
+    }
+
+    /*
+     * Gets the number of distinct tokens in the index.
+     *
+     * @return The number of tokens.
+     */
+    public int getTokenCount() {
+        return tokens.length;
+    }
+}
@@ -3,7 +3,44 @@ package se.kth.iv1350.pos.integration;
 import se.kth.iv1350.pos.model.SaleInfoDTO;
 import se.kth.iv1350.pos.model.Amount; 
 
+/*
+ * Represents the external discount database. The discounts are given by compiled discount rules.
+ * When several rules apply to a sale, the discounts are not added, the largest one is given.
+ * The database also holds the promotions, such as "3 for 2", that are applied to the items of every sale.
+ * The rules and the promotions can be replaced while the database is in use.
+ */
 public class DiscountDatabase {
+    private volatile DiscountRules rules;
+    private volatile PromotionRules promotions;
+
+    /*
+     * Creates a new instance that uses the discount rules and promotions shipped with the application.
+     *
+     * @throws DatabaseFailureException If the rules or the promotions could not be loaded.
+     */
+    public DiscountDatabase() {
+        this(DiscountRules.loadDefault(), PromotionRules.loadDefault());
+    }
+
+    /*
+     * Creates a new instance that uses the specified discount rules and has no promotions.
+     *
+     * @param rules The compiled discount rules.
+     */
+    public DiscountDatabase(DiscountRules rules) {
+        this(rules, PromotionRules.NONE);
+    }
+
+    /*
+     * Creates a new instance that uses the specified discount rules and promotions.
+     *
+     * @param rules The compiled discount rules.
+     * @param promotions The promotions applied to the items of every sale.
+     */
+    public DiscountDatabase(DiscountRules rules, PromotionRules promotions) {
+        this.rules = rules;
+        this.promotions = promotions;
+    }
 
     /*
      * Retrieves discount information based on customer ID and current sale state.
@@ -13,13 +50,87 @@ public class DiscountDatabase {
      * @return A DiscountInfoDTO containing discount details, or null if no discount applies.
      */
     public DiscountInfoDTO getDiscount(int customerID, SaleInfoDTO saleInfo) {
-        
-        if (customerID == 1234) {
-            return new DiscountInfoDTO(new Amount(0), 10, "Percentage");
-        } else {
-            // No discount found for customer
-            return null; 
+        DiscountRules currentRules = getRules();
+        DiscountInfoDTO bestDiscount = getCustomerDiscount(customerID);
+        if (!currentRules.hasCustomerIndependentRules()) {
+            return bestDiscount;
+        }
+        // The discount already applied to the sale must not change which discount it gets
+        Amount totalBeforeTax = saleInfo.getTotalBeforeDiscount();
+        long bestValue = valueOf(bestDiscount, totalBeforeTax);
+
+        DiscountInfoDTO basketDiscount = currentRules.findBasketDiscount(totalBeforeTax);
+        long basketValue = valueOf(basketDiscount, totalBeforeTax);
+        if (basketValue > bestValue) {
+            bestDiscount = basketDiscount;
+            bestValue = basketValue;
+        }
+
+        long itemValue = currentRules.calculateItemDiscount(saleInfo);
+        if (itemValue > bestValue) {
+            bestDiscount = new DiscountInfoDTO(Amount.ofMinorUnits(itemValue), 0, DiscountType.AMOUNT);
         }
+        return bestDiscount;
     }
 
-}
\ No newline at end of file
+    /*
+     * Retrieves the discount the specified customer gets on every sale, regardless of what is bought.
+     *
+     * @param customerID The ID of the customer.
+     * @return The discount, or null if the customer has no discount of its own.
+     */
+    public DiscountInfoDTO getCustomerDiscount(int customerID) {
+        return rules.findCustomerDiscount(customerID);
+    }
+
+    /*
+     * The number of minor units the discount deducts from the specified total.
+     */
+    private static long valueOf(DiscountInfoDTO discount, Amount totalBeforeTax) {
+        if (discount == null) {
+            return 0;
+        }
+        switch (discount.getDiscountType()) {
+            case PERCENTAGE:
+                return totalBeforeTax.percentage(discount.getDiscountPercentage()).getMinorUnits();
+            default:
+                return Math.min(discount.getDiscountAmount().getMinorUnits(), totalBeforeTax.getMinorUnits());
+        }
+    }
+
+    /*
+     * Gets the discount rules that are currently used.
+     *
+     * @return The rules.
+     */
+    public DiscountRules getRules() {
+        return rules;
+    }
+
+    /*
+     * Replaces the discount rules. Lookups in progress finish with the old rules.
+     *
+     * @param newRules The rules to use from now on.
+     */
+    public void replaceRules(DiscountRules newRules) {
+        rules = newRules;
+    }
+
+    /*
+     * Gets the promotions that are currently used. A sale keeps the promotions it was started with.
+     *
+     * @return The promotions.
+     */
+    public PromotionRules getPromotions() {
+        return promotions;
+    }
+
+    /*
+     * Replaces the promotions. Sales that are already started keep the old promotions.
+     *
+     * @param newPromotions The promotions to use from now on.
+     */
+    public void replacePromotions(PromotionRules newPromotions) {
+        promotions = newPromotions;
+    }
+}
@@ -9,16 +9,16 @@ import se.kth.iv1350.pos.model.Amount;
 public final class DiscountInfoDTO {
     private final Amount discountAmount; 
     private final int discountPercentage;
-    private final String discountType; 
+    private final DiscountType discountType;
 
     /*
      * Creates a new instance representing discount details.
      *
      * @param discountAmount The fixed amount of the discount (if applicable).
      * @param discountPercentage The percentage of the discount (if applicable).
-     * @param discountType A string indicating the type of discount.
+     * @param discountType The kind of discount, which tells if the amount or the percentage is used.
      */
-    public DiscountInfoDTO(Amount discountAmount, int discountPercentage, String discountType) {
+    public DiscountInfoDTO(Amount discountAmount, int discountPercentage, DiscountType discountType) {
         this.discountAmount = discountAmount;
         this.discountPercentage = discountPercentage;
         this.discountType = discountType;
@@ -34,7 +34,7 @@ public final class DiscountInfoDTO {
         return discountPercentage;
     }
 
-    public String getDiscountType() {
+    public DiscountType getDiscountType() {
         return discountType;
     }
 }
\ No newline at end of file
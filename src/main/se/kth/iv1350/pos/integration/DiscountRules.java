@@ -0,0 +1,303 @@
+package se.kth.iv1350.pos.integration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+import se.kth.iv1350.pos.util.IntIntHashMap;
+
+/*
+ * The discount rules, compiled into tables that are indexed by what a rule applies to, so the time
+ * to evaluate a sale does not depend on the number of rules. There are three kinds of rules:
+ *  - Customer rules give a customer a discount on the whole sale. They are found with a hash
+ *    table lookup of the customer ID.
+ *  - Item rules give a discount on every sold unit of an item. They are found with one hash table
+ *    lookup per sale line.
+ *  - Basket rules give a discount on sales whose total before tax is at least a threshold. The
+ *    thresholds are sorted, so the best matching rule is found with a binary search.
+ * The rules are immutable after they have been compiled, so they can be read by any number of threads.
+ */
+public final class DiscountRules {
+    static final String DEFAULT_RULES_RESOURCE = "discount-rules.txt";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String FIELD_SEPARATOR = ";";
+    private static final int FIELD_COUNT = 4;
+    private static final int NO_RULE = -1;
+    private static final int MAX_PERCENTAGE = 100;
+
+    private final IntIntHashMap customerRuleByID;
+    private final DiscountInfoDTO[] customerDiscounts;
+    private final IntIntHashMap itemRuleByID;
+    private final DiscountType[] itemDiscountTypes;
+    private final long[] itemDiscountValues;
+    private final long[] basketThresholds;
+    private final DiscountInfoDTO[] basketDiscounts;
+
+    private DiscountRules(Builder builder) {
+        this.customerRuleByID = builder.customerRuleByID;
+        this.customerDiscounts = builder.customerDiscounts.toArray(new DiscountInfoDTO[0]);
+        this.itemRuleByID = builder.itemRuleByID;
+        this.itemDiscountTypes = builder.itemDiscountTypes.toArray(new DiscountType[0]);
+        this.itemDiscountValues = new long[builder.itemDiscountValues.size()];
+        for (int rule = 0; rule < itemDiscountValues.length; rule++) {
+            itemDiscountValues[rule] = builder.itemDiscountValues.get(rule);
+        }
+
+        Integer[] basketOrder = new Integer[builder.basketThresholds.size()];
+        for (int rule = 0; rule < basketOrder.length; rule++) {
+            basketOrder[rule] = rule;
+        }
+        Arrays.sort(basketOrder, (first, second) -> Long.compare(builder.basketThresholds.get(first), builder.basketThresholds.get(second)));
+        this.basketThresholds = new long[basketOrder.length];
+        this.basketDiscounts = new DiscountInfoDTO[basketOrder.length];
+        for (int position = 0; position < basketOrder.length; position++) {
+            basketThresholds[position] = builder.basketThresholds.get(basketOrder[position]);
+            basketDiscounts[position] = builder.basketDiscounts.get(basketOrder[position]);
+        }
+    }
+
+    /*
+     * Loads and compiles the rules in the specified text file. Each line contains one rule, written
+     * as kind;key;type;value where
+     *  - kind is customer, item or basket,
+     *  - key is the customer ID, the item ID or the smallest total before tax, respectively,
+     *  - type is PERCENTAGE or AMOUNT,
+     *  - value is the percentage or the amount. An item rule's amount is deducted per sold unit.
+     * Empty lines and lines starting with # are ignored. If several rules have the same kind and
+     * key, the last one is used.
+     *
+     * @param rulesFile The file to load.
+     * @return The compiled rules.
+     * @throws DatabaseFailureException If the file could not be read or contains an invalid line.
+     */
+    public static DiscountRules load(Path rulesFile) {
+        try (BufferedReader reader = Files.newBufferedReader(rulesFile, StandardCharsets.UTF_8)) {
+            return load(reader, rulesFile.toString());
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not read the discount rules " + rulesFile + ".", e);
+        }
+    }
+
+    /*
+     * Loads the rules that are shipped with the application.
+     *
+     * @return The compiled rules.
+     * @throws DatabaseFailureException If the rules could not be read.
+     */
+    public static DiscountRules loadDefault() {
+        InputStream rulesStream = DiscountRules.class.getResourceAsStream(DEFAULT_RULES_RESOURCE);
+        if (rulesStream == null) {
+            throw new DatabaseFailureException("The discount rules " + DEFAULT_RULES_RESOURCE + " could not be found.");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(rulesStream, StandardCharsets.UTF_8))) {
+            return load(reader, DEFAULT_RULES_RESOURCE);
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not read the discount rules " + DEFAULT_RULES_RESOURCE + ".", e);
+        }
+    }
+
+    /*
+     * Loads rules from the specified reader, see load(Path) for the format.
+     *
+     * @param reader The reader to load from.
+     * @param sourceName The name of the source, used in error messages.
+     * @return The compiled rules.
+     * @throws IOException If the reader fails.
+     * @throws DatabaseFailureException If a line is invalid.
+     */
+    static DiscountRules load(BufferedReader reader, String sourceName) throws IOException {
+        Builder builder = new Builder();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmedLine = line.trim();
+            if (trimmedLine.isEmpty() || trimmedLine.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            parseRule(builder, trimmedLine, sourceName, lineNumber);
+        }
+        return new DiscountRules(builder);
+    }
+
+    private static void parseRule(Builder builder, String line, String sourceName, int lineNumber) {
+        String[] fields = line.split(FIELD_SEPARATOR, FIELD_COUNT);
+        if (fields.length != FIELD_COUNT) {
+            throw invalidLine(sourceName, lineNumber, null);
+        }
+        try {
+            String kind = fields[0].trim().toLowerCase(Locale.ROOT);
+            String key = fields[1].trim();
+            DiscountType type = DiscountType.valueOf(fields[2].trim().toUpperCase(Locale.ROOT));
+            long value = parseValue(type, fields[3].trim());
+            switch (kind) {
+                case "customer":
+                    builder.addCustomerRule(Integer.parseInt(key), createDiscount(type, value));
+                    break;
+                case "item":
+                    builder.addItemRule(Integer.parseInt(key), type, value);
+                    break;
+                case "basket":
+                    builder.addBasketRule(HashedItemCatalog.parsePrice(key).getMinorUnits(), createDiscount(type, value));
+                    break;
+                default:
+                    throw invalidLine(sourceName, lineNumber, null);
+            }
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw invalidLine(sourceName, lineNumber, e);
+        }
+    }
+
+    private static long parseValue(DiscountType type, String value) {
+        if (type == DiscountType.AMOUNT) {
+            return HashedItemCatalog.parsePrice(value).getMinorUnits();
+        }
+        int percentage = Integer.parseInt(value);
+        if (percentage < 0 || percentage > MAX_PERCENTAGE) {
+            throw new IllegalArgumentException("A percentage must be between 0 and 100.");
+        }
+        return percentage;
+    }
+
+    private static DiscountInfoDTO createDiscount(DiscountType type, long value) {
+        if (type == DiscountType.AMOUNT) {
+            return new DiscountInfoDTO(Amount.ofMinorUnits(value), 0, type);
+        }
+        return new DiscountInfoDTO(new Amount(0), (int) value, type);
+    }
+
+    private static DatabaseFailureException invalidLine(String sourceName, int lineNumber, Exception cause) {
+        return new DatabaseFailureException("Invalid rule on line " + lineNumber + " of the discount rules " + sourceName + ".", cause);
+    }
+
+    /*
+     * Finds the discount the specified customer gets on every sale.
+     *
+     * @param customerID The ID of the customer.
+     * @return The discount, or null if the customer has no discount.
+     */
+    public DiscountInfoDTO findCustomerDiscount(int customerID) {
+        int rule = customerRuleByID.get(customerID, NO_RULE);
+        return rule == NO_RULE ? null : customerDiscounts[rule];
+    }
+
+    /*
+     * Calculates the sum of the discounts of all item rules that apply to the sold items.
+     * A discount is never larger than the line it applies to.
+     *
+     * @param saleInfo The sale.
+     * @return The total item discount in minor units, zero if no item rule applies.
+     */
+    public long calculateItemDiscount(SaleInfoDTO saleInfo) {
+        long discount = 0;
+        for (SaleLineDTO line : saleInfo.getItems()) {
+            int rule = itemRuleByID.get(line.getItemID(), NO_RULE);
+            if (rule == NO_RULE) {
+                continue;
+            }
+            long lineTotal = line.getLineTotal().getMinorUnits();
+            long lineDiscount = itemDiscountTypes[rule] == DiscountType.AMOUNT
+                ? itemDiscountValues[rule] * line.getQuantity()
+                : line.getLineTotal().percentage((int) itemDiscountValues[rule]).getMinorUnits();
+            discount += Math.min(lineDiscount, lineTotal);
+        }
+        return discount;
+    }
+
+    /*
+     * Finds the basket rule with the highest threshold that the specified total reaches.
+     *
+     * @param totalBeforeTax The total of the sale before tax.
+     * @return The discount, or null if no threshold is reached.
+     */
+    public DiscountInfoDTO findBasketDiscount(Amount totalBeforeTax) {
+        int position = Arrays.binarySearch(basketThresholds, totalBeforeTax.getMinorUnits());
+        int reachedRule = position >= 0 ? lastWithThreshold(position) : -position - 2;
+        return reachedRule < 0 ? null : basketDiscounts[reachedRule];
+    }
+
+    private int lastWithThreshold(int position) {
+        while (position + 1 < basketThresholds.length && basketThresholds[position + 1] == basketThresholds[position]) {
+            position++;
+        }
+        return position;
+    }
+
+    /*
+     * Passes the ID of every customer that has a customer rule to the specified consumer.
+     *
+     * @param consumer Receives the customer IDs.
+     */
+    public void forEachCustomerWithDiscount(IntConsumer consumer) {
+        customerRuleByID.forEach((customerID, rule) -> consumer.accept(customerID));
+    }
+
+    /*
+     * Checks if there are rules that can apply to a sale regardless of the customer.
+     *
+     * @return true if there is an item or basket rule, false otherwise.
+     */
+    public boolean hasCustomerIndependentRules() {
+        return itemDiscountTypes.length > 0 || basketDiscounts.length > 0;
+    }
+
+    /*
+     * Gets the total number of compiled rules.
+     *
+     * @return The number of rules.
+     */
+    public int getRuleCount() {
+        return customerDiscounts.length + itemDiscountTypes.length + basketDiscounts.length;
+    }
+
+    /*
+     * Collects the parsed rules. A later rule with the same key replaces an earlier one.
+     */
+    private static final class Builder {
+        private final IntIntHashMap customerRuleByID = new IntIntHashMap();
+        private final List<DiscountInfoDTO> customerDiscounts = new ArrayList<>();
+        private final IntIntHashMap itemRuleByID = new IntIntHashMap();
+        private final List<DiscountType> itemDiscountTypes = new ArrayList<>();
+        private final List<Long> itemDiscountValues = new ArrayList<>();
+        private final List<Long> basketThresholds = new ArrayList<>();
+        private final List<DiscountInfoDTO> basketDiscounts = new ArrayList<>();
+
+        void addCustomerRule(int customerID, DiscountInfoDTO discount) {
+            int rule = customerRuleByID.get(customerID, NO_RULE);
+            if (rule == NO_RULE) {
+                customerRuleByID.put(customerID, customerDiscounts.size());
+                customerDiscounts.add(discount);
+            } else {
+                customerDiscounts.set(rule, discount);
+            }
+        }
+
+        void addItemRule(int itemID, DiscountType type, long value) {
+            int rule = itemRuleByID.get(itemID, NO_RULE);
+            if (rule == NO_RULE) {
+                itemRuleByID.put(itemID, itemDiscountTypes.size());
+                itemDiscountTypes.add(type);
+                itemDiscountValues.add(value);
+            } else {
+                itemDiscountTypes.set(rule, type);
+                itemDiscountValues.set(rule, value);
+            }
+        }
+
+        void addBasketRule(long threshold, DiscountInfoDTO discount) {
+            basketThresholds.add(threshold);
+            basketDiscounts.add(discount);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package se.kth.iv1350.pos.integration;
+
+/*
+ * The kinds of discount that can be given on a sale.
+ */
+public enum DiscountType {
+    /*
+     * A percentage of the total before tax is deducted.
+     */
+    PERCENTAGE,
+
+    /*
+     * A fixed amount is deducted from the total before tax.
+     */
+    AMOUNT
+}
@@ -0,0 +1,213 @@
+package se.kth.iv1350.pos.integration;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import se.kth.iv1350.pos.util.IntBloomFilter;
+
+/*
+ * Answers customer discount lookups without asking the discount database when possible. Most
+ * customers have no discount of their own, so a Bloom filter over the customers that have one is
+ * checked first, and a customer that is certainly not in it gets no customer discount without a
+ * lookup. Customers that do have a discount are kept in a small cache. Rules that apply regardless
+ * of the customer, such as basket rules, are still evaluated for every sale.
+ *
+ * The filter and the cache are built for one version of the rules, and are rebuilt when the rules
+ * of the discount database are replaced. This class is thread safe.
+ */
+public class FilteredDiscountDatabase extends DiscountDatabase {
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final DiscountDatabase discountDatabase;
+    private final int cacheCapacity;
+    private final double falsePositiveRate;
+    private volatile Filter filter;
+    private final LongAdder filteredLookups = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder databaseLookups = new LongAdder();
+
+    /*
+     * Creates a new instance in front of the specified discount database, with a filter that
+     * wrongly lets through about one percent of the customers without a discount.
+     *
+     * @param discountDatabase The database that is asked when a customer might have a discount.
+     * @param cacheCapacity The largest number of customer discounts to cache, rounded up to a power of two.
+     */
+    public FilteredDiscountDatabase(DiscountDatabase discountDatabase, int cacheCapacity) {
+        this(discountDatabase, cacheCapacity, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /*
+     * Creates a new instance in front of the specified discount database.
+     *
+     * @param discountDatabase The database that is asked when a customer might have a discount.
+     * @param cacheCapacity The largest number of customer discounts to cache, rounded up to a power of two.
+     * @param falsePositiveRate The share of customers without a discount that are still looked up.
+     */
+    public FilteredDiscountDatabase(DiscountDatabase discountDatabase, int cacheCapacity, double falsePositiveRate) {
+        super(discountDatabase.getRules(), discountDatabase.getPromotions());
+        this.discountDatabase = discountDatabase;
+        this.cacheCapacity = cacheCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = buildFilter(discountDatabase.getRules());
+    }
+
+    /*
+     * Retrieves the discount the specified customer gets on every sale. The discount database is
+     * only asked if the customer might have a discount and it is not cached.
+     *
+     * @param customerID The ID of the customer.
+     * @return The discount, or null if the customer has no discount of its own.
+     */
+    @Override
+    public DiscountInfoDTO getCustomerDiscount(int customerID) {
+        Filter current = currentFilter();
+        if (!current.customersWithDiscount.mightContain(customerID)) {
+            filteredLookups.increment();
+            return null;
+        }
+        int slot = current.slotOf(customerID);
+        CachedDiscount cached = current.cache.get(slot);
+        if (cached != null && cached.customerID == customerID) {
+            cacheHits.increment();
+            return cached.discount;
+        }
+        databaseLookups.increment();
+        DiscountInfoDTO discount = discountDatabase.getCustomerDiscount(customerID);
+        if (discount != null) {
+            current.cache.set(slot, new CachedDiscount(customerID, discount));
+        }
+        return discount;
+    }
+
+    /*
+     * Gets the discount rules of the discount database.
+     *
+     * @return The rules.
+     */
+    @Override
+    public DiscountRules getRules() {
+        return discountDatabase.getRules();
+    }
+
+    /*
+     * Gets the promotions of the discount database.
+     *
+     * @return The promotions.
+     */
+    @Override
+    public PromotionRules getPromotions() {
+        return discountDatabase.getPromotions();
+    }
+
+    /*
+     * Replaces the promotions of the discount database.
+     *
+     * @param newPromotions The promotions to use from now on.
+     */
+    @Override
+    public void replacePromotions(PromotionRules newPromotions) {
+        discountDatabase.replacePromotions(newPromotions);
+    }
+
+    /*
+     * Replaces the rules of the discount database, and rebuilds the filter and the cache for them.
+     *
+     * @param newRules The rules to use from now on.
+     */
+    @Override
+    public void replaceRules(DiscountRules newRules) {
+        discountDatabase.replaceRules(newRules);
+        rebuildFilter(newRules);
+    }
+
+    /*
+     * The rules may also have been replaced directly in the discount database.
+     */
+    private Filter currentFilter() {
+        Filter current = filter;
+        DiscountRules currentRules = discountDatabase.getRules();
+        if (current.rules != currentRules) {
+            current = rebuildFilter(currentRules);
+        }
+        return current;
+    }
+
+    private synchronized Filter rebuildFilter(DiscountRules newRules) {
+        if (filter.rules != newRules) {
+            filter = buildFilter(newRules);
+        }
+        return filter;
+    }
+
+    private Filter buildFilter(DiscountRules newRules) {
+        int[] customerCount = {0};
+        newRules.forEachCustomerWithDiscount(customerID -> customerCount[0]++);
+        IntBloomFilter customersWithDiscount = new IntBloomFilter(customerCount[0], falsePositiveRate);
+        newRules.forEachCustomerWithDiscount(customersWithDiscount::add);
+        return new Filter(newRules, customersWithDiscount, cacheCapacity);
+    }
+
+    /*
+     * Gets the number of lookups that the filter answered without asking the discount database.
+     *
+     * @return The number of filtered lookups.
+     */
+    public long getFilteredLookupCount() {
+        return filteredLookups.sum();
+    }
+
+    /*
+     * Gets the number of lookups that were answered by the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    /*
+     * Gets the number of lookups that were sent to the discount database.
+     *
+     * @return The number of database lookups.
+     */
+    public long getDatabaseLookupCount() {
+        return databaseLookups.sum();
+    }
+
+    /*
+     * The Bloom filter and the cache for one version of the rules. The cache is direct mapped, a
+     * customer can only be stored in one slot, and replaces the customer that was there.
+     */
+    private static final class Filter {
+        private final DiscountRules rules;
+        private final IntBloomFilter customersWithDiscount;
+        private final AtomicReferenceArray<CachedDiscount> cache;
+        private final int slotMask;
+
+        Filter(DiscountRules rules, IntBloomFilter customersWithDiscount, int cacheCapacity) {
+            int slots = 1;
+            while (slots < cacheCapacity) {
+                slots <<= 1;
+            }
+            this.rules = rules;
+            this.customersWithDiscount = customersWithDiscount;
+            this.cache = new AtomicReferenceArray<>(slots);
+            this.slotMask = slots - 1;
+        }
+
+        int slotOf(int customerID) {
+            int hash = customerID * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & slotMask;
+        }
+    }
+
+    private static final class CachedDiscount {
+        private final int customerID;
+        private final DiscountInfoDTO discount;
+
+        CachedDiscount(int customerID, DiscountInfoDTO discount) {
+            this.customerID = customerID;
+            this.discount = discount;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package se.kth.iv1350.pos.integration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.util.IntIntHashMap;
+
+/*
+ * An item catalog that is kept in memory. The items are stored in an array, and an open addressing
+ * hash table with primitive int keys maps each item ID to its position in the array. A lookup is
+ * therefore constant time, and neither boxes the item ID nor creates any objects.
+ * The catalog is immutable after it has been created, so it can be read by any number of threads.
+ */
+public final class HashedItemCatalog implements ItemCatalog {
+    static final String DEFAULT_CATALOG_RESOURCE = "item-catalog.txt";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String FIELD_SEPARATOR = ";";
+    private static final int FIELD_COUNT = 4;
+    private static final int NOT_FOUND = -1;
+
+    private final ItemDTO[] items;
+    private final IntIntHashMap indexByItemID;
+
+    /*
+     * Creates a new catalog containing the specified items. If several items have the same ID,
+     * the last one is used.
+     *
+     * @param items The items of the catalog.
+     */
+    public HashedItemCatalog(List<ItemDTO> items) {
+        List<ItemDTO> uniqueItems = new ArrayList<>(items.size());
+        this.indexByItemID = new IntIntHashMap(items.size());
+        for (ItemDTO item : items) {
+            int existingIndex = indexByItemID.get(item.getItemID(), NOT_FOUND);
+            if (existingIndex == NOT_FOUND) {
+                indexByItemID.put(item.getItemID(), uniqueItems.size());
+                uniqueItems.add(item);
+            } else {
+                uniqueItems.set(existingIndex, item);
+            }
+        }
+        this.items = uniqueItems.toArray(new ItemDTO[0]);
+    }
+
+    /*
+     * Loads a catalog from the specified text file. Each line contains one item, written as
+     * itemID;price;tax;description, where the price excludes tax and the tax is in percent.
+     * Empty lines and lines starting with # are ignored.
+     *
+     * @param catalogFile The file to load.
+     * @return The loaded catalog.
+     * @throws DatabaseFailureException If the file could not be read or contains an invalid line.
+     */
+    public static HashedItemCatalog load(Path catalogFile) {
+        try (BufferedReader reader = Files.newBufferedReader(catalogFile, StandardCharsets.UTF_8)) {
+            return load(reader, catalogFile.toString());
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not read the item catalog " + catalogFile + ".", e);
+        }
+    }
+
+    /*
+     * Loads the catalog that is shipped with the application.
+     *
+     * @return The loaded catalog.
+     * @throws DatabaseFailureException If the catalog could not be read.
+     */
+    public static HashedItemCatalog loadDefault() {
+        InputStream catalogStream = HashedItemCatalog.class.getResourceAsStream(DEFAULT_CATALOG_RESOURCE);
+        if (catalogStream == null) {
+            throw new DatabaseFailureException("The item catalog " + DEFAULT_CATALOG_RESOURCE + " could not be found.");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(catalogStream, StandardCharsets.UTF_8))) {
+            return load(reader, DEFAULT_CATALOG_RESOURCE);
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not read the item catalog " + DEFAULT_CATALOG_RESOURCE + ".", e);
+        }
+    }
+
+    /*
+     * Loads a catalog from the specified reader, see load(Path) for the format.
+     *
+     * @param reader The reader to load from.
+     * @param sourceName The name of the source, used in error messages.
+     * @return The loaded catalog.
+     * @throws IOException If the reader fails.
+     * @throws DatabaseFailureException If a line is invalid.
+     */
+    static HashedItemCatalog load(BufferedReader reader, String sourceName) throws IOException {
+        List<ItemDTO> items = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmedLine = line.trim();
+            if (trimmedLine.isEmpty() || trimmedLine.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            items.add(parseItem(trimmedLine, sourceName, lineNumber));
+        }
+        return new HashedItemCatalog(items);
+    }
+
+    private static ItemDTO parseItem(String line, String sourceName, int lineNumber) {
+        String[] fields = line.split(FIELD_SEPARATOR, FIELD_COUNT);
+        if (fields.length != FIELD_COUNT) {
+            throw invalidLine(sourceName, lineNumber, null);
+        }
+        try {
+            int itemID = Integer.parseInt(fields[0].trim());
+            Amount price = parsePrice(fields[1].trim());
+            int tax = Integer.parseInt(fields[2].trim());
+            String description = fields[3].trim();
+            return new ItemDTO(itemID, price, tax, description);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw invalidLine(sourceName, lineNumber, e);
+        }
+    }
+
+    /*
+     * Parses a decimal price exactly, without going through a double.
+     */
+    static Amount parsePrice(String price) {
+        return Amount.ofMinorUnits(new BigDecimal(price).movePointRight(2).longValueExact());
+    }
+
+    private static DatabaseFailureException invalidLine(String sourceName, int lineNumber, Exception cause) {
+        return new DatabaseFailureException("Invalid item on line " + lineNumber + " of the item catalog " + sourceName + ".", cause);
+    }
+
+    @Override
+    public ItemDTO findItem(int itemID) {
+        int index = indexByItemID.get(itemID, NOT_FOUND);
+        return index == NOT_FOUND ? null : items[index];
+    }
+
+    @Override
+    public int size() {
+        return items.length;
+    }
+
+    @Override
+    public void forEachItem(Consumer<ItemDTO> consumer) {
+        for (ItemDTO item : items) {
+            consumer.accept(item);
+        }
+    }
+}
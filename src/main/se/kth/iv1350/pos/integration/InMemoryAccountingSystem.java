@@ -0,0 +1,54 @@
+package se.kth.iv1350.pos.integration;
+
+import java.util.ArrayList;
+import java.util.List;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+
+/*
+ * A local stand-in for the external accounting system, which keeps all recorded sales in memory.
+ * It is used to run and test the POS without a real ledger. This class is thread safe.
+ */
+public class InMemoryAccountingSystem extends AccountingSystem {
+    private final List<SaleInfoDTO> recordedSales = new ArrayList<>();
+    private int transactionCount;
+
+    /*
+     * Records one completed sale in its own transaction.
+     *
+     * @param saleInfoAccounting A DTO containing financial information about the sale.
+     */
+    @Override
+    public synchronized void updateAccounting(SaleInfoDTO saleInfoAccounting) {
+        recordedSales.add(saleInfoAccounting);
+        transactionCount++;
+    }
+
+    /*
+     * Records several completed sales in one transaction.
+     *
+     * @param salesInfoAccounting DTOs containing financial information about the sales.
+     */
+    @Override
+    public synchronized void updateAccountingBatch(List<SaleInfoDTO> salesInfoAccounting) {
+        recordedSales.addAll(salesInfoAccounting);
+        transactionCount++;
+    }
+
+    /*
+     * Gets all sales recorded so far, in the order they were recorded.
+     *
+     * @return A copy of the list of recorded sales.
+     */
+    public synchronized List<SaleInfoDTO> getRecordedSales() {
+        return new ArrayList<>(recordedSales);
+    }
+
+    /*
+     * Gets the number of transactions, that is calls to updateAccounting or updateAccountingBatch.
+     *
+     * @return The number of transactions.
+     */
+    public synchronized int getTransactionCount() {
+        return transactionCount;
+    }
+}
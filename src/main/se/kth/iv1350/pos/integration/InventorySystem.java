@@ -1,19 +1,79 @@
 package se.kth.iv1350.pos.integration;
 
-import se.kth.iv1350.pos.model.Amount;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import se.kth.iv1350.pos.model.SaleInfoDTO;
 
 /*
- * Represents the external inventory system. (Placeholder)
- * Contains methods for accessing item data.
+ * Represents the external inventory system.
+ * Contains methods for accessing item data, which is looked up in an item catalog.
+ * The catalog can be replaced while the system is in use. Lookups read the catalog through a
+ * volatile reference without locking, so a lookup in progress keeps using the catalog it started
+ * with, and the old catalog is garbage collected when no lookup uses it any more.
+ *
+ * The description index used by searchItems is not built when the instance is created, since
+ * most registers never search and the index reads every item of the catalog. The first search
+ * starts building it on a background thread, and searches read the whole catalog until it is ready.
  */
 public class InventorySystem {
 
     private static final int SIMULATED_DB_FAILURE_ITEM_ID = 666;
+    private static final long DEFAULT_INITIAL_STOCK = 100;
+    private static final int DEFAULT_LOW_STOCK_THRESHOLD = 10;
+
+    private volatile ItemCatalog catalog;
+    private volatile DescriptionIndex descriptionIndex;
+    private final AtomicReference<ItemCatalog> indexedCatalog = new AtomicReference<>();
+    private final StockLevels stockLevels;
+
+    /*
+     * Creates a new instance that uses the item catalog shipped with the application.
+     *
+     * @throws DatabaseFailureException If the item catalog could not be loaded.
+     */
+    public InventorySystem() {
+        this(HashedItemCatalog.loadDefault());
+    }
+
+    /*
+     * Creates a new instance that looks up items in the specified catalog. Every item
+     * starts with the same default stock level.
+     *
+     * @param catalog The catalog containing all items.
+     */
+    public InventorySystem(ItemCatalog catalog) {
+        this(catalog, new StockLevels(catalog, DEFAULT_INITIAL_STOCK, DEFAULT_LOW_STOCK_THRESHOLD));
+    }
+
+    /*
+     * Creates a new instance that looks up items in the specified catalog and keeps
+     * track of their stock in the specified stock levels.
+     *
+     * @param catalog The catalog containing all items.
+     * @param stockLevels The stock levels of the items.
+     */
+    public InventorySystem(ItemCatalog catalog, StockLevels stockLevels) {
+        this.catalog = catalog;
+        this.stockLevels = stockLevels;
+    }
+
+    /*
+     * Creates an instance for a subclass that passes its calls on to another inventory system.
+     * Nothing is read or copied from the other system, so the subclass must override every method
+     * that reads the catalog or the stock levels and call the other system instead.
+     *
+     * @param delegate The inventory system the subclass passes its calls on to.
+     */
+    protected InventorySystem(InventorySystem delegate) {
+        this.catalog = null;
+        this.stockLevels = null;
+    }
 
     /*
      * Retrieves information about a specific item.
-     * This simulates looking up an item ID and fetching its details.
+     * The item is looked up in the item catalog. This is a throwing adapter for lookupItem.
      *
      * @param itemID The unique identifier for the item to retrieve.
      * @return An ItemDTO containing the item's information if found.
@@ -21,34 +81,161 @@ public class InventorySystem {
      * @throws DatabaseFailureException If the itemID matches the hardcoded ID for simulating database failure.
      */
     public ItemDTO getItemInfo(int itemID) throws ItemNotFoundException {
+        ItemLookupResult result = lookupItem(itemID);
+        switch (result.getStatus()) {
+            case FOUND:
+                return result.getItem();
+            case NOT_FOUND:
+                throw new ItemNotFoundException(itemID);
+            default:
+                throw new DatabaseFailureException(result.getFailureMessage(), result.getFailureCause());
+        }
+    }
+
+    /*
+     * Looks up information about a specific item in the item catalog, without throwing
+     * when the item does not exist or the catalog cannot be read.
+     *
+     * @param itemID The unique identifier for the item to retrieve.
+     * @return The result, which contains the item if it was found.
+     */
+    public ItemLookupResult lookupItem(int itemID) {
         if (itemID == SIMULATED_DB_FAILURE_ITEM_ID) {
-            throw new DatabaseFailureException("Could not connect to the item database.");
+            return ItemLookupResult.backendFailure(itemID, "Could not connect to the item database.", null);
         }
 
-        if (itemID == 101) {
-            String description = "Coffee";
-            Amount price = new Amount(15.00);
-            int tax = 25; 
-            return new ItemDTO(itemID, price, tax, description);
+        ItemDTO item;
+        try {
+            item = catalog.findItem(itemID);
+        } catch (DatabaseFailureException e) {
+            return ItemLookupResult.backendFailure(itemID, e.getMessage(), e);
+        }
+        if (item == null) {
+            // Item not found in the inventory system.
+            return ItemLookupResult.notFound(itemID);
+        }
+        return ItemLookupResult.found(item);
+    }
 
-        } else if (itemID == 102) {
-            String description = "Croissant";
-            Amount price = new Amount(2.50);
-            int tax = 12; 
-            return new ItemDTO(itemID, price, tax, description);
+    /*
+     * Gets the catalog this inventory system looks items up in.
+     *
+     * @return The item catalog.
+     */
+    public ItemCatalog getCatalog() {
+        return catalog;
+    }
 
-        } else {
-            // Item not found in the inventory system.
-            throw new ItemNotFoundException(itemID);
+    /*
+     * Finds the items whose description matches the specified query, for items that have no label.
+     * The first search starts building the description index in the background. A search never
+     * waits for the index, it reads every item of the catalog while the index is not ready.
+     *
+     * @param query The words to search for, each word may be the start of a longer word.
+     * @param limit The largest number of items to return.
+     * @return The matching items, best matches first.
+     */
+    public List<ItemDTO> searchItems(String query, int limit) {
+        ItemCatalog currentCatalog = catalog;
+        DescriptionIndex index = descriptionIndex;
+        if (index != null && index.getCatalog() == currentCatalog) {
+            return index.search(query, limit);
         }
+        startIndexBuild(currentCatalog);
+        return DescriptionIndex.scan(currentCatalog, query, limit);
+    }
+
+    // Package private to allow access from test files
+    boolean isSearchIndexReady() {
+        DescriptionIndex index = descriptionIndex;
+        return index != null && index.getCatalog() == catalog;
+    }
+
+    private void startIndexBuild(ItemCatalog catalogToIndex) {
+        if (indexedCatalog.getAndSet(catalogToIndex) == catalogToIndex) {
+            return;
+        }
+        Thread builder = new Thread(() -> {
+            DescriptionIndex newIndex = new DescriptionIndex(catalogToIndex);
+            if (indexedCatalog.get() == catalogToIndex) {
+                descriptionIndex = newIndex;
+            }
+        }, "description-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /*
+     * Replaces the item catalog. Items that are new in the catalog get a stock level before the
+     * catalog is used, so every item that can be scanned is kept in stock. If searches have been
+     * made, the description index of the new catalog is built before it is installed, while searches
+     * keep using the old index.
+     *
+     * @param newCatalog The catalog to use from now on.
+     */
+    public synchronized void replaceCatalog(ItemCatalog newCatalog) {
+        DescriptionIndex newIndex = indexedCatalog.get() != null ? new DescriptionIndex(newCatalog) : null;
+        getStockLevels().addItems(newCatalog);
+        if (newIndex != null) {
+            indexedCatalog.set(newCatalog);
+            descriptionIndex = newIndex;
+        }
+        catalog = newCatalog;
+    }
+
+    /*
+     * Loads a new item catalog in a background thread and then replaces the current catalog with it.
+     * Lookups keep using the current catalog while the new one is loaded. If loading fails, the
+     * current catalog is kept.
+     *
+     * @param catalogLoader Loads the new catalog, for example HashedItemCatalog::loadDefault.
+     * @return Completes with the new catalog when it is in use, or exceptionally if loading failed.
+     */
+    public CompletableFuture<ItemCatalog> reloadCatalog(Supplier<? extends ItemCatalog> catalogLoader) {
+        return CompletableFuture.supplyAsync(() -> {
+            ItemCatalog newCatalog = catalogLoader.get();
+            replaceCatalog(newCatalog);
+            return newCatalog;
+        }, InventorySystem::startReloadThread);
+    }
+
+    private static void startReloadThread(Runnable reload) {
+        Thread thread = new Thread(reload, "catalog-reload");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /*
-     * Updates the external inventory system based on the completed sale.
-     * (Placeholder implementation)
+     * Gets the stock levels of all items.
+     *
+     * @return The stock levels.
+     */
+    public StockLevels getStockLevels() {
+        return stockLevels;
+    }
+
+    /*
+     * Updates the external inventory system based on the completed sale, by decreasing the
+     * stock of every sold item.
      *
      * @param saleInfoInventory A DTO containing information about the sold items.
      */
     public void updateInventory(SaleInfoDTO saleInfoInventory) {
+        stockLevels.decrease(saleInfoInventory);
+    }
+
+    /*
+     * Decreases the quantity in stock of one item. An item that is not kept in stock is skipped, and
+     * reported the first time.
+     *
+     * @param itemID The unique identifier of the item.
+     * @param quantity The number of units to remove from the stock.
+     */
+    public void decreaseStock(int itemID, int quantity) {
+        if (!stockLevels.isStocked(itemID)) {
+            stockLevels.reportNotStocked(itemID);
+            return;
+        }
+        stockLevels.decrease(itemID, quantity);
     }
 }
@@ -0,0 +1,32 @@
+package se.kth.iv1350.pos.integration;
+
+import java.util.function.Consumer;
+
+/*
+ * A collection of items that can be looked up by item ID. This is where InventorySystem finds
+ * the items it returns, no matter how or where the items are stored.
+ */
+public interface ItemCatalog {
+
+    /*
+     * Finds the item with the specified ID.
+     *
+     * @param itemID The unique identifier of the item.
+     * @return The item, or null if there is no item with the specified ID.
+     */
+    ItemDTO findItem(int itemID);
+
+    /*
+     * Gets the number of items in the catalog.
+     *
+     * @return The number of items.
+     */
+    int size();
+
+    /*
+     * Calls the specified consumer once for each item in the catalog, in no particular order.
+     *
+     * @param consumer The consumer that receives the items.
+     */
+    void forEachItem(Consumer<ItemDTO> consumer);
+}
@@ -0,0 +1,106 @@
+package se.kth.iv1350.pos.integration;
+
+/*
+ * The outcome of looking up an item in the inventory system. An item that is not found and a
+ * database that cannot be reached are both expected outcomes when scanning, so they are returned
+ * as results instead of being thrown. No exception, and therefore no stack trace, is created.
+ */
+public final class ItemLookupResult {
+    /*
+     * The possible outcomes of a lookup.
+     */
+    public enum Status {
+        FOUND,
+        NOT_FOUND,
+        BACKEND_FAILURE
+    }
+
+    private final Status status;
+    private final int itemID;
+    private final ItemDTO item;
+    private final String failureMessage;
+    private final Throwable failureCause;
+
+    private ItemLookupResult(Status status, int itemID, ItemDTO item, String failureMessage, Throwable failureCause) {
+        this.status = status;
+        this.itemID = itemID;
+        this.item = item;
+        this.failureMessage = failureMessage;
+        this.failureCause = failureCause;
+    }
+
+    /*
+     * Creates the result of a lookup that found the item.
+     *
+     * @param item The item that was found.
+     * @return The result.
+     */
+    public static ItemLookupResult found(ItemDTO item) {
+        return new ItemLookupResult(Status.FOUND, item.getItemID(), item, null, null);
+    }
+
+    /*
+     * Creates the result of a lookup of an item ID that does not exist.
+     *
+     * @param itemID The item ID that was not found.
+     * @return The result.
+     */
+    public static ItemLookupResult notFound(int itemID) {
+        return new ItemLookupResult(Status.NOT_FOUND, itemID, null, null, null);
+    }
+
+    /*
+     * Creates the result of a lookup that failed because the item database could not be used.
+     *
+     * @param itemID The item ID that was looked up.
+     * @param failureMessage Describes the failure.
+     * @param failureCause The exception that caused the failure, or null if there was none.
+     * @return The result.
+     */
+    public static ItemLookupResult backendFailure(int itemID, String failureMessage, Throwable failureCause) {
+        return new ItemLookupResult(Status.BACKEND_FAILURE, itemID, null, failureMessage, failureCause);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isFound() {
+        return status == Status.FOUND;
+    }
+
+    public int getItemID() {
+        return itemID;
+    }
+
+    /*
+     * Gets the item that was found.
+     *
+     * @return The item, or null if it was not found.
+     */
+    public ItemDTO getItem() {
+        return item;
+    }
+
+    /*
+     * Gets a description of why the item could not be returned. The message of a not found result
+     * is only created when it is asked for.
+     *
+     * @return The message, or null if the item was found.
+     */
+    public String getFailureMessage() {
+        if (status == Status.NOT_FOUND) {
+            return "Item with ID '" + itemID + "' was not found in the inventory system.";
+        }
+        return failureMessage;
+    }
+
+    /*
+     * Gets the exception that made the lookup fail.
+     *
+     * @return The exception, or null if the lookup did not fail or no exception was involved.
+     */
+    public Throwable getFailureCause() {
+        return failureCause;
+    }
+}
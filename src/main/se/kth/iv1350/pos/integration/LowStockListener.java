@@ -0,0 +1,17 @@
+package se.kth.iv1350.pos.integration;
+
+/**
+ * A listener interface for receiving notifications when the stock of an item runs low.
+ * Implementers are registered with {@link StockLevels#addLowStockListener}.
+ */
+public interface LowStockListener {
+    /**
+     * Invoked once each time the stock level of an item falls below its low-stock threshold.
+     * It is called by the thread that decreased the stock, so it should return quickly.
+     *
+     * @param itemID The item that is running low.
+     * @param stockLevel The stock level right after the decrease.
+     * @param threshold The low-stock threshold of the item.
+     */
+    void stockIsLow(int itemID, long stockLevel, int threshold);
+}
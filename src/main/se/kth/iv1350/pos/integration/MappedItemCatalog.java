@@ -0,0 +1,258 @@
+package se.kth.iv1350.pos.integration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import se.kth.iv1350.pos.model.Amount;
+
+/*
+ * An item catalog that is read directly from a memory-mapped binary file. Opening the catalog only
+ * maps the file, nothing is parsed, so a register is ready to scan immediately after startup. All
+ * processes that open the same file share the operating system's cached pages of it.
+ *
+ * The file starts with a header, followed by a hash table, the item records and a string pool:
+ *  - Header: magic number, format version, number of records, number of hash slots (four ints).
+ *  - Hash slots: one int per slot, the record number plus one, or zero for an empty slot.
+ *    Collisions are resolved with linear probing.
+ *  - Records: item ID (int), tax rate (int), price in minor units (long), description offset (int)
+ *    and description length (int), where the offset is relative to the start of the string pool.
+ *  - String pool: all descriptions encoded as UTF-8.
+ * ItemDTOs are only created when an item is looked up, and are then kept for later lookups.
+ * The catalog is immutable and can be read by any number of threads.
+ *
+ * The header is checked against the file size when the catalog is opened. Slots and records are
+ * only checked when they are read, since checking them all would parse the whole file. A slot or
+ * record that points outside its section is reported as a DatabaseFailureException.
+ */
+public final class MappedItemCatalog implements ItemCatalog {
+    private static final int MAGIC = 0x504F5343; // "POSC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int SLOT_SIZE = Integer.BYTES;
+    private static final int RECORD_SIZE = 4 * Integer.BYTES + Long.BYTES;
+    private static final int EMPTY_SLOT = 0;
+
+    private final MappedByteBuffer file;
+    private final int recordCount;
+    private final int slotCount;
+    private final int slotMask;
+    private final int recordsStart;
+    private final int stringPoolStart;
+    private final ItemDTO[] materializedItems;
+
+    private MappedItemCatalog(MappedByteBuffer file) {
+        this.file = file;
+        if (file.capacity() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new DatabaseFailureException("The file is not a binary item catalog.");
+        }
+        if (file.getInt(4) != FORMAT_VERSION) {
+            throw new DatabaseFailureException("Unsupported binary item catalog version " + file.getInt(4) + ".");
+        }
+        this.recordCount = file.getInt(8);
+        this.slotCount = file.getInt(12);
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || recordCount < 0 || recordCount >= slotCount) {
+            throw damaged("the header has " + recordCount + " records and " + slotCount + " hash slots");
+        }
+        long recordsEnd = HEADER_SIZE + (long) slotCount * SLOT_SIZE + (long) recordCount * RECORD_SIZE;
+        if (recordsEnd > file.capacity()) {
+            throw damaged("the header describes " + recordsEnd + " bytes but the file has " + file.capacity());
+        }
+        this.slotMask = slotCount - 1;
+        this.recordsStart = HEADER_SIZE + slotCount * SLOT_SIZE;
+        this.stringPoolStart = (int) recordsEnd;
+        this.materializedItems = new ItemDTO[recordCount];
+    }
+
+    /*
+     * Opens the specified binary catalog file by mapping it into memory.
+     *
+     * @param catalogFile The file to open, created by write.
+     * @return The opened catalog.
+     * @throws DatabaseFailureException If the file could not be mapped or is not a valid catalog.
+     */
+    public static MappedItemCatalog open(Path catalogFile) {
+        try (FileChannel channel = FileChannel.open(catalogFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new DatabaseFailureException("The binary item catalog " + catalogFile + " is too large.");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.BIG_ENDIAN);
+            return new MappedItemCatalog(mapped);
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not open the binary item catalog " + catalogFile + ".", e);
+        }
+    }
+
+    /*
+     * Writes all items of the specified catalog to a binary catalog file. The file is first written
+     * to a temporary file and then moved into place, so a register never maps a half written file.
+     *
+     * @param catalog The catalog to write.
+     * @param catalogFile The file to create or replace.
+     * @throws DatabaseFailureException If the file could not be written.
+     */
+    public static void write(ItemCatalog catalog, Path catalogFile) {
+        List<ItemDTO> items = new ArrayList<>(catalog.size());
+        catalog.forEachItem(items::add);
+        byte[][] descriptions = new byte[items.size()][];
+        int stringPoolSize = 0;
+        for (int i = 0; i < items.size(); i++) {
+            descriptions[i] = items.get(i).getDescription().getBytes(StandardCharsets.UTF_8);
+            stringPoolSize += descriptions[i].length;
+        }
+        int slotCount = slotCountFor(items.size());
+        long fileSize = (long) HEADER_SIZE + (long) slotCount * SLOT_SIZE + (long) items.size() * RECORD_SIZE + stringPoolSize;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new DatabaseFailureException("The item catalog is too large for a binary catalog file.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(items.size()).putInt(slotCount);
+        int slotMask = slotCount - 1;
+        for (int record = 0; record < items.size(); record++) {
+            int slot = mix(items.get(record).getItemID()) & slotMask;
+            while (buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE) != EMPTY_SLOT) {
+                slot = (slot + 1) & slotMask;
+            }
+            buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE, record + 1);
+        }
+        buffer.position(HEADER_SIZE + slotCount * SLOT_SIZE);
+        int descriptionOffset = 0;
+        for (int record = 0; record < items.size(); record++) {
+            ItemDTO item = items.get(record);
+            buffer.putInt(item.getItemID())
+                  .putInt((int) item.getTax())
+                  .putLong(item.getPrice().getMinorUnits())
+                  .putInt(descriptionOffset)
+                  .putInt(descriptions[record].length);
+            descriptionOffset += descriptions[record].length;
+        }
+        for (byte[] description : descriptions) {
+            buffer.put(description);
+        }
+
+        writeAtomically(buffer.array(), catalogFile);
+    }
+
+    private static void writeAtomically(byte[] content, Path catalogFile) {
+        Path absoluteFile = catalogFile.toAbsolutePath();
+        try {
+            Path temporaryFile = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporaryFile, content);
+                Files.move(temporaryFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not write the binary item catalog " + catalogFile + ".", e);
+        }
+    }
+
+    @Override
+    public ItemDTO findItem(int itemID) {
+        int slot = mix(itemID) & slotMask;
+        for (int probe = 0; probe < slotCount; probe++) {
+            int recordPlusOne = file.getInt(HEADER_SIZE + slot * SLOT_SIZE);
+            if (recordPlusOne == EMPTY_SLOT) {
+                return null;
+            }
+            if (recordPlusOne < 0 || recordPlusOne > recordCount) {
+                throw damaged("hash slot " + slot + " refers to record " + (recordPlusOne - 1));
+            }
+            int record = recordPlusOne - 1;
+            if (file.getInt(recordOffset(record)) == itemID) {
+                return itemAt(record);
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        throw damaged("the hash table has no empty slot");
+    }
+
+    @Override
+    public int size() {
+        return recordCount;
+    }
+
+    @Override
+    public void forEachItem(Consumer<ItemDTO> consumer) {
+        for (int record = 0; record < recordCount; record++) {
+            consumer.accept(itemAt(record));
+        }
+    }
+
+    // Package private to allow access from test files
+    int getMaterializedItemCount() {
+        int count = 0;
+        for (ItemDTO item : materializedItems) {
+            if (item != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Two threads may both create the ItemDTO of the same record, which is harmless since ItemDTO
+     * is immutable. All fields of ItemDTO are final, so a published ItemDTO is always complete.
+     */
+    private ItemDTO itemAt(int record) {
+        ItemDTO item = materializedItems[record];
+        if (item == null) {
+            item = readItem(record);
+            materializedItems[record] = item;
+        }
+        return item;
+    }
+
+    private ItemDTO readItem(int record) {
+        int offset = recordOffset(record);
+        int itemID = file.getInt(offset);
+        int tax = file.getInt(offset + 4);
+        long priceMinorUnits = file.getLong(offset + 8);
+        int descriptionOffset = file.getInt(offset + 16);
+        int descriptionLength = file.getInt(offset + 20);
+        if (descriptionOffset < 0 || descriptionLength < 0
+                || (long) stringPoolStart + descriptionOffset + descriptionLength > file.capacity()) {
+            throw damaged("the description of record " + record + " is outside the string pool");
+        }
+        byte[] description = new byte[descriptionLength];
+        file.get(stringPoolStart + descriptionOffset, description);
+        return new ItemDTO(itemID, Amount.ofMinorUnits(priceMinorUnits), tax,
+                           new String(description, StandardCharsets.UTF_8));
+    }
+
+    private static DatabaseFailureException damaged(String reason) {
+        return new DatabaseFailureException("The binary item catalog is damaged, " + reason + ".");
+    }
+
+    private int recordOffset(int record) {
+        return recordsStart + record * RECORD_SIZE;
+    }
+
+    private static int slotCountFor(int recordCount) {
+        int slotCount = 8;
+        while (slotCount < recordCount * 2) {
+            slotCount <<= 1;
+        }
+        return slotCount;
+    }
+
+    /*
+     * Part of the file format, it must not change without changing FORMAT_VERSION.
+     */
+    private static int mix(int itemID) {
+        int hash = itemID * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,21 +1,56 @@
 package se.kth.iv1350.pos.integration;
 
+import java.time.format.DateTimeFormatter;
 import se.kth.iv1350.pos.model.ReceiptDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
 
 /*
- * Represents the printer hardware.
+ * Represents the printer hardware. This is the only place where a receipt is turned into text.
  */
 public class Printer {
+    private static final DateTimeFormatter SALE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
     /*
-     * Prints the specified receipt data.
+     * Prints the specified receipt data. Receipts from different registers are never interleaved.
      *
      * @param receiptData The DTO containing all information for the receipt.
      */
-    public void printReceipt(ReceiptDTO receiptData) {
+    public synchronized void printReceipt(ReceiptDTO receiptData) {
         System.out.println("Printing receipt...");
         System.out.println("\n-------------------- RECEIPT START --------------------\n");
-        System.out.println(receiptData.toString());
+        System.out.println(formatReceipt(receiptData));
         System.out.println("-------------------- RECEIPT END ----------------------\n");
     }
-}
\ No newline at end of file
+
+    /*
+     * Renders the specified receipt as the text that is printed. Each item line shows the
+     * description, the quantity, the unit price and the line total.
+     *
+     * @param receiptData The DTO containing all information for the receipt.
+     * @return The receipt text.
+     */
+    public static String formatReceipt(ReceiptDTO receiptData) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("Time of Sale: ").append(receiptData.getDateTime().format(SALE_TIME_FORMAT)).append("\n\n");
+
+        for (SaleLineDTO line : receiptData.getItems()) {
+            appendItemLine(builder, line);
+        }
+        builder.append("\n");
+
+        builder.append("Total: ").append(receiptData.getTotalAmount()).append("\n");
+        builder.append("\n");
+        builder.append("Cash: ").append(receiptData.getAmountPaid()).append("\n");
+        builder.append("Change: ").append(receiptData.getChange()).append("\n");
+
+        return builder.toString();
+    }
+
+    private static void appendItemLine(StringBuilder builder, SaleLineDTO line) {
+        builder.append(line.getDescription()).append(' ')
+               .append(line.getQuantity()).append(" x ")
+               .append(line.getUnitPrice()).append(' ')
+               .append(line.getLineTotal()).append('\n');
+    }
+}
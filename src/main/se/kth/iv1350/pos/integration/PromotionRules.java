@@ -0,0 +1,378 @@
+package se.kth.iv1350.pos.integration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import se.kth.iv1350.pos.util.IntIntHashMap;
+
+/*
+ * The mix-and-match promotions, such as "3 for 2" or "coffee and croissant for 16.00". Each
+ * promotion requires a number of units of one or more items, and is either sold for a fixed bundle
+ * price or gives the cheapest units away for free.
+ *
+ * Promotions that require a common item compete for the same units, so they are grouped into
+ * components: two promotions are in the same component if they are connected through shared items.
+ * Every item is in at most one component, so when an item is added to a sale, only the promotions
+ * of its component have to be evaluated again. The rules are immutable after they have been
+ * loaded, so they can be read by any number of threads.
+ */
+public final class PromotionRules {
+    static final String DEFAULT_PROMOTIONS_RESOURCE = "promotions.txt";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String FIELD_SEPARATOR = ";";
+    private static final String ITEM_SEPARATOR = "\\+";
+    private static final String QUANTITY_SEPARATOR = "x";
+    private static final int FIELD_COUNT = 4;
+    private static final int NO_COMPONENT = -1;
+
+    /*
+     * Promotions that are never applied.
+     */
+    public static final PromotionRules NONE = new PromotionRules(new ArrayList<>());
+
+    private final String[] names;
+    private final int[][] itemIDs;
+    private final int[][] quantities;
+    private final boolean[] bundles;
+    private final long[] values;
+    private final IntIntHashMap componentByItemID;
+    private final int[][] promotionsOfComponent;
+    private final int[][] itemsOfComponent;
+    private final int[][] componentItemIndexes;
+
+    private PromotionRules(List<ParsedPromotion> promotions) {
+        int count = promotions.size();
+        this.names = new String[count];
+        this.itemIDs = new int[count][];
+        this.quantities = new int[count][];
+        this.bundles = new boolean[count];
+        this.values = new long[count];
+        for (int promotion = 0; promotion < count; promotion++) {
+            ParsedPromotion parsed = promotions.get(promotion);
+            names[promotion] = parsed.name;
+            itemIDs[promotion] = parsed.itemIDs;
+            quantities[promotion] = parsed.quantities;
+            bundles[promotion] = parsed.bundle;
+            values[promotion] = parsed.value;
+        }
+
+        IntIntHashMap nodeByItemID = new IntIntHashMap();
+        List<Integer> itemOfNode = new ArrayList<>();
+        for (int[] promotionItems : itemIDs) {
+            for (int itemID : promotionItems) {
+                if (!nodeByItemID.containsKey(itemID)) {
+                    nodeByItemID.put(itemID, itemOfNode.size());
+                    itemOfNode.add(itemID);
+                }
+            }
+        }
+        int[] parent = new int[itemOfNode.size()];
+        for (int node = 0; node < parent.length; node++) {
+            parent[node] = node;
+        }
+        for (int[] promotionItems : itemIDs) {
+            for (int k = 1; k < promotionItems.length; k++) {
+                union(parent, nodeByItemID.get(promotionItems[0], 0), nodeByItemID.get(promotionItems[k], 0));
+            }
+        }
+
+        IntIntHashMap componentByRoot = new IntIntHashMap();
+        this.componentByItemID = new IntIntHashMap(itemOfNode.size());
+        List<List<Integer>> componentItems = new ArrayList<>();
+        for (int node = 0; node < parent.length; node++) {
+            int root = find(parent, node);
+            int component = componentByRoot.get(root, NO_COMPONENT);
+            if (component == NO_COMPONENT) {
+                component = componentItems.size();
+                componentByRoot.put(root, component);
+                componentItems.add(new ArrayList<>());
+            }
+            componentByItemID.put(itemOfNode.get(node), component);
+            componentItems.get(component).add(itemOfNode.get(node));
+        }
+
+        this.itemsOfComponent = new int[componentItems.size()][];
+        List<List<Integer>> componentPromotions = new ArrayList<>();
+        for (int component = 0; component < itemsOfComponent.length; component++) {
+            itemsOfComponent[component] = toArray(componentItems.get(component));
+            componentPromotions.add(new ArrayList<>());
+        }
+        this.componentItemIndexes = new int[count][];
+        for (int promotion = 0; promotion < count; promotion++) {
+            int component = componentByItemID.get(itemIDs[promotion][0], NO_COMPONENT);
+            componentPromotions.get(component).add(promotion);
+            componentItemIndexes[promotion] = new int[itemIDs[promotion].length];
+            for (int k = 0; k < itemIDs[promotion].length; k++) {
+                componentItemIndexes[promotion][k] = componentItems.get(component).indexOf(itemIDs[promotion][k]);
+            }
+        }
+        this.promotionsOfComponent = new int[componentPromotions.size()][];
+        for (int component = 0; component < promotionsOfComponent.length; component++) {
+            promotionsOfComponent[component] = toArray(componentPromotions.get(component));
+        }
+    }
+
+    private static int find(int[] parent, int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private static void union(int[] parent, int first, int second) {
+        parent[find(parent, first)] = find(parent, second);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /*
+     * Loads the promotions in the specified text file. Each line contains one promotion, written
+     * as kind;name;items;value where
+     *  - kind is bundle or free,
+     *  - name is shown to the customer,
+     *  - items lists the required units as itemIDxquantity, separated by +, for example 101x1+102x1,
+     *  - value is the price of the whole bundle before tax, or the number of cheapest units that are free.
+     * Empty lines and lines starting with # are ignored.
+     *
+     * @param promotionsFile The file to load.
+     * @return The loaded promotions.
+     * @throws DatabaseFailureException If the file could not be read or contains an invalid line.
+     */
+    public static PromotionRules load(Path promotionsFile) {
+        try (BufferedReader reader = Files.newBufferedReader(promotionsFile, StandardCharsets.UTF_8)) {
+            return load(reader, promotionsFile.toString());
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not read the promotions " + promotionsFile + ".", e);
+        }
+    }
+
+    /*
+     * Loads the promotions that are shipped with the application.
+     *
+     * @return The loaded promotions.
+     * @throws DatabaseFailureException If the promotions could not be read.
+     */
+    public static PromotionRules loadDefault() {
+        InputStream promotionsStream = PromotionRules.class.getResourceAsStream(DEFAULT_PROMOTIONS_RESOURCE);
+        if (promotionsStream == null) {
+            throw new DatabaseFailureException("The promotions " + DEFAULT_PROMOTIONS_RESOURCE + " could not be found.");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(promotionsStream, StandardCharsets.UTF_8))) {
+            return load(reader, DEFAULT_PROMOTIONS_RESOURCE);
+        } catch (IOException e) {
+            throw new DatabaseFailureException("Could not read the promotions " + DEFAULT_PROMOTIONS_RESOURCE + ".", e);
+        }
+    }
+
+    /*
+     * Loads promotions from the specified reader, see load(Path) for the format.
+     *
+     * @param reader The reader to load from.
+     * @param sourceName The name of the source, used in error messages.
+     * @return The loaded promotions.
+     * @throws IOException If the reader fails.
+     * @throws DatabaseFailureException If a line is invalid.
+     */
+    static PromotionRules load(BufferedReader reader, String sourceName) throws IOException {
+        List<ParsedPromotion> promotions = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmedLine = line.trim();
+            if (trimmedLine.isEmpty() || trimmedLine.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            promotions.add(parsePromotion(trimmedLine, sourceName, lineNumber));
+        }
+        return new PromotionRules(promotions);
+    }
+
+    private static ParsedPromotion parsePromotion(String line, String sourceName, int lineNumber) {
+        String[] fields = line.split(FIELD_SEPARATOR, FIELD_COUNT);
+        if (fields.length != FIELD_COUNT) {
+            throw invalidLine(sourceName, lineNumber, null);
+        }
+        try {
+            String kind = fields[0].trim().toLowerCase(Locale.ROOT);
+            String[] requiredItems = fields[2].trim().split(ITEM_SEPARATOR);
+            IntIntHashMap quantityByItemID = new IntIntHashMap();
+            List<Integer> distinctItemIDs = new ArrayList<>();
+            int unitCount = 0;
+            for (String requiredItem : requiredItems) {
+                String[] itemAndQuantity = requiredItem.trim().split(QUANTITY_SEPARATOR, 2);
+                int itemID = Integer.parseInt(itemAndQuantity[0].trim());
+                int quantity = itemAndQuantity.length == 2 ? Integer.parseInt(itemAndQuantity[1].trim()) : 1;
+                if (quantity <= 0) {
+                    throw new IllegalArgumentException("A quantity must be positive.");
+                }
+                if (!quantityByItemID.containsKey(itemID)) {
+                    distinctItemIDs.add(itemID);
+                }
+                quantityByItemID.addTo(itemID, quantity);
+                unitCount += quantity;
+            }
+            int[] itemIDs = toArray(distinctItemIDs);
+            int[] quantities = new int[itemIDs.length];
+            for (int k = 0; k < itemIDs.length; k++) {
+                quantities[k] = quantityByItemID.get(itemIDs[k], 0);
+            }
+
+            long value;
+            boolean bundle;
+            switch (kind) {
+                case "bundle":
+                    bundle = true;
+                    value = HashedItemCatalog.parsePrice(fields[3].trim()).getMinorUnits();
+                    break;
+                case "free":
+                    bundle = false;
+                    value = Integer.parseInt(fields[3].trim());
+                    if (value <= 0 || value >= unitCount) {
+                        throw new IllegalArgumentException("The number of free units must be less than the required units.");
+                    }
+                    break;
+                default:
+                    throw invalidLine(sourceName, lineNumber, null);
+            }
+            return new ParsedPromotion(fields[1].trim(), itemIDs, quantities, bundle, value);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw invalidLine(sourceName, lineNumber, e);
+        }
+    }
+
+    private static DatabaseFailureException invalidLine(String sourceName, int lineNumber, Exception cause) {
+        return new DatabaseFailureException("Invalid promotion on line " + lineNumber + " of the promotions " + sourceName + ".", cause);
+    }
+
+    /*
+     * Gets the component of the promotions that require the specified item.
+     *
+     * @param itemID The item.
+     * @return The component, or -1 if no promotion requires the item.
+     */
+    public int getComponentOf(int itemID) {
+        return componentByItemID.get(itemID, NO_COMPONENT);
+    }
+
+    public int getComponentCount() {
+        return promotionsOfComponent.length;
+    }
+
+    public int getPromotionCount(int component) {
+        return promotionsOfComponent[component].length;
+    }
+
+    /*
+     * Gets one of the promotions in a component.
+     *
+     * @param component The component.
+     * @param index The position of the promotion in the component, from 0 to getPromotionCount - 1.
+     * @return The promotion number, used with the other methods of this class.
+     */
+    public int getPromotion(int component, int index) {
+        return promotionsOfComponent[component][index];
+    }
+
+    public int getItemCount(int component) {
+        return itemsOfComponent[component].length;
+    }
+
+    /*
+     * Gets one of the items in a component.
+     *
+     * @param component The component.
+     * @param index The position of the item in the component, from 0 to getItemCount - 1.
+     * @return The item ID.
+     */
+    public int getItem(int component, int index) {
+        return itemsOfComponent[component][index];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int promotion) {
+        return names[promotion];
+    }
+
+    /*
+     * Gets the number of different items a promotion requires.
+     *
+     * @param promotion The promotion.
+     * @return The number of required items.
+     */
+    public int getRequiredItemCount(int promotion) {
+        return itemIDs[promotion].length;
+    }
+
+    public int getRequiredItemID(int promotion, int requirement) {
+        return itemIDs[promotion][requirement];
+    }
+
+    public int getRequiredQuantity(int promotion, int requirement) {
+        return quantities[promotion][requirement];
+    }
+
+    /*
+     * Gets the position within its component of an item a promotion requires, see getItem.
+     *
+     * @param promotion The promotion.
+     * @param requirement The required item, from 0 to getRequiredItemCount - 1.
+     * @return The position of the item in the component.
+     */
+    public int getRequiredItemIndex(int promotion, int requirement) {
+        return componentItemIndexes[promotion][requirement];
+    }
+
+    /*
+     * Checks if a promotion is sold for a fixed price, instead of giving units for free.
+     *
+     * @param promotion The promotion.
+     * @return true for a bundle price, false for free units.
+     */
+    public boolean isBundle(int promotion) {
+        return bundles[promotion];
+    }
+
+    /*
+     * Gets the price of a bundle in minor units, or the number of free units.
+     *
+     * @param promotion The promotion.
+     * @return The bundle price or the number of free units, see isBundle.
+     */
+    public long getValue(int promotion) {
+        return values[promotion];
+    }
+
+    private static final class ParsedPromotion {
+        private final String name;
+        private final int[] itemIDs;
+        private final int[] quantities;
+        private final boolean bundle;
+        private final long value;
+
+        ParsedPromotion(String name, int[] itemIDs, int[] quantities, boolean bundle, long value) {
+            this.name = name;
+            this.itemIDs = itemIDs;
+            this.quantities = quantities;
+            this.bundle = bundle;
+            this.value = value;
+        }
+    }
+}
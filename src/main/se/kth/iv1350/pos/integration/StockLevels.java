@@ -0,0 +1,478 @@
+package se.kth.iv1350.pos.integration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+import se.kth.iv1350.pos.util.IntIntHashMap;
+
+/*
+ * The quantity in stock of every item. Each item has its own atomic counter, so registers that
+ * update different items never wait for each other, and registers that update the same item only
+ * retry a compare-and-set. No lock is taken by an update.
+ *
+ * Every item in the catalog is kept in stock, but its counter is only created the first time the
+ * item is updated. Until then the item has the initial level. Creating stock levels therefore does
+ * not read the catalog, so a register with a large memory-mapped catalog is ready immediately, and
+ * an item is only read from the catalog when it is sold or delivered.
+ *
+ * To take a consistent copy, every update is counted when it starts and when it finishes, in two
+ * LongAdders, which do not make the registers contend on a shared counter. snapshot sets a flag
+ * that makes new updates wait, waits until the two counts are equal, so no update is in progress,
+ * and copies the counters. A snapshot therefore never contains half of a sale. Updates only wait
+ * while a snapshot is taken.
+ */
+public final class StockLevels {
+    private static final int NOT_STOCKED = -1;
+    private static final int SPINS_BEFORE_YIELD = 100;
+
+    private final long initialLevel;
+    private final int defaultLowStockThreshold;
+    private volatile ItemCatalog catalog;
+    private final ConcurrentMap<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private final LongAdder updatesStarted = new LongAdder();
+    private final LongAdder updatesFinished = new LongAdder();
+    private volatile boolean copying;
+    private final Object copyFinished = new Object();
+    private final List<LowStockListener> lowStockListeners = new CopyOnWriteArrayList<>();
+    private final Set<Integer> reportedUnstockedItems = ConcurrentHashMap.newKeySet();
+
+    /*
+     * Creates stock levels for all items in the specified catalog. The catalog is not read until
+     * the stock of an item is used.
+     *
+     * @param catalog The items that are kept in stock.
+     * @param initialLevel The stock level every item starts with.
+     * @param lowStockThreshold The level below which an item is reported as running low.
+     */
+    public StockLevels(ItemCatalog catalog, long initialLevel, int lowStockThreshold) {
+        this.initialLevel = initialLevel;
+        this.defaultLowStockThreshold = lowStockThreshold;
+        this.catalog = catalog;
+    }
+
+    /*
+     * Adds all items of the specified catalog that are not yet kept in stock, for example after
+     * the catalog has been reloaded. New items start with the initial level and threshold of this
+     * instance, existing items keep their levels, also if they are not in the new catalog. Both
+     * catalogs are read while updates go on, no update waits for this method.
+     *
+     * @param newCatalog The catalog that may contain new items.
+     * @return The number of items that were added.
+     */
+    public synchronized int addItems(ItemCatalog newCatalog) {
+        ItemCatalog currentCatalog = catalog;
+        if (newCatalog == currentCatalog) {
+            return 0;
+        }
+        int[] addedCount = {0};
+        newCatalog.forEachItem(item -> {
+            if (!isStocked(item.getItemID())) {
+                addedCount[0]++;
+            }
+        });
+        currentCatalog.forEachItem(item -> {
+            if (newCatalog.findItem(item.getItemID()) == null) {
+                counterOf(item.getItemID());
+            }
+        });
+        catalog = newCatalog;
+        return addedCount[0];
+    }
+
+    /*
+     * Decreases the stock of all items sold in the specified sale. The sale is never partly
+     * included in a snapshot. Items that are not kept in stock are skipped, and reported once per item.
+     *
+     * @param saleInfo The sold items.
+     */
+    public void decrease(SaleInfoDTO saleInfo) {
+        List<SaleLineDTO> lines = saleInfo.getItems();
+        Counter[] crossings = null;
+        long[] crossingLevels = null;
+        int crossingCount = 0;
+        startUpdate();
+        try {
+            for (SaleLineDTO line : lines) {
+                Counter counter = counterOf(line.getItemID());
+                if (counter == null) {
+                    reportNotStocked(line.getItemID());
+                    continue;
+                }
+                long newLevel = counter.level.addAndGet(-line.getQuantity());
+                if (counter.crossedThreshold(newLevel, line.getQuantity())) {
+                    if (crossings == null) {
+                        crossings = new Counter[lines.size()];
+                        crossingLevels = new long[lines.size()];
+                    }
+                    crossings[crossingCount] = counter;
+                    crossingLevels[crossingCount++] = newLevel;
+                }
+            }
+        } finally {
+            finishUpdate();
+        }
+        for (int i = 0; i < crossingCount; i++) {
+            notifyLowStock(crossings[i], crossingLevels[i]);
+        }
+    }
+
+    /*
+     * Decreases the stock of one item.
+     *
+     * @param itemID The item.
+     * @param quantity The number of units to remove.
+     * @return The new stock level.
+     * @throws IllegalArgumentException If the item is not kept in stock.
+     */
+    public long decrease(int itemID, int quantity) {
+        Counter counter;
+        long newLevel;
+        startUpdate();
+        try {
+            counter = stockedCounterOf(itemID);
+            newLevel = counter.level.addAndGet(-quantity);
+        } finally {
+            finishUpdate();
+        }
+        if (counter.crossedThreshold(newLevel, quantity)) {
+            notifyLowStock(counter, newLevel);
+        }
+        return newLevel;
+    }
+
+    /*
+     * Increases the stock of one item, for example when a delivery arrives.
+     *
+     * @param itemID The item.
+     * @param quantity The number of units to add.
+     * @return The new stock level.
+     * @throws IllegalArgumentException If the item is not kept in stock.
+     */
+    public long increase(int itemID, int quantity) {
+        startUpdate();
+        try {
+            return stockedCounterOf(itemID).level.addAndGet(quantity);
+        } finally {
+            finishUpdate();
+        }
+    }
+
+    /*
+     * Reports that the stock level of an item that is not kept in stock could not be updated. Each
+     * item is reported only the first time, so a popular item without a stock level does not fill
+     * the error log.
+     */
+    void reportNotStocked(int itemID) {
+        if (reportedUnstockedItems.add(itemID)) {
+            System.err.println("Item " + itemID + " is not kept in stock, its stock level is not updated.");
+        }
+    }
+
+    private void notifyLowStock(Counter counter, long newLevel) {
+        int threshold = counter.lowStockThreshold;
+        for (LowStockListener listener : lowStockListeners) {
+            listener.stockIsLow(counter.itemID, newLevel, threshold);
+        }
+    }
+
+    /*
+     * Gets the current stock level of one item.
+     *
+     * @param itemID The item.
+     * @return The stock level.
+     * @throws IllegalArgumentException If the item is not kept in stock.
+     */
+    public long getLevel(int itemID) {
+        Counter counter = counters.get(itemID);
+        if (counter != null) {
+            return counter.level.get();
+        }
+        if (catalog.findItem(itemID) == null) {
+            throw notStocked(itemID);
+        }
+        return initialLevel;
+    }
+
+    /*
+     * Checks if the specified item is kept in stock.
+     *
+     * @param itemID The item.
+     * @return true if the item has a stock level, false otherwise.
+     */
+    public boolean isStocked(int itemID) {
+        return counters.containsKey(itemID) || catalog.findItem(itemID) != null;
+    }
+
+    /*
+     * Sets the level below which the specified item is reported as running low.
+     *
+     * @param itemID The item.
+     * @param threshold The new threshold.
+     * @throws IllegalArgumentException If the item is not kept in stock.
+     */
+    public void setLowStockThreshold(int itemID, int threshold) {
+        startUpdate();
+        try {
+            stockedCounterOf(itemID).lowStockThreshold = threshold;
+        } finally {
+            finishUpdate();
+        }
+    }
+
+    /*
+     * Adds a listener that is notified when an item falls below its low-stock threshold.
+     *
+     * @param listener The listener to add.
+     */
+    public void addLowStockListener(LowStockListener listener) {
+        if (listener != null) {
+            lowStockListeners.add(listener);
+        }
+    }
+
+    /*
+     * Takes a consistent copy of all stock levels, for example for a reorder report. Updates that
+     * are in progress are completed first, and new updates wait only while the levels are copied.
+     * Only the counters of items that have been updated are copied, the other items are read from
+     * the catalog when the snapshot is used.
+     *
+     * @return The copy.
+     */
+    public synchronized Snapshot snapshot() {
+        stopUpdates();
+        try {
+            ItemCatalog copiedCatalog = catalog;
+            List<Counter> copiedCounters = new ArrayList<>(counters.values());
+            int[] itemIDs = new int[copiedCounters.size()];
+            IntIntHashMap indexByItemID = new IntIntHashMap(itemIDs.length);
+            long[] copiedLevels = new long[itemIDs.length];
+            int[] copiedThresholds = new int[itemIDs.length];
+            for (int i = 0; i < itemIDs.length; i++) {
+                Counter counter = copiedCounters.get(i);
+                itemIDs[i] = counter.itemID;
+                indexByItemID.put(counter.itemID, i);
+                copiedLevels[i] = counter.level.get();
+                copiedThresholds[i] = counter.lowStockThreshold;
+            }
+            return new Snapshot(copiedCatalog, initialLevel, defaultLowStockThreshold,
+                                itemIDs, indexByItemID, copiedLevels, copiedThresholds);
+        } finally {
+            resumeUpdates();
+        }
+    }
+
+    /*
+     * Returns null if the item is not kept in stock. The counter is created the first time an
+     * item is used.
+     */
+    private Counter counterOf(int itemID) {
+        Counter counter = counters.get(itemID);
+        if (counter != null) {
+            return counter;
+        }
+        if (catalog.findItem(itemID) == null) {
+            return null;
+        }
+        return counters.computeIfAbsent(itemID, id -> new Counter(id, initialLevel, defaultLowStockThreshold));
+    }
+
+    private Counter stockedCounterOf(int itemID) {
+        Counter counter = counterOf(itemID);
+        if (counter == null) {
+            throw notStocked(itemID);
+        }
+        return counter;
+    }
+
+    private static IllegalArgumentException notStocked(int itemID) {
+        return new IllegalArgumentException("Item " + itemID + " is not kept in stock.");
+    }
+
+    /*
+     * An update that starts while a copy is taken takes back its start and waits for the copy.
+     * The start is counted before the flag is read, and the flag is set before the counts are read,
+     * so either the update sees the flag or the copy sees the update.
+     */
+    private void startUpdate() {
+        while (true) {
+            updatesStarted.increment();
+            if (!copying) {
+                return;
+            }
+            updatesFinished.increment();
+            awaitCopy();
+        }
+    }
+
+    private void finishUpdate() {
+        updatesFinished.increment();
+    }
+
+    private void awaitCopy() {
+        boolean interrupted = false;
+        synchronized (copyFinished) {
+            while (copying) {
+                try {
+                    copyFinished.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Must be called while holding the monitor of this instance. The finished count is read before
+     * the started count, so equal counts mean that no update was in progress between the two reads.
+     */
+    private void stopUpdates() {
+        copying = true;
+        for (int spins = 0; updatesFinished.sum() != updatesStarted.sum(); spins++) {
+            if (spins < SPINS_BEFORE_YIELD) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void resumeUpdates() {
+        synchronized (copyFinished) {
+            copying = false;
+            copyFinished.notifyAll();
+        }
+    }
+
+    /*
+     * The stock level and low-stock threshold of one item that has been used.
+     */
+    private static final class Counter {
+        private final int itemID;
+        private final AtomicLong level;
+        private volatile int lowStockThreshold;
+
+        private Counter(int itemID, long initialLevel, int lowStockThreshold) {
+            this.itemID = itemID;
+            this.level = new AtomicLong(initialLevel);
+            this.lowStockThreshold = lowStockThreshold;
+        }
+
+        /*
+         * The level was at or above the threshold before this decrease and is below it now. Since each
+         * decrease is a single atomic add, exactly one of several concurrent decreases sees the crossing.
+         */
+        private boolean crossedThreshold(long newLevel, long decrease) {
+            int threshold = lowStockThreshold;
+            return decrease > 0 && newLevel < threshold && newLevel + decrease >= threshold;
+        }
+    }
+
+    /*
+     * The stock levels of all items at one point in time. A snapshot is immutable.
+     */
+    public static final class Snapshot {
+        private final ItemCatalog catalog;
+        private final long initialLevel;
+        private final int defaultLowStockThreshold;
+        private final int[] itemIDs;
+        private final IntIntHashMap indexByItemID;
+        private final long[] levels;
+        private final int[] lowStockThresholds;
+
+        private Snapshot(ItemCatalog catalog, long initialLevel, int defaultLowStockThreshold, int[] itemIDs,
+                         IntIntHashMap indexByItemID, long[] levels, int[] lowStockThresholds) {
+            this.catalog = catalog;
+            this.initialLevel = initialLevel;
+            this.defaultLowStockThreshold = defaultLowStockThreshold;
+            this.itemIDs = itemIDs;
+            this.indexByItemID = indexByItemID;
+            this.levels = levels;
+            this.lowStockThresholds = lowStockThresholds;
+        }
+
+        /*
+         * Gets the stock level of one item when the snapshot was taken.
+         *
+         * @param itemID The item.
+         * @return The stock level.
+         * @throws IllegalArgumentException If the item is not kept in stock.
+         */
+        public long getLevel(int itemID) {
+            int index = indexByItemID.get(itemID, NOT_STOCKED);
+            if (index != NOT_STOCKED) {
+                return levels[index];
+            }
+            if (catalog.findItem(itemID) == null) {
+                throw notStocked(itemID);
+            }
+            return initialLevel;
+        }
+
+        /*
+         * Gets the number of items in the snapshot.
+         *
+         * @return The number of items.
+         */
+        public int size() {
+            return levels.length + unusedCatalogItemCount();
+        }
+
+        /*
+         * Gets the items whose stock level is below their low-stock threshold, which are the items to reorder.
+         *
+         * @return The IDs of the items, in no particular order.
+         */
+        public List<Integer> getItemsBelowThreshold() {
+            List<Integer> lowItems = new ArrayList<>();
+            for (int index = 0; index < levels.length; index++) {
+                if (levels[index] < lowStockThresholds[index]) {
+                    lowItems.add(itemIDs[index]);
+                }
+            }
+            if (initialLevel < defaultLowStockThreshold) {
+                catalog.forEachItem(item -> {
+                    if (!indexByItemID.containsKey(item.getItemID())) {
+                        lowItems.add(item.getItemID());
+                    }
+                });
+            }
+            return lowItems;
+        }
+
+        /*
+         * Gets the sum of all stock levels.
+         *
+         * @return The total number of units in stock.
+         */
+        public long getTotalUnits() {
+            long total = initialLevel * unusedCatalogItemCount();
+            for (long level : levels) {
+                total += level;
+            }
+            return total;
+        }
+
+        /*
+         * The items of the catalog that had not been updated, and therefore have the initial level.
+         */
+        private int unusedCatalogItemCount() {
+            int usedCatalogItems = 0;
+            for (int itemID : itemIDs) {
+                if (catalog.findItem(itemID) != null) {
+                    usedCatalogItems++;
+                }
+            }
+            return catalog.size() - usedCatalogItems;
+        }
+    }
+}
@@ -1,32 +1,55 @@
 package se.kth.iv1350.pos.model;
 
-import java.util.Objects;
-import java.util.Locale;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-
 /*
  * Represents an amount of money. This is a value object.
+ * The amount is stored exactly as a whole number of minor units (öre), so
+ * adding up long baskets never accumulates binary rounding errors.
  */
 public final class Amount {
-    private final double amount;
+    static final int MINOR_UNITS_PER_MAJOR_UNIT = 100;
+
+    private final long minorUnits;
 
     /*
      * Creates a new instance representing the specified amount.
      *
-     * @param amount The amount in the smallest monetary unit (e.g., cents, öre).
+     * @param amount The amount in the main monetary unit (e.g., kronor). It is rounded to
+     *               the nearest minor unit (öre).
      */
     public Amount(double amount) {
-        this.amount = amount;
+        this(Math.round(amount * MINOR_UNITS_PER_MAJOR_UNIT));
+    }
+
+    private Amount(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /*
+     * Creates a new instance from a whole number of minor units.
+     *
+     * @param minorUnits The amount in the smallest monetary unit (e.g., öre).
+     * @return A new Amount instance representing the specified number of minor units.
+     */
+    public static Amount ofMinorUnits(long minorUnits) {
+        return new Amount(minorUnits);
     }
 
     /*
      * Gets the numerical value of this amount.
      *
-     * @return The amount in the smallest monetary unit.
+     * @return The amount in the main monetary unit (e.g., kronor).
      */
     public double getAmount() {
-        return amount;
+        return (double) minorUnits / MINOR_UNITS_PER_MAJOR_UNIT;
+    }
+
+    /*
+     * Gets the exact value of this amount.
+     *
+     * @return The amount in the smallest monetary unit (e.g., öre).
+     */
+    public long getMinorUnits() {
+        return minorUnits;
     }
 
     // Arithmetic Operations
@@ -38,7 +61,7 @@ public final class Amount {
      * @return A new Amount instance representing the difference.
      */
     public Amount minus(Amount other) {
-        return new Amount(this.amount - other.amount);
+        return new Amount(this.minorUnits - other.minorUnits);
     }
 
     /*
@@ -48,7 +71,7 @@ public final class Amount {
      * @return A new Amount instance representing the sum.
      */
     public Amount plus(Amount other) {
-        return new Amount(this.amount + other.amount);
+        return new Amount(this.minorUnits + other.minorUnits);
     }
 
     /*
@@ -59,7 +82,26 @@ public final class Amount {
      * @return A new Amount instance representing the product.
      */
     public Amount multiply(int factor) {
-        return new Amount(this.amount * factor);
+        return new Amount(this.minorUnits * factor);
+    }
+
+    /*
+     * Calculates the specified percentage of this amount, rounded half up to the nearest minor unit.
+     *
+     * @param percentage The percentage, e.g. 25 for 25%.
+     * @return A new Amount instance representing the percentage of this amount.
+     */
+    public Amount percentage(int percentage) {
+        return new Amount(percentageOf(this.minorUnits, percentage));
+    }
+
+    /*
+     * Calculates a percentage of a number of minor units, rounded half up (away from zero).
+     */
+    static long percentageOf(long minorUnits, int percentage) {
+        long scaled = minorUnits * percentage;
+        long half = scaled < 0 ? -50 : 50;
+        return (scaled + half) / 100;
     }
 
     /*
@@ -68,16 +110,32 @@ public final class Amount {
      * @return The amount formatted as a string (e.g., "15.70").
      */
     public String toString() {
-        DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.US);
-        symbols.setDecimalSeparator('.'); // Force period as decimal separator
-        DecimalFormat df = new DecimalFormat("0.00", symbols);
-        return df.format(amount);
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder, minorUnits);
+        return builder.toString();
     }
 
+    /*
+     * Appends a number of minor units formatted like toString() to the specified builder,
+     * without creating an Amount instance.
+     */
+    static void appendTo(StringBuilder builder, long minorUnits) {
+        if (minorUnits < 0) {
+            builder.append('-');
+        }
+        long absolute = Math.abs(minorUnits);
+        long fraction = absolute % MINOR_UNITS_PER_MAJOR_UNIT;
+        builder.append(absolute / MINOR_UNITS_PER_MAJOR_UNIT).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
 
-    /* 
+
+    /*
      * Checks if this amount is equal to another object.
-     * 
+     *
      * @param The object to compare with.
      * @return true if the object is an Amount with the same value, false otherwise.
      */
@@ -87,7 +145,7 @@ public final class Amount {
         }
         if (isDifferentTypeOrNull(obj)) {
             return false;
-        }        
+        }
         Amount other = (Amount) obj;
         return hasSameNumericValue(other);
     }
@@ -95,21 +153,21 @@ public final class Amount {
     private boolean isSameValue(Object obj) {
         return obj == this;
     }
-    
+
     private boolean isDifferentTypeOrNull(Object obj) {
         return obj == null || getClass() != obj.getClass();
     }
 
     private boolean hasSameNumericValue(Amount other) {
-        return Double.compare(other.amount, this.amount) == 0;
+        return other.minorUnits == this.minorUnits;
     }
 
     /*
      * Returns a hash code for this amount.
-     * 
+     *
      * @return The hash code based on the amount value.
      */
     public int hashCode() {
-        return Objects.hash(amount);
+        return Long.hashCode(minorUnits);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package se.kth.iv1350.pos.model;
+
+/*
+ * A mutable running sum of money, counted in minor units (öre).
+ * Adding to an accumulator never creates new objects, which makes it suitable for totals
+ * that are updated for every scanned item. It is not thread safe.
+ */
+public final class AmountAccumulator {
+    private long minorUnits;
+
+    /*
+     * Creates a new accumulator with the value zero.
+     */
+    public AmountAccumulator() {
+        this.minorUnits = 0;
+    }
+
+    /*
+     * Adds the specified amount to the accumulated sum.
+     *
+     * @param amount The amount to add.
+     */
+    public void add(Amount amount) {
+        this.minorUnits += amount.getMinorUnits();
+    }
+
+    /*
+     * Adds the specified amount multiplied by a factor to the accumulated sum.
+     *
+     * @param amount The amount to add.
+     * @param factor The number of times to add the amount, e.g. the quantity of an item.
+     */
+    public void addMultiplied(Amount amount, int factor) {
+        this.minorUnits += amount.getMinorUnits() * factor;
+    }
+
+    /*
+     * Adds a percentage of the specified amount, multiplied by a factor, to the accumulated sum.
+     * The percentage is rounded to whole minor units before it is multiplied, which matches
+     * how VAT is calculated per unit of an item.
+     *
+     * @param amount The amount to take the percentage of.
+     * @param percentage The percentage, e.g. 25 for 25%.
+     * @param factor The number of times to add the percentage.
+     */
+    public void addPercentageMultiplied(Amount amount, int percentage, int factor) {
+        this.minorUnits += Amount.percentageOf(amount.getMinorUnits(), percentage) * factor;
+    }
+
+    /*
+     * Subtracts the specified amount from the accumulated sum.
+     *
+     * @param amount The amount to subtract.
+     */
+    public void subtract(Amount amount) {
+        this.minorUnits -= amount.getMinorUnits();
+    }
+
+    /*
+     * Subtracts a percentage of the current accumulated sum, rounded half up.
+     *
+     * @param percentage The percentage to subtract, e.g. 10 for 10%.
+     */
+    public void subtractPercentage(int percentage) {
+        this.minorUnits -= Amount.percentageOf(this.minorUnits, percentage);
+    }
+
+    /*
+     * Gets the accumulated sum without creating an Amount.
+     *
+     * @return The accumulated sum in minor units.
+     */
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    /*
+     * Creates an immutable snapshot of the accumulated sum.
+     *
+     * @return An Amount with the current value of this accumulator.
+     */
+    public Amount toAmount() {
+        return Amount.ofMinorUnits(minorUnits);
+    }
+}
@@ -0,0 +1,386 @@
+package se.kth.iv1350.pos.model;
+
+import java.util.Arrays;
+import se.kth.iv1350.pos.integration.PromotionRules;
+import se.kth.iv1350.pos.util.IntIntHashMap;
+
+/*
+ * Finds the combination of promotions that gives the customer the lowest price for the items in
+ * one sale. When an item is added, only the promotions in the component of that item are evaluated
+ * again, see PromotionRules. The savings of all other components are unchanged.
+ *
+ * Promotions in the same component compete for the same units, so the best combination is found
+ * with a branch and bound search over the number of times each promotion is applied. The search
+ * for one added item stops after a fixed time, well below a millisecond, and after a fixed number
+ * of nodes, which keeps scanning fast also for large baskets with many overlapping promotions.
+ * If the search is stopped, the best combination found so far is used; it is never worse than
+ * applying the promotions greedily, best saving first. The search does not allocate memory once
+ * its scratch arrays have grown to the size of the largest component. It is not thread safe.
+ *
+ * The savings are prices before tax, so the engine also keeps the VAT of the savings. The VAT of a
+ * free unit is the VAT of its price. The saving of a bundle is split over its items in proportion
+ * to their full price, and each part is taxed with the tax rate of its item.
+ */
+public final class PromotionEngine {
+    static final int DEFAULT_NODE_BUDGET = 1_000_000;
+    static final long DEFAULT_TIME_BUDGET_NANOS = 400_000;
+    private static final int NODES_PER_CLOCK_CHECK = 64;
+    private static final int NO_PRICE = -1;
+
+    private final PromotionRules rules;
+    private final int nodeBudget;
+    private final long timeBudgetNanos;
+    private final IntIntHashMap quantityByItemID = new IntIntHashMap();
+    private final IntIntHashMap priceSlotByItemID = new IntIntHashMap();
+    private long[] unitPrices = new long[8];
+    private int[] taxPercentages = new int[8];
+    private final long[] savingsByComponent;
+    private final long[] savingsVATByComponent;
+    private final int[] applicationsByPromotion;
+    private long totalSavings;
+    private long totalSavingsVAT;
+    private boolean lastSearchComplete = true;
+
+    private int[] candidates;
+    private long[] candidateSavings;
+    private int[] candidateApplications;
+    private int[] bestApplications;
+    private int[] remaining;
+    private long[] suffixBounds;
+    private long[] unitPriceScratch = new long[4];
+    private int[] unitCountScratch = new int[4];
+    private long searchDeadlineNanos;
+    private int candidateCount;
+    private long bestSavings;
+    private int visitedNodes;
+    private boolean firstPathComplete;
+
+    /*
+     * Creates a new instance for one sale.
+     *
+     * @param rules The promotions that can be applied.
+     */
+    public PromotionEngine(PromotionRules rules) {
+        this(rules, DEFAULT_NODE_BUDGET, DEFAULT_TIME_BUDGET_NANOS);
+    }
+
+    PromotionEngine(PromotionRules rules, int nodeBudget) {
+        this(rules, nodeBudget, Long.MAX_VALUE);
+    }
+
+    PromotionEngine(PromotionRules rules, int nodeBudget, long timeBudgetNanos) {
+        this.rules = rules;
+        this.nodeBudget = nodeBudget;
+        this.timeBudgetNanos = timeBudgetNanos;
+        this.savingsByComponent = new long[rules.getComponentCount()];
+        this.savingsVATByComponent = new long[rules.getComponentCount()];
+        this.applicationsByPromotion = new int[rules.size()];
+    }
+
+    /*
+     * Adds units of an untaxed item, see itemAdded(int, int, Amount, int).
+     *
+     * @param itemID The added item.
+     * @param quantity The number of added units.
+     * @param unitPrice The price of one unit, before tax.
+     * @return The total savings of all applied promotions, in minor units.
+     */
+    public long itemAdded(int itemID, int quantity, Amount unitPrice) {
+        return itemAdded(itemID, quantity, unitPrice, 0);
+    }
+
+    /*
+     * Adds units of an item and evaluates the promotions that require the item again. If the item
+     * was added before, its latest price and tax rate are used for all units.
+     *
+     * @param itemID The added item.
+     * @param quantity The number of added units.
+     * @param unitPrice The price of one unit, before tax.
+     * @param taxPercentage The tax rate of the item, e.g. 25 for 25%.
+     * @return The total savings of all applied promotions, in minor units.
+     */
+    public long itemAdded(int itemID, int quantity, Amount unitPrice, int taxPercentage) {
+        int component = rules.getComponentOf(itemID);
+        if (component < 0) {
+            return totalSavings;
+        }
+        quantityByItemID.addTo(itemID, quantity);
+        storeUnitPrice(itemID, unitPrice.getMinorUnits(), taxPercentage);
+        long componentSavings = solve(component);
+        totalSavings += componentSavings - savingsByComponent[component];
+        savingsByComponent[component] = componentSavings;
+        long componentSavingsVAT = savingsVATOf(component);
+        totalSavingsVAT += componentSavingsVAT - savingsVATByComponent[component];
+        savingsVATByComponent[component] = componentSavingsVAT;
+        return totalSavings;
+    }
+
+    private void storeUnitPrice(int itemID, long price, int taxPercentage) {
+        int slot = priceSlotByItemID.get(itemID, NO_PRICE);
+        if (slot == NO_PRICE) {
+            slot = priceSlotByItemID.size();
+            if (slot == unitPrices.length) {
+                unitPrices = Arrays.copyOf(unitPrices, slot * 2);
+                taxPercentages = Arrays.copyOf(taxPercentages, slot * 2);
+            }
+            priceSlotByItemID.put(itemID, slot);
+        }
+        unitPrices[slot] = price;
+        taxPercentages[slot] = taxPercentage;
+    }
+
+    private long unitPriceOf(int itemID) {
+        return unitPrices[priceSlotByItemID.get(itemID, NO_PRICE)];
+    }
+
+    private int taxPercentageOf(int itemID) {
+        return taxPercentages[priceSlotByItemID.get(itemID, NO_PRICE)];
+    }
+
+    /*
+     * Gets the total savings of all applied promotions.
+     *
+     * @return The savings, in minor units.
+     */
+    public long getSavings() {
+        return totalSavings;
+    }
+
+    /*
+     * Gets the VAT of the total savings, which the customer does not pay either.
+     *
+     * @return The VAT of the savings, in minor units.
+     */
+    public long getSavingsVAT() {
+        return totalSavingsVAT;
+    }
+
+    /*
+     * Gets the number of times a promotion is applied in the best combination.
+     *
+     * @param promotion The promotion, see PromotionRules.
+     * @return The number of applications.
+     */
+    public int getApplicationCount(int promotion) {
+        return applicationsByPromotion[promotion];
+    }
+
+    /*
+     * Checks if the latest search visited all combinations it could not rule out, which means the
+     * combination that was found is the best one.
+     *
+     * @return true if the latest search was completed within the node budget, false otherwise.
+     */
+    public boolean isLastSearchComplete() {
+        return lastSearchComplete;
+    }
+
+    private long solve(int component) {
+        int itemCount = rules.getItemCount(component);
+        int promotionCount = rules.getPromotionCount(component);
+        prepareScratch(itemCount, promotionCount);
+        for (int index = 0; index < itemCount; index++) {
+            remaining[index] = quantityByItemID.get(rules.getItem(component, index), 0);
+        }
+
+        candidateCount = 0;
+        for (int index = 0; index < promotionCount; index++) {
+            int promotion = rules.getPromotion(component, index);
+            applicationsByPromotion[promotion] = 0;
+            if (maxApplications(promotion) == 0) {
+                continue;
+            }
+            long savings = savingsPerApplication(promotion);
+            if (savings > 0) {
+                insertCandidate(promotion, savings);
+            }
+        }
+
+        computeSuffixBounds();
+        bestSavings = 0;
+        visitedNodes = 0;
+        firstPathComplete = false;
+        searchDeadlineNanos = System.nanoTime() + timeBudgetNanos;
+        Arrays.fill(bestApplications, 0, candidateCount, 0);
+        lastSearchComplete = search(0, 0);
+        for (int position = 0; position < candidateCount; position++) {
+            applicationsByPromotion[candidates[position]] = bestApplications[position];
+        }
+        return bestSavings;
+    }
+
+    private void prepareScratch(int itemCount, int promotionCount) {
+        if (remaining == null || remaining.length < itemCount) {
+            remaining = new int[itemCount];
+        }
+        if (candidates == null || candidates.length < promotionCount) {
+            candidates = new int[promotionCount];
+            candidateSavings = new long[promotionCount];
+            candidateApplications = new int[promotionCount];
+            bestApplications = new int[promotionCount];
+            suffixBounds = new long[promotionCount + 1];
+        }
+    }
+
+    // Keeps the candidates sorted by saving, best first, so the first path of the search is the greedy solution
+    private void insertCandidate(int promotion, long savings) {
+        int position = candidateCount++;
+        while (position > 0 && candidateSavings[position - 1] < savings) {
+            candidates[position] = candidates[position - 1];
+            candidateSavings[position] = candidateSavings[position - 1];
+            position--;
+        }
+        candidates[position] = promotion;
+        candidateSavings[position] = savings;
+    }
+
+    /*
+     * The bound of a position is what the candidates from that position save if each of them could
+     * use all units in the basket. It is computed once per search, so bounding a node is constant time.
+     */
+    private void computeSuffixBounds() {
+        suffixBounds[candidateCount] = 0;
+        for (int position = candidateCount - 1; position >= 0; position--) {
+            suffixBounds[position] = suffixBounds[position + 1] + maxApplications(candidates[position]) * candidateSavings[position];
+        }
+    }
+
+    /*
+     * Tries every number of applications of the candidate at the specified position, most first,
+     * and returns false if the node or time budget ran out. The first path is always completed.
+     */
+    private boolean search(int position, long savings) {
+        visitedNodes++;
+        if (firstPathComplete && isBudgetExhausted()) {
+            return false;
+        }
+        if (position == candidateCount) {
+            firstPathComplete = true;
+            if (savings > bestSavings) {
+                bestSavings = savings;
+                System.arraycopy(candidateApplications, 0, bestApplications, 0, candidateCount);
+            }
+            return true;
+        }
+        if (savings + suffixBounds[position] <= bestSavings) {
+            return true;
+        }
+        int promotion = candidates[position];
+        for (int applications = maxApplications(promotion); applications >= 0; applications--) {
+            take(promotion, applications);
+            candidateApplications[position] = applications;
+            boolean complete = search(position + 1, savings + applications * candidateSavings[position]);
+            take(promotion, -applications);
+            if (!complete) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isBudgetExhausted() {
+        if (visitedNodes > nodeBudget) {
+            return true;
+        }
+        return timeBudgetNanos != Long.MAX_VALUE && visitedNodes % NODES_PER_CLOCK_CHECK == 0
+               && System.nanoTime() - searchDeadlineNanos > 0;
+    }
+
+    private int maxApplications(int promotion) {
+        int applications = Integer.MAX_VALUE;
+        for (int requirement = 0; requirement < rules.getRequiredItemCount(promotion); requirement++) {
+            int available = remaining[rules.getRequiredItemIndex(promotion, requirement)];
+            applications = Math.min(applications, available / rules.getRequiredQuantity(promotion, requirement));
+        }
+        return applications;
+    }
+
+    private void take(int promotion, int applications) {
+        for (int requirement = 0; requirement < rules.getRequiredItemCount(promotion); requirement++) {
+            remaining[rules.getRequiredItemIndex(promotion, requirement)] -= applications * rules.getRequiredQuantity(promotion, requirement);
+        }
+    }
+
+    private long savingsPerApplication(int promotion) {
+        if (rules.isBundle(promotion)) {
+            return fullPriceOf(promotion) - rules.getValue(promotion);
+        }
+        return cheapestUnitsOf(promotion, (int) rules.getValue(promotion), false);
+    }
+
+    // Only runs for the promotions of the best combination, after the search
+    private long savingsVATOf(int component) {
+        long vat = 0;
+        for (int index = 0; index < rules.getPromotionCount(component); index++) {
+            int promotion = rules.getPromotion(component, index);
+            int applications = applicationsByPromotion[promotion];
+            if (applications > 0) {
+                vat += applications * savingsVATPerApplication(promotion);
+            }
+        }
+        return vat;
+    }
+
+    private long savingsVATPerApplication(int promotion) {
+        if (!rules.isBundle(promotion)) {
+            return cheapestUnitsOf(promotion, (int) rules.getValue(promotion), true);
+        }
+        long fullPrice = fullPriceOf(promotion);
+        long savingsLeft = fullPrice - rules.getValue(promotion);
+        long priceLeft = fullPrice;
+        long vat = 0;
+        for (int requirement = 0; requirement < rules.getRequiredItemCount(promotion); requirement++) {
+            int itemID = rules.getRequiredItemID(promotion, requirement);
+            long itemPrice = unitPriceOf(itemID) * rules.getRequiredQuantity(promotion, requirement);
+            long itemSavings = priceLeft == 0 ? 0 : Math.round((double) savingsLeft * itemPrice / priceLeft);
+            vat += Amount.percentageOf(itemSavings, taxPercentageOf(itemID));
+            savingsLeft -= itemSavings;
+            priceLeft -= itemPrice;
+        }
+        return vat;
+    }
+
+    private long fullPriceOf(int promotion) {
+        long price = 0;
+        for (int requirement = 0; requirement < rules.getRequiredItemCount(promotion); requirement++) {
+            price += unitPriceOf(rules.getRequiredItemID(promotion, requirement)) * rules.getRequiredQuantity(promotion, requirement);
+        }
+        return price;
+    }
+
+    /*
+     * Sums the prices of the cheapest units of a promotion, or the VAT of those units if onlyVAT is true.
+     */
+    private long cheapestUnitsOf(int promotion, int unitCount, boolean onlyVAT) {
+        int requirementCount = rules.getRequiredItemCount(promotion);
+        if (unitPriceScratch.length < requirementCount) {
+            unitPriceScratch = new long[requirementCount];
+            unitCountScratch = new int[requirementCount];
+        }
+        long[] prices = unitPriceScratch;
+        int[] quantities = unitCountScratch;
+        for (int requirement = 0; requirement < requirementCount; requirement++) {
+            prices[requirement] = unitPriceOf(rules.getRequiredItemID(promotion, requirement));
+            quantities[requirement] = rules.getRequiredQuantity(promotion, requirement);
+        }
+        long savings = 0;
+        for (int freeUnits = unitCount; freeUnits > 0; ) {
+            int cheapest = 0;
+            for (int requirement = 1; requirement < requirementCount; requirement++) {
+                if (quantities[cheapest] == 0 || (quantities[requirement] > 0 && prices[requirement] < prices[cheapest])) {
+                    cheapest = requirement;
+                }
+            }
+            int units = Math.min(freeUnits, quantities[cheapest]);
+            if (onlyVAT) {
+                int tax = taxPercentageOf(rules.getRequiredItemID(promotion, cheapest));
+                savings += units * Amount.percentageOf(prices[cheapest], tax);
+            } else {
+                savings += units * prices[cheapest];
+            }
+            quantities[cheapest] -= units;
+            freeUnits -= units;
+        }
+        return savings;
+    }
+}
@@ -0,0 +1,194 @@
+package se.kth.iv1350.pos.model;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+ * The revenue of all paid sales, shared by everything that shows or logs revenue. Besides the total,
+ * the revenue is kept in rolling buckets per minute for the last hour, per hour for the last day
+ * and per day for the last month, so the revenue of a recent period is found by adding a few
+ * buckets, without looking at the sales themselves.
+ *
+ * All counters are LongAdders, which spread concurrent updates over several cells, so registers
+ * that are paid at the same time do not contend. A bucket is replaced by a new one when its slot
+ * in the ring is needed for a later period. Days follow the time zone the aggregator is created with.
+ * This class is thread safe.
+ */
+public final class RevenueAggregator implements SaleObserver {
+    public static final int MINUTE_BUCKETS = 60;
+    public static final int HOUR_BUCKETS = 24;
+    public static final int DAY_BUCKETS = 31;
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long MILLIS_PER_HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final LongSupplier clockMillis;
+    private final ZoneId zone;
+    private final LongAdder totalRevenue = new LongAdder();
+    private final LongAdder saleCount = new LongAdder();
+    private final BucketRing minutes = new BucketRing(MINUTE_BUCKETS);
+    private final BucketRing hours = new BucketRing(HOUR_BUCKETS);
+    private final BucketRing days = new BucketRing(DAY_BUCKETS);
+
+    /*
+     * Creates a new instance that uses the system clock and time zone.
+     */
+    public RevenueAggregator() {
+        this(System::currentTimeMillis, ZoneId.systemDefault());
+    }
+
+    RevenueAggregator(LongSupplier clockMillis, ZoneId zone) {
+        this.clockMillis = clockMillis;
+        this.zone = zone;
+    }
+
+    /*
+     * Adds the total of a paid sale to the revenue.
+     *
+     * @param paidSaleAmount The total amount of the paid sale.
+     */
+    @Override
+    public void newSaleWasPaid(Amount paidSaleAmount) {
+        long nowMillis = clockMillis.getAsLong();
+        long minorUnits = paidSaleAmount.getMinorUnits();
+        totalRevenue.add(minorUnits);
+        saleCount.increment();
+        minutes.add(minuteOf(nowMillis), minorUnits);
+        hours.add(hourOf(nowMillis), minorUnits);
+        days.add(dayOf(nowMillis), minorUnits);
+    }
+
+    /*
+     * Adds revenue from before this instance was created, such as a total restored from a log.
+     * It is included in the total revenue, but not in the sale count or in any period.
+     *
+     * @param restoredRevenue The revenue to add.
+     */
+    public void addRestoredRevenue(Amount restoredRevenue) {
+        totalRevenue.add(restoredRevenue.getMinorUnits());
+    }
+
+    /*
+     * Gets the revenue of all sales paid since this instance was created, and any restored revenue.
+     *
+     * @return The total revenue.
+     */
+    public Amount getTotalRevenue() {
+        return Amount.ofMinorUnits(totalRevenue.sum());
+    }
+
+    /*
+     * Gets the number of sales paid since this instance was created.
+     *
+     * @return The number of paid sales.
+     */
+    public long getSaleCount() {
+        return saleCount.sum();
+    }
+
+    /*
+     * Gets the revenue of the current minute and the minutes before it.
+     *
+     * @param minuteCount The number of minutes, including the current one, from 1 to MINUTE_BUCKETS.
+     * @return The revenue of the minutes.
+     * @throws IllegalArgumentException If the number of minutes is out of range.
+     */
+    public Amount getRevenueInLastMinutes(int minuteCount) {
+        return Amount.ofMinorUnits(minutes.sumLast(minuteOf(clockMillis.getAsLong()), minuteCount));
+    }
+
+    /*
+     * Gets the revenue of the current hour and the hours before it.
+     *
+     * @param hourCount The number of hours, including the current one, from 1 to HOUR_BUCKETS.
+     * @return The revenue of the hours.
+     * @throws IllegalArgumentException If the number of hours is out of range.
+     */
+    public Amount getRevenueInLastHours(int hourCount) {
+        return Amount.ofMinorUnits(hours.sumLast(hourOf(clockMillis.getAsLong()), hourCount));
+    }
+
+    /*
+     * Gets the revenue of the current day and the days before it.
+     *
+     * @param dayCount The number of days, including the current one, from 1 to DAY_BUCKETS.
+     * @return The revenue of the days.
+     * @throws IllegalArgumentException If the number of days is out of range.
+     */
+    public Amount getRevenueInLastDays(int dayCount) {
+        return Amount.ofMinorUnits(days.sumLast(dayOf(clockMillis.getAsLong()), dayCount));
+    }
+
+    private static long minuteOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, MILLIS_PER_MINUTE);
+    }
+
+    private static long hourOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, MILLIS_PER_HOUR);
+    }
+
+    private long dayOf(long epochMillis) {
+        long offsetMillis = zone.getRules().getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+        return Math.floorDiv(epochMillis + offsetMillis, MILLIS_PER_DAY);
+    }
+
+    /*
+     * A fixed number of buckets, where the bucket of a period is stored in the slot given by the
+     * period number modulo the number of slots.
+     */
+    private static final class BucketRing {
+        private final AtomicReferenceArray<Bucket> slots;
+
+        BucketRing(int size) {
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        void add(long period, long minorUnits) {
+            int slot = slotOf(period);
+            while (true) {
+                Bucket bucket = slots.get(slot);
+                if (bucket != null && bucket.period == period) {
+                    bucket.revenue.add(minorUnits);
+                    return;
+                }
+                if (bucket != null && bucket.period > period) {
+                    // The period has already rolled out of the ring
+                    return;
+                }
+                slots.compareAndSet(slot, bucket, new Bucket(period));
+            }
+        }
+
+        long sumLast(long currentPeriod, int periodCount) {
+            if (periodCount < 1 || periodCount > slots.length()) {
+                throw new IllegalArgumentException("The number of periods must be between 1 and " + slots.length()
+                                                   + ", was " + periodCount + ".");
+            }
+            long sum = 0;
+            for (long period = currentPeriod - periodCount + 1; period <= currentPeriod; period++) {
+                Bucket bucket = slots.get(slotOf(period));
+                if (bucket != null && bucket.period == period) {
+                    sum += bucket.revenue.sum();
+                }
+            }
+            return sum;
+        }
+
+        private int slotOf(long period) {
+            return (int) Math.floorMod(period, (long) slots.length());
+        }
+    }
+
+    private static final class Bucket {
+        final long period;
+        final LongAdder revenue = new LongAdder();
+
+        Bucket(long period) {
+            this.period = period;
+        }
+    }
+}
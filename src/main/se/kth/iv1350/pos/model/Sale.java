@@ -4,86 +4,156 @@ import java.time.LocalTime;
 import java.time.LocalDateTime; 
 import se.kth.iv1350.pos.integration.ItemDTO;
 import se.kth.iv1350.pos.integration.DiscountInfoDTO;
+import se.kth.iv1350.pos.integration.PromotionRules;
+import se.kth.iv1350.pos.util.IntIntHashMap;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors; 
 
 /*
  * One single sale made by one customer and payed with one payment.
  */
 public class Sale {
     private LocalTime saleStartTime; 
-    private Amount runningTotalBeforeTax; 
-    private Amount totalVAT;
+    private final AmountAccumulator runningTotalBeforeTax; 
+    private final AmountAccumulator totalVAT;
     private List<SaleItem> items;
+    private final IntIntHashMap lineIndexByItemID;
+    private final PromotionEngine promotions;
+    private long promotionSavingsMinorUnits;
+    private long promotionSavingsVATMinorUnits;
     private Amount amountPaidByCustomer; 
     private Amount changeToCustomer; 
     private Amount finalTotalWithTax; 
+    private boolean paid;
     private List<SaleObserver> observers = new ArrayList<>(); 
+    private final SaleEventBus saleEvents;
+    private long modificationCount;
+    private int discountPercentage;
+    private long discountAmountMinorUnits;
+    private int discountCustomerID;
+    private boolean discountRequested;
+    private SaleInfoDTO cachedSaleInfo;
+    private long cachedSaleInfoVersion;
+    private List<SaleLineDTO> cachedLines;
+    private long cachedLinesVersion;
+
+    private static final int NO_LINE = -1;
+    private static final long NO_VERSION = -1;
 
     private static class SaleItem {
         ItemDTO itemInfo;
         int quantity;
+        SaleLineDTO lineDTO;
 
         SaleItem(ItemDTO itemInfo, int quantity) {
             this.itemInfo = itemInfo;
             this.quantity = quantity;
         }
 
-        // Helper method to format item for DTOs/internal use
-        String formatForDTO() {
-            return String.format("%s (Qty: %d, Price: %s, Tax: %d%%)",
-                                 itemInfo.getDescription(),
-                                 quantity,
-                                 itemInfo.getPrice(), 
-                                 (int)itemInfo.getTax()); 
+        // A repeated scan can only be merged into this line if the price and tax are unchanged
+        boolean canMerge(ItemDTO scannedItem) {
+            return itemInfo.getPrice().equals(scannedItem.getPrice())
+                   && itemInfo.getTax() == scannedItem.getTax();
+        }
+
+        void increaseQuantity(int addedQuantity) {
+            this.quantity += addedQuantity;
+            this.lineDTO = null;
+        }
+
+        // Helper method to describe the item for DTOs. The DTO is reused until the line changes.
+        SaleLineDTO toLineDTO() {
+            if (lineDTO == null) {
+                Amount unitPrice = itemInfo.getPrice();
+                lineDTO = new SaleLineDTO(itemInfo.getItemID(),
+                                          itemInfo.getDescription(),
+                                          quantity,
+                                          unitPrice,
+                                          (int) itemInfo.getTax(),
+                                          unitPrice.multiply(quantity));
+            }
+            return lineDTO;
         }
     }
 
     /*
-     * Creates a new instance and saves the time of the sale start.
+     * Creates a new instance without promotions and saves the time of the sale start.
      */
     public Sale() {
+        this(PromotionRules.NONE);
+    }
+
+    /*
+     * Creates a new instance and saves the time of the sale start.
+     *
+     * @param promotionRules The promotions that are applied to the items of this sale.
+     */
+    public Sale(PromotionRules promotionRules) {
+        this(promotionRules, null);
+    }
+
+    /*
+     * Creates a new instance that also publishes its payment to the specified event bus, and saves
+     * the time of the sale start.
+     *
+     * @param promotionRules The promotions that are applied to the items of this sale.
+     * @param saleEvents The bus the payment is published to, or null if it is not published.
+     */
+    public Sale(PromotionRules promotionRules, SaleEventBus saleEvents) {
+        this.saleEvents = saleEvents;
+        this.promotions = new PromotionEngine(promotionRules);
         this.saleStartTime = LocalTime.now();
-        this.runningTotalBeforeTax = new Amount(0);
-        this.totalVAT = new Amount(0);
+        this.runningTotalBeforeTax = new AmountAccumulator();
+        this.totalVAT = new AmountAccumulator();
         this.items = new ArrayList<>();
+        this.lineIndexByItemID = new IntIntHashMap();
         this.amountPaidByCustomer = new Amount(0);
         this.changeToCustomer = new Amount(0);
         this.finalTotalWithTax = null; 
+        this.modificationCount = 0;
+        this.cachedSaleInfoVersion = NO_VERSION;
+        this.cachedLinesVersion = NO_VERSION;
     }
 
     /*
      * Adds an item to the sale. This method is called by the Controller.
+     * If the item is already in the sale, its quantity is increased instead of adding a new line.
      *
      * @param itemInfo The ItemDTO containing item information.
      * @param quantity The quantity of the item to add.
      */
     public void addItem(ItemDTO itemInfo, int quantity) {
-        SaleItem saleItem = new SaleItem(itemInfo, quantity);
-        this.items.add(saleItem);
+        int lineIndex = lineIndexByItemID.get(itemInfo.getItemID(), NO_LINE);
+        if (lineIndex != NO_LINE && items.get(lineIndex).canMerge(itemInfo)) {
+            items.get(lineIndex).increaseQuantity(quantity);
+        } else {
+            addLine(itemInfo, quantity);
+        }
 
         updateTotalsForItem(itemInfo, quantity); 
+        this.promotionSavingsMinorUnits = promotions.itemAdded(itemInfo.getItemID(), quantity, itemInfo.getPrice(),
+                                                               (int) itemInfo.getTax());
+        this.promotionSavingsVATMinorUnits = promotions.getSavingsVAT();
+        modificationCount++;
+    }
+
+    private void addLine(ItemDTO itemInfo, int quantity) {
+        this.items.add(new SaleItem(itemInfo, quantity));
+        this.lineIndexByItemID.put(itemInfo.getItemID(), this.items.size() - 1);
     }
 
     private void updateTotalsForItem(ItemDTO itemInfo, int quantity) {
         Amount itemPriceBeforeTax = itemInfo.getPrice();
     
         // Update running total
-        Amount itemsTotalPrice = itemPriceBeforeTax.multiply(quantity);
-        this.runningTotalBeforeTax = this.runningTotalBeforeTax.plus(itemsTotalPrice);
+        this.runningTotalBeforeTax.addMultiplied(itemPriceBeforeTax, quantity);
     
-        calculateAndAddVAT(itemPriceBeforeTax, itemInfo.getTax(), quantity);
-
-        Amount currentTotalInclVAT = this.runningTotalBeforeTax.plus(this.totalVAT);
+        calculateAndAddVAT(itemPriceBeforeTax, (int) itemInfo.getTax(), quantity);
     }
 
-    private void calculateAndAddVAT(Amount itemPriceBeforeTax, double taxPercentage, int quantity) {
-        double taxRate = taxPercentage / 100.0;
-        Amount itemVAT = new Amount(itemPriceBeforeTax.getAmount() * taxRate);
-        Amount itemsTotalVAT = itemVAT.multiply(quantity);
-        this.totalVAT = this.totalVAT.plus(itemsTotalVAT);
+    private void calculateAndAddVAT(Amount itemPriceBeforeTax, int taxPercentage, int quantity) {
+        this.totalVAT.addPercentageMultiplied(itemPriceBeforeTax, taxPercentage, quantity);
     }
 
 
@@ -96,61 +166,112 @@ public class Sale {
         return createSaleInfoDTO(); 
     }
 
-    // Helper method to create SaleInfoDTO
+    // Helper method to create SaleInfoDTO. The snapshot is only rebuilt if the sale changed since the last call.
     private SaleInfoDTO createSaleInfoDTO() {
-        List<String> itemStrings = getFormattedItemStrings(); 
+        if (cachedSaleInfoVersion != modificationCount) {
+            List<SaleLineDTO> lines = getSaleLines(); 
+            cachedSaleInfo = new SaleInfoDTO(Amount.ofMinorUnits(discountedTotalBeforeTax()),
+                                             Amount.ofMinorUnits(totalBeforeDiscount()),
+                                             lines, Amount.ofMinorUnits(totalVATAfterPromotions()));
+            cachedSaleInfoVersion = modificationCount;
+        }
+        return cachedSaleInfo;
+    }
 
-        return new SaleInfoDTO(this.runningTotalBeforeTax, itemStrings, this.totalVAT);
+    /*
+     * Gets the version of the sale state. The version changes every time an item is added or
+     * a discount is applied, and is unchanged otherwise.
+     *
+     * @return The number of modifications made to this sale.
+     */
+    public long getModificationCount() {
+        return modificationCount;
     }
 
 
     /*
      * Applies a discount to the sale based on the provided DiscountInfoDTO.
      * This method is called by the Controller after checking for applicable discounts.
+     * The discount replaces any discount applied before, discounts are never added to each other.
+     * It also applies to items that are added later, since the discounted total is calculated from
+     * the undiscounted total every time it is read.
      *
      * @param discountInfo The DiscountInfoDTO containing discount details.
      */
     public void applyDiscount(DiscountInfoDTO discountInfo) {
         if (discountInfo != null) {
-            Amount totalBeforeDiscount = this.runningTotalBeforeTax; 
-            Amount totalAfterDiscount = calculateTotalAfterDiscount(discountInfo);
-
-            this.runningTotalBeforeTax = totalAfterDiscount;
+            applySpecificDiscount(discountInfo);
+            modificationCount++;
         } else {
             // No discount to apply, do nothing.
         }
     }
 
+    /*
+     * Applies the discount that was found for the specified customer, see applyDiscount.
+     * The customer is remembered, also if no discount was found.
+     *
+     * @param customerID The ID of the customer the discount was looked up for.
+     * @param discountInfo The DiscountInfoDTO containing discount details, or null if there is no discount.
+     */
+    public void applyDiscount(int customerID, DiscountInfoDTO discountInfo) {
+        applyDiscount(discountInfo);
+        this.discountCustomerID = customerID;
+        this.discountRequested = true;
+    }
 
-    private Amount calculateTotalAfterDiscount(DiscountInfoDTO discountInfo) {
+    /*
+     * Checks if the discount of the specified customer is the latest discount looked up for this sale.
+     *
+     * @param customerID The ID of the customer.
+     * @return true if the latest discount was looked up for the customer, false otherwise.
+     */
+    public boolean isDiscountRequestedBy(int customerID) {
+        return discountRequested && discountCustomerID == customerID;
+    }
 
-        if (discountInfo == null) {
-            return this.runningTotalBeforeTax;
+    private void applySpecificDiscount(DiscountInfoDTO discountInfo) {
+        switch (discountInfo.getDiscountType()) {
+            case PERCENTAGE:
+                this.discountPercentage = discountInfo.getDiscountPercentage();
+                this.discountAmountMinorUnits = 0;
+                break;
+            case AMOUNT:
+                this.discountPercentage = 0;
+                this.discountAmountMinorUnits = discountInfo.getDiscountAmount().getMinorUnits();
+                break;
         }
-
-        return applySpecificDiscount(discountInfo);
     }
 
-    private Amount applySpecificDiscount(DiscountInfoDTO discountInfo) {
-        if ("Percentage".equals(discountInfo.getDiscountType())) {
-            return calculateAfterPercentageDiscount(discountInfo.getDiscountPercentage());
-        } else if ("Amount".equals(discountInfo.getDiscountType())) {
-            return calculateAfterAmountDiscount(discountInfo.getDiscountAmount());
-        } else {
-            return this.runningTotalBeforeTax; 
-        }
+    /*
+     * Gets the amount the customer saves on promotions, such as "3 for 2", before tax.
+     *
+     * @return The promotion savings.
+     */
+    public Amount getPromotionSavings() {
+        return Amount.ofMinorUnits(promotionSavingsMinorUnits);
     }
 
-    private Amount calculateAfterPercentageDiscount(int percentage) {
-        double discountFactor = (double) percentage / 100.0;
-        Amount discountAmount = new Amount(this.runningTotalBeforeTax.getAmount() * discountFactor);
-        return this.runningTotalBeforeTax.minus(discountAmount);
+    private long totalBeforeDiscount() {
+        return runningTotalBeforeTax.getMinorUnits() - promotionSavingsMinorUnits;
     }
 
-    private Amount calculateAfterAmountDiscount(Amount discountAmount) {
-        return this.runningTotalBeforeTax.minus(discountAmount); 
+    // The customer pays no VAT on what promotions make free, discounts do not change the VAT
+    private long totalVATAfterPromotions() {
+        return totalVAT.getMinorUnits() - promotionSavingsVATMinorUnits;
     }
 
+    /*
+     * The discount is kept as terms that are applied to the undiscounted total, so adding an item
+     * only updates the undiscounted total, and the discounted total is still calculated in constant time.
+     * Promotions are applied before the discount. A fixed discount never makes the total negative.
+     */
+    private long discountedTotalBeforeTax() {
+        long undiscountedTotal = totalBeforeDiscount();
+        long percentageDiscount = Amount.percentageOf(undiscountedTotal, discountPercentage);
+        long fixedDiscount = Math.min(discountAmountMinorUnits, undiscountedTotal - percentageDiscount);
+        return undiscountedTotal - percentageDiscount - Math.max(0, fixedDiscount);
+    }
 
     /*
      * Calculates and stores the final total price for the sale, including tax.
@@ -159,7 +280,8 @@ public class Sale {
      * @return The final total amount including VAT.
      */
     public Amount calculateAndGetFinalTotal() {
-        this.finalTotalWithTax = this.runningTotalBeforeTax.plus(this.totalVAT);
+        this.finalTotalWithTax = Amount.ofMinorUnits(discountedTotalBeforeTax() 
+                                                     + totalVATAfterPromotions());
 
         return this.finalTotalWithTax;
     }
@@ -183,13 +305,17 @@ public class Sale {
     }
 
     /**
-     * Notifies all registered observers that a sale has been paid.
+     * Notifies all observers registered with this sale that it has been paid, and publishes the
+     * payment to the observers of the event bus, which are notified on their own threads.
      * @param paidSaleAmount The total amount of the paid sale.
      */
     private void notifyObservers(Amount paidSaleAmount) {
         for (SaleObserver observer : observers) {
             observer.newSaleWasPaid(paidSaleAmount);
         }
+        if (saleEvents != null) {
+            saleEvents.publish(paidSaleAmount);
+        }
     }
 
 
@@ -202,16 +328,37 @@ public class Sale {
      * TODO: @throws IllegalArgumentException if the paid amount is less than the total amount.
      */
     public ReceiptDTO processPaymentAndGetReceiptDetails(Amount paidAmount) {
-        ensureSaleIsEnded();
+        ReceiptDTO receipt = createReceiptForPayment(paidAmount);
+        completePayment(receipt);
+        return receipt;
+    }
 
-        this.amountPaidByCustomer = paidAmount;
-        this.changeToCustomer = calculateChange(paidAmount); 
+    /*
+     * Checks the payment and creates the receipt for it, without changing the sale. The sale is
+     * paid when completePayment is called with the receipt.
+     *
+     * @param paidAmount The amount of money received from the customer.
+     * @return A ReceiptDTO containing all details for the receipt.
+     * @throws IllegalStateException if the final total hasn't been calculated yet (endSale not called).
+     * @throws IllegalArgumentException if the paid amount is less than the total amount.
+     */
+    public ReceiptDTO createReceiptForPayment(Amount paidAmount) {
+        ensureSaleIsEnded();
+        Amount change = calculateChange(paidAmount);
+        return createReceiptDTO(paidAmount, change);
+    }
 
-        if (this.finalTotalWithTax != null) { 
-             notifyObservers(this.finalTotalWithTax);
-        }
+    /*
+     * Marks the sale as paid with the payment of the specified receipt, and notifies the observers.
+     *
+     * @param receipt The receipt created by createReceiptForPayment.
+     */
+    public void completePayment(ReceiptDTO receipt) {
+        this.amountPaidByCustomer = receipt.getAmountPaid();
+        this.changeToCustomer = receipt.getChange();
+        this.paid = true;
 
-        return createReceiptDTO(); 
+        notifyObservers(this.finalTotalWithTax);
     }
 
     private void ensureSaleIsEnded() {
@@ -236,27 +383,34 @@ public class Sale {
     }
 
     private boolean isPaymentInsufficient(Amount paidAmount) {
-        return paidAmount.getAmount() < this.finalTotalWithTax.getAmount();
+        return paidAmount.getMinorUnits() < this.finalTotalWithTax.getMinorUnits();
     }
 
     /*
      * Creates the ReceiptDTO containing all necessary information.
      */
-    private ReceiptDTO createReceiptDTO() {
+    private ReceiptDTO createReceiptDTO(Amount paidAmount, Amount change) {
         LocalDateTime saleCompleteTime = LocalDateTime.now(); 
-        List<String> itemStrings = getFormattedItemStrings(); 
+        List<SaleLineDTO> lines = getSaleLines(); 
 
         return new ReceiptDTO(saleCompleteTime,
-                              itemStrings,
+                              lines,
                               this.finalTotalWithTax,
-                              this.amountPaidByCustomer,
-                              this.changeToCustomer);
+                              paidAmount,
+                              change);
     }
 
-    private List<String> getFormattedItemStrings() {
-        return this.items.stream()
-                         .map(SaleItem::formatForDTO) 
-                         .collect(Collectors.toList());
+    // Unchanged lines share their DTO with earlier snapshots, only changed lines are created again
+    private List<SaleLineDTO> getSaleLines() {
+        if (cachedLinesVersion != modificationCount) {
+            SaleLineDTO[] lines = new SaleLineDTO[this.items.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = this.items.get(i).toLineDTO();
+            }
+            cachedLines = List.of(lines);
+            cachedLinesVersion = modificationCount;
+        }
+        return cachedLines;
     }
 
     /*
@@ -288,6 +442,15 @@ public class Sale {
         return finalTotalWithTax;
     }
 
+    /*
+     * Checks if the sale has been paid.
+     *
+     * @return true if a payment has been successfully processed, false otherwise.
+     */
+    public boolean isPaid() {
+        return paid;
+    }
+
     /*
      * Gets the calculated change amount.
      *
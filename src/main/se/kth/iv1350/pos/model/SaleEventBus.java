@@ -0,0 +1,360 @@
+package se.kth.iv1350.pos.model;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Delivers paid sales to sale observers on their own threads, so a payment does not wait for an
+ * observer unless the ring is full. The paid totals are written to a preallocated ring buffer of minor units, which is
+ * never resized, so publishing an event does not allocate.
+ *
+ * Every subscribed observer has a consumer thread that follows the published sequence with its
+ * own sequence, and handles all events that have been published since its last batch, up to a
+ * maximum batch size. A consumer that has caught up spins briefly and then parks until the next
+ * event is published, so idle consumers use no CPU. The publisher only unparks consumers that are
+ * parked, a consumer that is busy costs the publisher one volatile read. Concurrent publishers,
+ * for example several registers, take turns to write a slot, so the ring itself always has a
+ * single producer.
+ *
+ * No event is ever dropped, so a publisher waits when the slowest consumer is a whole ring behind,
+ * and the publishers behind it wait for the lock it holds. A payment is therefore never delayed
+ * while every observer is less than the capacity behind, and at most by the time the slowest
+ * observer takes for one batch when the ring is full. Publishes that had to wait are counted, see
+ * getBlockedPublishCount. An observer that can not keep up should be unsubscribed with
+ * Subscription.cancel.
+ */
+public final class SaleEventBus {
+    static final int DEFAULT_CAPACITY = 1024;
+    static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    private static final int IDLE_SPINS = 100;
+    private static final long FULL_RING_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long NO_SEQUENCE = -1;
+
+    private final long[] ring;
+    private final int mask;
+    private final int maxBatchSize;
+    private final AtomicLong published = new AtomicLong(NO_SEQUENCE);
+    private final Object publishLock = new Object();
+    private final Object subscriptionLock = new Object();
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    private final AtomicLong blockedPublishCount = new AtomicLong();
+    private long cachedSlowestSequence = NO_SEQUENCE;
+    private volatile Thread waitingPublisher;
+    private volatile boolean running = true;
+
+    /*
+     * Creates a new bus with the default capacity and batch size.
+     */
+    public SaleEventBus() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /*
+     * Creates a new bus.
+     *
+     * @param capacity The number of events the ring holds, rounded up to a power of two.
+     * @param maxBatchSize The largest number of events a consumer handles before it updates its sequence.
+     */
+    public SaleEventBus(int capacity, int maxBatchSize) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new long[size];
+        this.mask = size - 1;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /*
+     * Subscribes an observer, which is notified of every sale that is paid from now on, on a thread
+     * of its own. The observers are notified in the order the sales were paid.
+     *
+     * @param observer The observer to notify.
+     * @return The subscription, which tells how far the observer is behind and can be cancelled.
+     * @throws IllegalStateException If the bus has been shut down.
+     */
+    public Subscription subscribe(SaleObserver observer) {
+        Subscription subscription;
+        synchronized (publishLock) {
+            ensureRunning();
+            synchronized (subscriptionLock) {
+                subscription = new Subscription(observer, published.get(), subscriptions.length);
+                Subscription[] added = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+                added[subscriptions.length] = subscription;
+                subscriptions = added;
+            }
+        }
+        subscription.consumer.start();
+        return subscription;
+    }
+
+    /*
+     * Publishes a paid sale. Returns as soon as the event is written to the ring.
+     *
+     * @param paidSaleAmount The total amount of the paid sale.
+     * @throws IllegalStateException If the bus has been shut down.
+     */
+    public void publish(Amount paidSaleAmount) {
+        synchronized (publishLock) {
+            ensureRunning();
+            long sequence = published.get() + 1;
+            waitForFreeSlot(sequence);
+            ring[(int) sequence & mask] = paidSaleAmount.getMinorUnits();
+            published.set(sequence);
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.wakeIfParked();
+        }
+    }
+
+    private void ensureRunning() {
+        if (!running) {
+            throw new IllegalStateException("The sale event bus has been shut down.");
+        }
+    }
+
+    /*
+     * The slowest consumer is only looked up again when the cached sequence says the ring could be
+     * full. A waiting publisher is unparked by the consumers when they finish a batch, the pause only
+     * limits the wait if a consumer is cancelled meanwhile.
+     */
+    private void waitForFreeSlot(long sequence) {
+        long wrapPoint = sequence - ring.length;
+        if (wrapPoint <= cachedSlowestSequence) {
+            return;
+        }
+        boolean blocked = false;
+        while (wrapPoint > cachedSlowestSequence) {
+            waitingPublisher = Thread.currentThread();
+            cachedSlowestSequence = slowestSequence(sequence - 1);
+            if (wrapPoint > cachedSlowestSequence) {
+                blocked = true;
+                LockSupport.parkNanos(this, FULL_RING_PAUSE_NANOS);
+            }
+        }
+        waitingPublisher = null;
+        if (blocked) {
+            blockedPublishCount.incrementAndGet();
+        }
+    }
+
+    private long slowestSequence(long upperLimit) {
+        long slowest = upperLimit;
+        for (Subscription subscription : subscriptions) {
+            slowest = Math.min(slowest, subscription.sequence);
+        }
+        return slowest;
+    }
+
+    /*
+     * Stops accepting events and waits until every observer has been notified of all published
+     * events. The consumer threads are then stopped.
+     */
+    public void shutdown() {
+        synchronized (publishLock) {
+            running = false;
+        }
+        for (Subscription subscription : subscriptions) {
+            LockSupport.unpark(subscription.consumer);
+        }
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /*
+     * Gets the sequence number of the latest published event.
+     *
+     * @return The sequence, or -1 if nothing has been published.
+     */
+    public long getPublishedSequence() {
+        return published.get();
+    }
+
+    /*
+     * Gets the number of publishes that had to wait because the ring was full.
+     *
+     * @return The number of blocked publishes.
+     */
+    public long getBlockedPublishCount() {
+        return blockedPublishCount.get();
+    }
+
+    /*
+     * One observer subscribed to the bus, with the consumer thread that notifies it.
+     */
+    public final class Subscription {
+        private final SaleObserver observer;
+        private final Thread consumer;
+        private final AtomicLong notifiedCount = new AtomicLong();
+        private final AtomicLong batchCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private volatile long sequence;
+        private volatile long maxLag;
+        private volatile boolean parked;
+        private volatile boolean cancelled;
+
+        private Subscription(SaleObserver observer, long startSequence, int number) {
+            this.observer = observer;
+            this.sequence = startSequence;
+            this.consumer = new Thread(this::consume, "sale-events-" + number);
+            this.consumer.setDaemon(true);
+        }
+
+        private void consume() {
+            long next = sequence + 1;
+            int idleSpins = 0;
+            while (!cancelled) {
+                long available = published.get();
+                if (available < next) {
+                    // Nothing is published after running is cleared, so the sequence read after it is final
+                    if (!running && published.get() < next) {
+                        return;
+                    }
+                    if (idleSpins < IDLE_SPINS) {
+                        idleSpins++;
+                        Thread.onSpinWait();
+                    } else {
+                        parkUntilPublished(next);
+                    }
+                    continue;
+                }
+                idleSpins = 0;
+                maxLag = Math.max(maxLag, available - sequence);
+                long last = Math.min(available, next + maxBatchSize - 1);
+                for (; next <= last && !cancelled; next++) {
+                    notifyObserver(ring[(int) next & mask]);
+                }
+                batchCount.incrementAndGet();
+                sequence = last;
+                Thread publisher = waitingPublisher;
+                if (publisher != null) {
+                    LockSupport.unpark(publisher);
+                }
+            }
+        }
+
+        /*
+         * The flag is set before the published sequence is read again, and the publisher reads the
+         * flag after it has written the sequence, so an event can not be published unseen between
+         * the check and the park.
+         */
+        private void parkUntilPublished(long next) {
+            parked = true;
+            if (published.get() < next && running && !cancelled) {
+                LockSupport.park(this);
+            }
+            parked = false;
+        }
+
+        private void wakeIfParked() {
+            if (parked) {
+                LockSupport.unpark(consumer);
+            }
+        }
+
+        private void notifyObserver(long paidMinorUnits) {
+            try {
+                observer.newSaleWasPaid(Amount.ofMinorUnits(paidMinorUnits));
+                notifiedCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                failedCount.incrementAndGet();
+                System.err.println("A sale observer failed - " + e.getMessage());
+            }
+        }
+
+        /*
+         * Unsubscribes the observer. It is not notified of any event after this method returns,
+         * also not of events that were published before and that it has not been notified of yet.
+         * The bus no longer waits for the observer when the ring is full. If this method is called
+         * by the observer itself, it returns without waiting for the current notification to end.
+         */
+        public void cancel() {
+            // Not under the publish lock, since a publisher may hold it while it waits for this consumer
+            synchronized (subscriptionLock) {
+                if (!cancelled) {
+                    cancelled = true;
+                    Subscription[] remaining = new Subscription[subscriptions.length - 1];
+                    int index = 0;
+                    for (Subscription subscription : subscriptions) {
+                        if (subscription != this) {
+                            remaining[index++] = subscription;
+                        }
+                    }
+                    subscriptions = remaining;
+                }
+            }
+            LockSupport.unpark(consumer);
+            if (Thread.currentThread() == consumer) {
+                return;
+            }
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /*
+         * Checks if the subscription has been cancelled.
+         *
+         * @return true if cancel has been called, false otherwise.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /*
+         * Gets the number of published events the observer has not yet been notified of.
+         *
+         * @return The current lag.
+         */
+        public long getLag() {
+            return published.get() - sequence;
+        }
+
+        /*
+         * Gets the largest lag seen when the consumer started a batch.
+         *
+         * @return The largest lag.
+         */
+        public long getMaxLag() {
+            return maxLag;
+        }
+
+        /*
+         * Gets the number of events the observer has handled without throwing an exception.
+         *
+         * @return The number of notifications.
+         */
+        public long getNotifiedCount() {
+            return notifiedCount.get();
+        }
+
+        /*
+         * Gets the number of batches the consumer has handled. Fewer batches than notifications
+         * means that events were handled together.
+         *
+         * @return The number of batches.
+         */
+        public long getBatchCount() {
+            return batchCount.get();
+        }
+
+        /*
+         * Gets the number of events the observer threw an exception for.
+         *
+         * @return The number of failed notifications.
+         */
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package se.kth.iv1350.pos.model;
 
-import java.util.ArrayList;
 import java.util.List;
 
 
@@ -10,19 +9,33 @@ import java.util.List;
  */
 public final class SaleInfoDTO {
     private final Amount runningTotal; 
-    private final List<String> items; 
+    private final Amount totalBeforeDiscount;
+    private final List<SaleLineDTO> items; 
     private final Amount totalVAT; 
 
+    /*
+     * Creates a new instance of a sale without a discount.
+     *
+     * @param runningTotal The current total price before tax.
+     * @param items The lines of the sale.
+     * @param totalVAT The total VAT of the sale.
+     */
+    public SaleInfoDTO(Amount runningTotal, List<SaleLineDTO> items, Amount totalVAT) {
+        this(runningTotal, runningTotal, items, totalVAT);
+    }
+
     /*
      * Creates a new instance.
      *
-     * @param runningTotal The current total price before discount.
+     * @param runningTotal The current total price before tax, after promotions and the discount.
+     * @param totalBeforeDiscount The current total price before tax, after promotions but before the discount.
+     * @param items The lines of the sale.
+     * @param totalVAT The total VAT of the sale.
      */
-    public SaleInfoDTO(Amount runningTotal, List<String> items, Amount totalVAT) {
+    public SaleInfoDTO(Amount runningTotal, Amount totalBeforeDiscount, List<SaleLineDTO> items, Amount totalVAT) {
         this.runningTotal = runningTotal;
-        this.items = new ArrayList<>(items);
-
-
+        this.totalBeforeDiscount = totalBeforeDiscount;
+        this.items = List.copyOf(items);
         this.totalVAT = totalVAT;
     }
 
@@ -32,7 +45,17 @@ public final class SaleInfoDTO {
         return runningTotal;
     }
 
-    public List<String> getItems() {
+    /*
+     * Gets the total the discount is calculated from, so looking up the discount again gives the
+     * same result as long as no item is added.
+     *
+     * @return The total before tax and discount, after promotions.
+     */
+    public Amount getTotalBeforeDiscount() {
+        return totalBeforeDiscount;
+    }
+
+    public List<SaleLineDTO> getItems() {
         return items; 
     }
 
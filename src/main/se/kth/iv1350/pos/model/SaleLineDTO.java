@@ -0,0 +1,59 @@
+package se.kth.iv1350.pos.model;
+
+/*
+ * Represents one line of a sale, that is one item and the quantity bought of it.
+ * Contains immutable, typed information so that no layer has to parse formatted text.
+ */
+public final class SaleLineDTO {
+    private final int itemID;
+    private final String description;
+    private final int quantity;
+    private final Amount unitPrice;
+    private final int taxRate;
+    private final Amount lineTotal;
+
+    /*
+     * Creates a new instance representing one sale line.
+     *
+     * @param itemID The unique id of the item.
+     * @param description A description of the item.
+     * @param quantity The quantity of the item bought.
+     * @param unitPrice The price of one unit of the item (excluding tax).
+     * @param taxRate The tax rate of the item as percentage points (e.g., 25 for 25%).
+     * @param lineTotal The price of the whole line, unit price times quantity (excluding tax).
+     */
+    public SaleLineDTO(int itemID, String description, int quantity, Amount unitPrice, int taxRate, Amount lineTotal) {
+        this.itemID = itemID;
+        this.description = description;
+        this.quantity = quantity;
+        this.unitPrice = unitPrice;
+        this.taxRate = taxRate;
+        this.lineTotal = lineTotal;
+    }
+
+    // Getters
+
+    public int getItemID() {
+        return itemID;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public Amount getUnitPrice() {
+        return unitPrice;
+    }
+
+    public int getTaxRate() {
+        return taxRate;
+    }
+
+    public Amount getLineTotal() {
+        return lineTotal;
+    }
+}
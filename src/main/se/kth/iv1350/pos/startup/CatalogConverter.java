@@ -0,0 +1,34 @@
+package se.kth.iv1350.pos.startup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import se.kth.iv1350.pos.integration.HashedItemCatalog;
+import se.kth.iv1350.pos.integration.MappedItemCatalog;
+
+/*
+ * A command line tool that converts a text item catalog into the binary catalog format that
+ * registers map into memory at startup.
+ */
+public class CatalogConverter {
+    /*
+     * Converts a text catalog to a binary catalog.
+     *
+     * @param args The text catalog file to read, followed by the binary catalog file to write.
+     */
+    public static void main(String[] args) {
+        if (args == null || args.length != 2) {
+            System.err.println("Usage: CatalogConverter <text catalog file> <binary catalog file>");
+            return;
+        }
+        Path textCatalog = Paths.get(args[0]);
+        Path binaryCatalog = Paths.get(args[1]);
+
+        long start = System.nanoTime();
+        HashedItemCatalog catalog = HashedItemCatalog.load(textCatalog);
+        MappedItemCatalog.write(catalog, binaryCatalog);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Converted " + catalog.size() + " items from " + textCatalog + " to " 
+                           + binaryCatalog + " in " + elapsedMillis + " ms.");
+    }
+}
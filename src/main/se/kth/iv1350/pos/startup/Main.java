@@ -1,45 +1,79 @@
 package se.kth.iv1350.pos.startup;
 
 import se.kth.iv1350.pos.controller.Controller;
+import se.kth.iv1350.pos.controller.PostPaymentPipeline;
 import se.kth.iv1350.pos.view.View;
 
 import se.kth.iv1350.pos.integration.AccountingSystem;
+import se.kth.iv1350.pos.integration.BatchingAccountingSystem;
+import se.kth.iv1350.pos.integration.CoalescingInventorySystem;
 import se.kth.iv1350.pos.integration.DiscountDatabase;
+import se.kth.iv1350.pos.integration.FilteredDiscountDatabase;
 import se.kth.iv1350.pos.integration.InventorySystem;
 import se.kth.iv1350.pos.integration.Printer;
 import se.kth.iv1350.pos.view.TotalRevenueView;
 import se.kth.iv1350.pos.util.TotalRevenueFileOutput;
 
+import java.nio.file.Path;
+import java.time.Duration;
+
 /*
  * This class starts the application. 
  */
 public class Main {
+    private static final int ACCOUNTING_BATCH_SIZE = 50;
+    private static final Duration ACCOUNTING_BATCH_DELAY = Duration.ofSeconds(1);
+    private static final Duration INVENTORY_FLUSH_WINDOW = Duration.ofSeconds(5);
+    private static final int DISCOUNT_CACHE_CAPACITY = 1024;
+    private static final int REVENUE_LOG_FLUSH_BYTES = 8192;
+    private static final Duration REVENUE_LOG_FLUSH_INTERVAL = Duration.ofSeconds(1);
+    private static final int REVENUE_LOG_ENTRIES_PER_SNAPSHOT = 1000;
+    private static final Duration REVENUE_VIEW_REFRESH_INTERVAL = Duration.ofMillis(250);
+    private static final Path POST_PAYMENT_JOURNAL = Path.of("post-payment-journal.txt");
+
     /*
      * The main method used to start the entire application.
      * 
      * @param args The application does not take any command line arguments
      */
     public static void main(String[] args) {
-        InventorySystem invSys = new InventorySystem();
-        DiscountDatabase discDB = new DiscountDatabase();
-        AccountingSystem accSys = new AccountingSystem();
+        CoalescingInventorySystem invSys = new CoalescingInventorySystem(new InventorySystem(), INVENTORY_FLUSH_WINDOW);
+        DiscountDatabase discDB = new FilteredDiscountDatabase(new DiscountDatabase(), DISCOUNT_CACHE_CAPACITY);
+        BatchingAccountingSystem accSys = new BatchingAccountingSystem(new AccountingSystem(), 
+                                                                       ACCOUNTING_BATCH_SIZE, ACCOUNTING_BATCH_DELAY);
         Printer printer = new Printer();
 
-        Controller contr = new Controller(invSys, discDB, accSys, printer);
+        PostPaymentPipeline postPayment = new PostPaymentPipeline(printer, accSys, invSys, POST_PAYMENT_JOURNAL);
+        Controller contr = new Controller(invSys, discDB, accSys, printer, postPayment);
 
         // Create and register observers
-        TotalRevenueView totalRevenueView = new TotalRevenueView();
+        TotalRevenueView totalRevenueView = new TotalRevenueView(contr.getRevenueAggregator(), REVENUE_VIEW_REFRESH_INTERVAL);
         contr.addSaleObserver(totalRevenueView);
-        TotalRevenueFileOutput totalRevenueFileOutput = new TotalRevenueFileOutput();
+        TotalRevenueFileOutput totalRevenueFileOutput = new TotalRevenueFileOutput(contr.getRevenueAggregator(), REVENUE_LOG_FLUSH_BYTES,
+                                                                                    REVENUE_LOG_FLUSH_INTERVAL, REVENUE_LOG_ENTRIES_PER_SNAPSHOT);
         contr.addSaleObserver(totalRevenueFileOutput);
 
         View view = new View(contr);
         try {
             view.runFakeExecution();
         } finally {
-            if (totalRevenueFileOutput != null) {
-                totalRevenueFileOutput.closeLogger();
-            }
+            closeQuietly("controller", contr::shutdown);
+            closeQuietly("revenue view", totalRevenueView::close);
+            closeQuietly("accounting system", accSys::close);
+            closeQuietly("inventory system", invSys::close);
+            closeQuietly("revenue log", totalRevenueFileOutput::closeLogger);
+        }
+    }
+
+    /*
+     * Closes one resource. A failure is logged instead of thrown, so the remaining resources are
+     * still closed and an exception thrown by the application is not hidden.
+     */
+    private static void closeQuietly(String resourceName, Runnable close) {
+        try {
+            close.run();
+        } catch (RuntimeException e) {
+            System.err.println("Could not close the " + resourceName + " - " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,103 @@
+package se.kth.iv1350.pos.util;
+
+/**
+ * A Bloom filter over <code>int</code> values: a compact set that can tell for certain that a value
+ * was never added, but may wrongly answer that a value was added, with a configurable probability.
+ * Values are never boxed. The filter is not thread safe while values are added, but can be read by
+ * any number of threads once it has been safely published.
+ */
+public final class IntBloomFilter {
+    private static final double LN_2 = Math.log(2);
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Creates a new, empty filter sized for the specified number of values.
+     *
+     * @param expectedValues The number of values that will be added.
+     * @param falsePositiveRate The probability that <code>mightContain</code> wrongly returns
+     *                          <code>true</code> when the expected number of values has been added.
+     */
+    public IntBloomFilter(int expectedValues, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1.");
+        }
+        int values = Math.max(1, expectedValues);
+        long optimalBits = (long) Math.ceil(-values * Math.log(falsePositiveRate) / (LN_2 * LN_2));
+        this.bits = new long[(int) Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE)];
+        this.bitCount = (long) bits.length * Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / values * LN_2));
+    }
+
+    /**
+     * Adds the specified value to the filter.
+     *
+     * @param value The value to add.
+     */
+    public void add(int value) {
+        long hash = mix(value);
+        int firstHash = (int) hash;
+        int secondHash = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = bitIndex(firstHash + i * secondHash);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks if the specified value might have been added.
+     *
+     * @param value The value to check.
+     * @return <code>false</code> if the value has certainly not been added, <code>true</code> if it
+     *         probably has.
+     */
+    public boolean mightContain(int value) {
+        long hash = mix(value);
+        int firstHash = (int) hash;
+        int secondHash = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = bitIndex(firstHash + i * secondHash);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the size of the filter.
+     *
+     * @return The number of bits in the filter.
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Gets the number of bits that are set for each added value.
+     *
+     * @return The number of hash functions.
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private long bitIndex(int combinedHash) {
+        return (combinedHash & 0xFFFFFFFFL) % bitCount;
+    }
+
+    /*
+     * The finalizer of MurmurHash3, which spreads every input bit over the whole result.
+     */
+    private static long mix(int value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,221 @@
+package se.kth.iv1350.pos.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from <code>int</code> keys to <code>int</code> values that stores keys and values in
+ * plain arrays. Collisions are resolved with open addressing and linear probing, so lookups never
+ * box keys and never allocate. This class is not thread safe.
+ */
+public final class IntIntHashMap {
+    private static final int FREE_KEY = 0;
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+    private static final int MINIMUM_CAPACITY = 8;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    /**
+     * Receives the entries of a map, see {@link IntIntHashMap#forEach}.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * Is called once for each entry in the map.
+         *
+         * @param key The key of the entry.
+         * @param value The value of the entry.
+         */
+        void accept(int key, int value);
+    }
+
+    /**
+     * Creates a new, empty map with a default capacity.
+     */
+    public IntIntHashMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty map that can hold the specified number of entries without resizing.
+     *
+     * @param expectedSize The number of entries the map is expected to hold.
+     */
+    public IntIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Gets the value mapped to the specified key.
+     *
+     * @param key The key to look up.
+     * @param missingValue The value to return if the key is not in the map.
+     * @return The value mapped to the key, or <code>missingValue</code> if there is none.
+     */
+    public int get(int key, int missingValue) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        int slot = findSlot(key);
+        return keys[slot] == key ? values[slot] : missingValue;
+    }
+
+    /**
+     * Checks if the specified key is in the map.
+     *
+     * @param key The key to look for.
+     * @return <code>true</code> if the key is in the map, <code>false</code> otherwise.
+     */
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        return keys[findSlot(key)] == key;
+    }
+
+    /**
+     * Maps the specified key to the specified value, replacing any previous value.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public void put(int key, int value) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return;
+        }
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            values[slot] = value;
+            return;
+        }
+        insertAt(slot, key, value);
+    }
+
+    /**
+     * Adds the specified delta to the value mapped to the key. A key that is not in the map
+     * is treated as if it was mapped to zero.
+     *
+     * @param key The key.
+     * @param delta The value to add.
+     * @return The new value mapped to the key.
+     */
+    public int addTo(int key, int delta) {
+        if (key == FREE_KEY) {
+            int newValue = (hasFreeKey ? freeKeyValue : 0) + delta;
+            put(key, newValue);
+            return newValue;
+        }
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            values[slot] += delta;
+            return values[slot];
+        }
+        insertAt(slot, key, delta);
+        return delta;
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty.
+     *
+     * @return <code>true</code> if there are no entries, <code>false</code> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries, keeping the allocated capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        hasFreeKey = false;
+        size = 0;
+    }
+
+    /**
+     * Calls the specified consumer once for each entry in the map, in no particular order.
+     *
+     * @param consumer The consumer that receives the entries.
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasFreeKey) {
+            consumer.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE_KEY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private int findSlot(int key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insertAt(int slot, int key, int value) {
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size >= resizeThreshold) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            int key = oldKeys[slot];
+            if (key != FREE_KEY) {
+                int newSlot = findSlot(key);
+                keys[newSlot] = key;
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long wanted = (long) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD_FACTOR) + 1;
+        long capacity = Long.highestOneBit(wanted - 1) << 1;
+        return (int) Math.max(MINIMUM_CAPACITY, Math.min(capacity, 1 << 30));
+    }
+
+    /*
+     * Spreads sequential item IDs over the whole table so that linear probing does not build clusters.
+     */
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,65 @@
+package se.kth.iv1350.pos.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A compact snapshot of the revenue log: the total revenue, and the position in the log file up to
+ * which the total is included. A snapshot is written to a temporary file that is then moved over
+ * the previous snapshot, so a crash leaves either the old or the new snapshot, never a partial one.
+ */
+final class RevenueSnapshot {
+    private static final String FIELD_SEPARATOR = ";";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final long totalMinorUnits;
+    private final long logOffset;
+
+    RevenueSnapshot(long totalMinorUnits, long logOffset) {
+        this.totalMinorUnits = totalMinorUnits;
+        this.logOffset = logOffset;
+    }
+
+    long getTotalMinorUnits() {
+        return totalMinorUnits;
+    }
+
+    long getLogOffset() {
+        return logOffset;
+    }
+
+    /**
+     * Reads the snapshot in the specified file.
+     *
+     * @param snapshotFile The file to read.
+     * @return The snapshot, or null if there is no snapshot or it can not be read.
+     */
+    static RevenueSnapshot read(Path snapshotFile) {
+        if (!Files.exists(snapshotFile)) {
+            return null;
+        }
+        try {
+            String[] fields = Files.readString(snapshotFile, StandardCharsets.UTF_8).trim().split(FIELD_SEPARATOR);
+            return new RevenueSnapshot(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("The revenue snapshot " + snapshotFile + " could not be read, it is ignored - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot in the specified file with this snapshot.
+     *
+     * @param snapshotFile The file to write.
+     * @throws IOException If the snapshot could not be written, the previous snapshot is then kept.
+     */
+    void write(Path snapshotFile) throws IOException {
+        Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + TEMPORARY_SUFFIX);
+        Files.writeString(temporaryFile, totalMinorUnits + FIELD_SEPARATOR + logOffset + System.lineSeparator(),
+                          StandardCharsets.UTF_8);
+        Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
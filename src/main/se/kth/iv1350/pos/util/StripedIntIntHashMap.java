@@ -0,0 +1,132 @@
+package se.kth.iv1350.pos.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread safe map from <code>int</code> keys to <code>int</code> sums. The keys are spread over
+ * several stripes, each an {@link IntIntHashMap} with its own lock, so threads that update different
+ * keys rarely wait for each other. Keys and values are never boxed.
+ */
+public final class StripedIntIntHashMap {
+    private static final int DEFAULT_STRIPES = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Creates a new, empty map with a default number of stripes.
+     */
+    public StripedIntIntHashMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a new, empty map.
+     *
+     * @param minimumStripes The smallest number of stripes to use, it is rounded up to a power of two.
+     */
+    public StripedIntIntHashMap(int minimumStripes) {
+        int stripeCount = 1;
+        while (stripeCount < minimumStripes) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Adds the specified delta to the sum of the specified key.
+     *
+     * @param key The key.
+     * @param delta The value to add.
+     */
+    public void addTo(int key, int delta) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            stripe.sums.addTo(key, delta);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the current sum of the specified key.
+     *
+     * @param key The key.
+     * @return The sum, or zero if nothing has been added for the key.
+     */
+    public int get(int key) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            return stripe.sums.get(key, 0);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of keys that currently have a sum.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.sums.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all sums and passes them to the specified consumer. Each stripe is only locked while
+     * its sums are taken, the consumer is called without holding any lock, so other threads can keep
+     * adding while the drained sums are processed. Only one drain runs at a time.
+     *
+     * @param consumer Receives each key and the sum it had when it was removed.
+     */
+    public synchronized void drain(IntIntHashMap.EntryConsumer consumer) {
+        for (Stripe stripe : stripes) {
+            IntIntHashMap drained;
+            stripe.lock.lock();
+            try {
+                if (stripe.sums.isEmpty()) {
+                    continue;
+                }
+                drained = stripe.sums;
+                stripe.sums = stripe.spare != null ? stripe.spare : new IntIntHashMap();
+                stripe.spare = null;
+            } finally {
+                stripe.lock.unlock();
+            }
+            drained.forEach(consumer);
+            drained.clear();
+            stripe.lock.lock();
+            try {
+                stripe.spare = drained;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private Stripe stripeFor(int key) {
+        int hash = key * 0x9E3779B9;
+        return stripes[(hash >>> 16) & stripeMask];
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private IntIntHashMap sums = new IntIntHashMap();
+        private IntIntHashMap spare = new IntIntHashMap();
+    }
+}
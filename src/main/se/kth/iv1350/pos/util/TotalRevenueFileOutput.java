@@ -1,28 +1,74 @@
 package se.kth.iv1350.pos.util;
 
 import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.RevenueAggregator;
 import se.kth.iv1350.pos.model.SaleObserver;
 
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Writes the total income from all sales to a file.
  * This class is an observer that updates when a sale is paid.
+ * By default every entry is written to the file immediately. In write-behind mode, entries are
+ * collected in memory and written together when enough bytes are collected or when the flush
+ * interval has passed, so many sales share one write to the file.
+ * In recovery mode, the total is also stored in a snapshot file every time a number of entries
+ * have been written, and the log is then compacted by removing the entries the snapshot includes.
+ * A new instance restores the total from the snapshot and the last entry after it, so the log
+ * never has to be read from the beginning.
  */
 public class TotalRevenueFileOutput implements SaleObserver {
     private static final String LOG_FILE_NAME = "total-revenue-log.txt";
+    private static final String SNAPSHOT_FILE_NAME = "total-revenue-snapshot.txt";
+    private static final String ENTRY_SEPARATOR = ": Total Revenue: ";
+    private static final int TAIL_READ_BYTES = 64 * 1024;
+    private static final int NO_SNAPSHOTS = 0;
+    private static final int CLOSE_FLUSH_ATTEMPTS = 3;
     private Amount totalRevenue;
+    private final RevenueAggregator sharedRevenue;
     private PrintWriter logStream;
+    private FileChannel logChannel;
+    private ByteBuffer pendingEntries;
+    private int flushThresholdBytes;
+    private ScheduledExecutorService flushTimer;
+    private int entriesPerSnapshot;
+    private int entriesSinceSnapshot;
+    private LocalDateTime cachedTimestampSecond;
+    private String cachedTimestamp;
 
     /**
      * Creates a new instance, initializing total revenue to zero and setting up the log file.
      */
     public TotalRevenueFileOutput() {
+        this((RevenueAggregator) null);
+    }
+
+    /**
+     * Creates a new instance that logs the total of a shared revenue aggregator, instead of
+     * adding up the sales it is notified of.
+     *
+     * @param sharedRevenue The aggregator that holds the revenue, or null to keep a total of its own.
+     */
+    public TotalRevenueFileOutput(RevenueAggregator sharedRevenue) {
         this.totalRevenue = new Amount(0);
+        this.sharedRevenue = sharedRevenue;
         try {
             logStream = new PrintWriter(new FileWriter(LOG_FILE_NAME, true), true);
         } catch (IOException ioe) {
@@ -30,6 +76,129 @@ public class TotalRevenueFileOutput implements SaleObserver {
         }
     }
 
+    /**
+     * Creates a new instance in write-behind mode. The timestamps of the entries are written with
+     * whole seconds. Entries that are not yet written are lost if the application exits without
+     * calling closeLogger.
+     *
+     * @param flushThresholdBytes The number of collected bytes that makes the entries be written.
+     * @param flushInterval The longest time an entry is kept in memory.
+     */
+    public TotalRevenueFileOutput(int flushThresholdBytes, Duration flushInterval) {
+        this(null, flushThresholdBytes, flushInterval);
+    }
+
+    /**
+     * Creates a new instance in write-behind mode that logs the total of a shared revenue aggregator,
+     * see TotalRevenueFileOutput(int, Duration).
+     *
+     * @param sharedRevenue The aggregator that holds the revenue, or null to keep a total of its own.
+     * @param flushThresholdBytes The number of collected bytes that makes the entries be written.
+     * @param flushInterval The longest time an entry is kept in memory.
+     */
+    public TotalRevenueFileOutput(RevenueAggregator sharedRevenue, int flushThresholdBytes, Duration flushInterval) {
+        this(sharedRevenue, flushThresholdBytes, flushInterval, NO_SNAPSHOTS);
+    }
+
+    /**
+     * Creates a new instance in write-behind and recovery mode, see TotalRevenueFileOutput(int, Duration).
+     * The total revenue is restored from the snapshot and the log. If a shared revenue aggregator is
+     * used, the restored total is added to it.
+     *
+     * @param sharedRevenue The aggregator that holds the revenue, or null to keep a total of its own.
+     * @param flushThresholdBytes The number of collected bytes that makes the entries be written.
+     * @param flushInterval The longest time an entry is kept in memory.
+     * @param entriesPerSnapshot The number of entries that makes a new snapshot be taken and the log compacted,
+     *                           or 0 to neither take snapshots nor restore the total.
+     */
+    public TotalRevenueFileOutput(RevenueAggregator sharedRevenue, int flushThresholdBytes, Duration flushInterval,
+                                  int entriesPerSnapshot) {
+        if (entriesPerSnapshot < NO_SNAPSHOTS) {
+            throw new IllegalArgumentException("The number of entries per snapshot can not be negative, was " + entriesPerSnapshot + ".");
+        }
+        if (flushThresholdBytes < 1) {
+            throw new IllegalArgumentException("The flush threshold must be at least one byte, was " + flushThresholdBytes + ".");
+        }
+        this.totalRevenue = new Amount(0);
+        this.sharedRevenue = sharedRevenue;
+        this.flushThresholdBytes = flushThresholdBytes;
+        this.pendingEntries = ByteBuffer.allocate(flushThresholdBytes * 2);
+        this.entriesPerSnapshot = entriesPerSnapshot;
+        try {
+            // Entries are written at the end of the file, APPEND can not be combined with reading the tail
+            logChannel = FileChannel.open(Paths.get(LOG_FILE_NAME), StandardOpenOption.CREATE,
+                                          StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (entriesPerSnapshot != NO_SNAPSHOTS) {
+                restoreTotalRevenue();
+            }
+            logChannel.position(logChannel.size());
+        } catch (IOException ioe) {
+            throw new RuntimeException("CRITICAL ERROR: CANNOT INITIALIZE TOTAL REVENUE FILE LOGGER.", ioe);
+        }
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "revenue-log-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, flushInterval.toMillis());
+        flushTimer.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * The snapshot is only trusted up to the current end of the log. A snapshot that points past the
+     * end was taken just before the log was compacted, so the whole log is the tail. An entry that
+     * was only partly written when the application stopped is removed.
+     */
+    private void restoreTotalRevenue() throws IOException {
+        RevenueSnapshot snapshot = RevenueSnapshot.read(Paths.get(SNAPSHOT_FILE_NAME));
+        long restoredMinorUnits = snapshot == null ? 0 : snapshot.getTotalMinorUnits();
+        long logSize = logChannel.size();
+        long tailStart = snapshot == null || snapshot.getLogOffset() > logSize ? 0 : snapshot.getLogOffset();
+        tailStart = Math.max(tailStart, logSize - TAIL_READ_BYTES);
+
+        ByteBuffer tail = ByteBuffer.allocate((int) (logSize - tailStart));
+        while (tail.hasRemaining() && logChannel.read(tail, tailStart + tail.position()) >= 0) {
+            // Reads until the buffer is full
+        }
+        int completeLength = tail.position();
+        while (completeLength > 0 && tail.get(completeLength - 1) != '\n') {
+            completeLength--;
+        }
+        String lastEntry = lastLine(new String(tail.array(), 0, completeLength, StandardCharsets.UTF_8));
+        if (lastEntry != null) {
+            restoredMinorUnits = parseTotal(lastEntry, restoredMinorUnits);
+        }
+        if (completeLength < tail.position()) {
+            logChannel.truncate(tailStart + completeLength);
+        }
+
+        this.totalRevenue = Amount.ofMinorUnits(restoredMinorUnits);
+        if (sharedRevenue != null) {
+            sharedRevenue.addRestoredRevenue(this.totalRevenue);
+        }
+        new RevenueSnapshot(restoredMinorUnits, logChannel.size()).write(Paths.get(SNAPSHOT_FILE_NAME));
+    }
+
+    private static String lastLine(String completeLines) {
+        String[] lines = completeLines.split("\\R");
+        for (int line = lines.length - 1; line >= 0; line--) {
+            if (lines[line].contains(ENTRY_SEPARATOR)) {
+                return lines[line];
+            }
+        }
+        return null;
+    }
+
+    private static long parseTotal(String entry, long defaultMinorUnits) {
+        String total = entry.substring(entry.lastIndexOf(ENTRY_SEPARATOR) + ENTRY_SEPARATOR.length()).trim();
+        try {
+            return new BigDecimal(total).movePointRight(2).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            System.err.println("The last revenue log entry could not be read, the snapshot is used - " + entry);
+            return defaultMinorUnits;
+        }
+    }
+
     /**
      * Called when a sale is paid. Adds the sale's total amount to the running total revenue
      * and writes the updated total revenue to the log file with a timestamp.
@@ -37,12 +206,18 @@ public class TotalRevenueFileOutput implements SaleObserver {
      * @param paidSaleAmount The total amount of the completed sale.
      */
     @Override
-    public void newSaleWasPaid(Amount paidSaleAmount) {
-        this.totalRevenue = this.totalRevenue.plus(paidSaleAmount);
-        if (logStream != null) {
+    public synchronized void newSaleWasPaid(Amount paidSaleAmount) {
+        if (sharedRevenue != null) {
+            this.totalRevenue = sharedRevenue.getTotalRevenue();
+        } else {
+            this.totalRevenue = this.totalRevenue.plus(paidSaleAmount);
+        }
+        if (logChannel != null) {
+            collectEntry();
+        } else if (logStream != null) {
             StringBuilder logEntry = new StringBuilder();
             logEntry.append(LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
-            logEntry.append(": Total Revenue: ");
+            logEntry.append(ENTRY_SEPARATOR);
             logEntry.append(this.totalRevenue.toString());
             logStream.println(logEntry.toString());
         } else {
@@ -50,12 +225,155 @@ public class TotalRevenueFileOutput implements SaleObserver {
         }
     }
 
+    private void collectEntry() {
+        String logEntry = currentTimestamp() + ENTRY_SEPARATOR + this.totalRevenue + System.lineSeparator();
+        byte[] entryBytes = logEntry.getBytes(StandardCharsets.UTF_8);
+        if (entryBytes.length > pendingEntries.remaining()) {
+            flush();
+        }
+        if (entryBytes.length > pendingEntries.remaining()) {
+            pendingEntries = growBuffer(pendingEntries, entryBytes.length);
+        }
+        pendingEntries.put(entryBytes);
+        entriesSinceSnapshot++;
+        if (entriesPerSnapshot != NO_SNAPSHOTS && entriesSinceSnapshot >= entriesPerSnapshot) {
+            snapshot();
+        } else if (pendingEntries.position() >= flushThresholdBytes) {
+            flush();
+        }
+    }
+
+    private static ByteBuffer growBuffer(ByteBuffer buffer, int neededBytes) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + neededBytes));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    // The timestamp is only formatted again when the second has changed
+    private String currentTimestamp() {
+        LocalDateTime second = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        if (!second.equals(cachedTimestampSecond)) {
+            cachedTimestampSecond = second;
+            cachedTimestamp = second.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        }
+        return cachedTimestamp;
+    }
+
+    /**
+     * Writes all collected entries to the log file. Entries that could not be written are kept
+     * and written with the next flush. Does nothing if write-behind mode is not used.
+     */
+    public synchronized void flush() {
+        if (logChannel == null || !logChannel.isOpen() || pendingEntries.position() == 0) {
+            return;
+        }
+        try {
+            writePendingEntries();
+        } catch (IOException ioe) {
+            System.err.println("Total revenue log could not be written, it will be retried - " + ioe.getMessage());
+        }
+    }
+
+    private void writePendingEntries() throws IOException {
+        pendingEntries.flip();
+        try {
+            while (pendingEntries.hasRemaining()) {
+                logChannel.write(pendingEntries);
+            }
+        } finally {
+            pendingEntries.compact();
+        }
+    }
+
+    /*
+     * Writes the collected entries before the log is closed, trying again if writing fails.
+     * Returns the last failure if some entries could still not be written, otherwise null.
+     */
+    private IOException flushBeforeClose() {
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt < CLOSE_FLUSH_ATTEMPTS && pendingEntries.position() > 0; attempt++) {
+            try {
+                writePendingEntries();
+            } catch (IOException ioe) {
+                lastFailure = ioe;
+            }
+        }
+        return pendingEntries.position() == 0 ? null : lastFailure;
+    }
+
+    /**
+     * Writes all collected entries, stores the total revenue in the snapshot file and removes all
+     * entries from the log. Does nothing if recovery mode is not used. If the entries or the
+     * snapshot can not be written, the log is not compacted.
+     */
+    public synchronized void snapshot() {
+        if (logChannel == null || entriesPerSnapshot == NO_SNAPSHOTS || !logChannel.isOpen()) {
+            return;
+        }
+        flush();
+        if (pendingEntries.position() > 0) {
+            return;
+        }
+        Path snapshotFile = Paths.get(SNAPSHOT_FILE_NAME);
+        long totalMinorUnits = this.totalRevenue.getMinorUnits();
+        try {
+            new RevenueSnapshot(totalMinorUnits, logChannel.size()).write(snapshotFile);
+            logChannel.truncate(0);
+            new RevenueSnapshot(totalMinorUnits, 0).write(snapshotFile);
+            entriesSinceSnapshot = 0;
+        } catch (IOException ioe) {
+            System.err.println("Total revenue snapshot could not be written, it will be retried - " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Gets the total revenue that has been logged, including a restored total in recovery mode.
+     *
+     * @return The logged total revenue.
+     */
+    public synchronized Amount getTotalRevenue() {
+        return totalRevenue;
+    }
+
+    /**
+     * Gets the number of bytes that are collected but not yet written to the log file.
+     *
+     * @return The number of pending bytes, always zero if write-behind mode is not used.
+     */
+    public synchronized int getPendingBytes() {
+        return pendingEntries == null ? 0 : pendingEntries.position();
+    }
+
     /**
      * Closes the log stream. Is called when the application is shutting down.
+     * In write-behind mode, all collected entries are written before the file is closed. Writing is
+     * tried again a few times if it fails. In recovery mode, a snapshot is also taken, so the next
+     * start only has to read the snapshot.
+     *
+     * @throws UncheckedIOException If some collected entries could not be written. The file is closed anyway.
      */
     public void closeLogger() {
         if (logStream != null) {
             logStream.close();
         }
+        if (logChannel != null) {
+            flushTimer.shutdown();
+            synchronized (this) {
+                IOException flushFailure = logChannel.isOpen() ? flushBeforeClose() : null;
+                if (flushFailure == null) {
+                    snapshot();
+                }
+                try {
+                    logChannel.close();
+                } catch (IOException ioe) {
+                    System.err.println("Total revenue log could not be closed - " + ioe.getMessage());
+                }
+                if (flushFailure != null) {
+                    throw new UncheckedIOException(pendingEntries.position() + " bytes of the total revenue log could not be written.",
+                                                   flushFailure);
+                }
+            }
+        }
     }
 }
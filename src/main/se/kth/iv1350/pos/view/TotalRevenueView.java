@@ -1,33 +1,144 @@
 package se.kth.iv1350.pos.view;
 
 import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.RevenueAggregator;
 import se.kth.iv1350.pos.model.SaleObserver;
 
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Shows the total income from all sales on the user interface (System.out).
  * This class is an observer that updates when a sale is paid.
+ * By default the total is shown for every paid sale. In rate-limited mode, a paid sale only marks
+ * the display as changed, and the latest total is shown at most once per refresh interval, so the
+ * cost of the display depends on the refresh rate instead of the number of sales.
  */
 public class TotalRevenueView implements SaleObserver {
     private Amount totalRevenue;
+    private final RevenueAggregator sharedRevenue;
+    private final ScheduledExecutorService renderTimer;
+    private boolean changed;
+    private long renderedFrames;
 
     /**
      * Creates a new instance, initializing total revenue to zero.
      */
     public TotalRevenueView() {
+        this(null);
+    }
+
+    /**
+     * Creates a new instance that shows the total of a shared revenue aggregator, instead of
+     * adding up the sales it is notified of.
+     *
+     * @param sharedRevenue The aggregator that holds the revenue, or null to keep a total of its own.
+     */
+    public TotalRevenueView(RevenueAggregator sharedRevenue) {
+        this.totalRevenue = new Amount(0);
+        this.sharedRevenue = sharedRevenue;
+        this.renderTimer = null;
+    }
+
+    /**
+     * Creates a new instance in rate-limited mode. Totals that change several times within one
+     * refresh interval are only shown once, with the latest value. Call close to show the last
+     * change and stop refreshing.
+     *
+     * @param sharedRevenue The aggregator that holds the revenue, or null to keep a total of its own.
+     * @param refreshInterval The shortest time between two updates of the display.
+     */
+    public TotalRevenueView(RevenueAggregator sharedRevenue, Duration refreshInterval) {
         this.totalRevenue = new Amount(0);
+        this.sharedRevenue = sharedRevenue;
+        this.renderTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "revenue-view-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, refreshInterval.toMillis());
+        renderTimer.scheduleAtFixedRate(this::renderIfChanged, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Called when a sale is paid. Adds the sale's total amount to the running total revenue
-     * and prints the updated total revenue to standard output.
+     * and prints the updated total revenue to standard output. In rate-limited mode, the total
+     * is printed by the next refresh instead.
      *
      * @param paidSaleAmount The total amount of the completed sale.
      */
     @Override
     public void newSaleWasPaid(Amount paidSaleAmount) {
-        this.totalRevenue = this.totalRevenue.plus(paidSaleAmount);
-        System.out.println("--- Total Revenue Update ---");
-        System.out.println("Current Total Revenue: " + this.totalRevenue);
-        System.out.println("--------------------------");
+        Amount updatedTotal;
+        synchronized (this) {
+            if (sharedRevenue == null) {
+                this.totalRevenue = this.totalRevenue.plus(paidSaleAmount);
+            }
+            if (renderTimer != null) {
+                changed = true;
+                return;
+            }
+            updatedTotal = currentTotal();
+        }
+        render(updatedTotal);
+    }
+
+    private Amount currentTotal() {
+        if (sharedRevenue != null) {
+            this.totalRevenue = sharedRevenue.getTotalRevenue();
+        }
+        return this.totalRevenue;
+    }
+
+    private void renderIfChanged() {
+        Amount latestTotal;
+        synchronized (this) {
+            if (!changed) {
+                return;
+            }
+            changed = false;
+            latestTotal = currentTotal();
+        }
+        render(latestTotal);
+    }
+
+    // The whole frame is written with one call, so it is not mixed with output from other threads
+    private void render(Amount total) {
+        String frame = "--- Total Revenue Update ---" + System.lineSeparator()
+                       + "Current Total Revenue: " + total + System.lineSeparator()
+                       + "--------------------------" + System.lineSeparator();
+        System.out.print(frame);
+        System.out.flush();
+        synchronized (this) {
+            renderedFrames++;
+        }
+    }
+
+    /**
+     * Gets the number of times the total has been shown.
+     *
+     * @return The number of rendered frames.
+     */
+    public synchronized long getRenderedFrameCount() {
+        return renderedFrames;
+    }
+
+    /**
+     * Stops refreshing the display, after showing the latest total if it has changed since the
+     * last refresh. Does nothing if rate-limited mode is not used.
+     */
+    public void close() {
+        if (renderTimer == null) {
+            return;
+        }
+        renderTimer.shutdown();
+        try {
+            renderTimer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderIfChanged();
     }
 }
@@ -1,8 +1,7 @@
 package se.kth.iv1350.pos.view;
 
 import se.kth.iv1350.pos.controller.Controller;
-import se.kth.iv1350.pos.integration.ItemNotFoundException;
-import se.kth.iv1350.pos.controller.OperationFailedException;
+import se.kth.iv1350.pos.controller.EnterItemResult;
 import se.kth.iv1350.pos.model.Amount; 
 import se.kth.iv1350.pos.util.FileLogger;
 
@@ -63,18 +62,22 @@ public class View {
 
     /*
      * Private helper method to simulate a user entering item details.
-     * Calls the controller's enterItem method and handles ItemNotFoundException.
+     * Calls the controller's tryEnterItem method, so a mis-scan does not create any exception.
      */
     private void enterItem(int itemID, int quantity) {
         System.out.println(); 
         System.out.println("Add " + quantity + " item(s) with item id " + itemID + ":");
-        try {
-            contr.enterItem(itemID, quantity);
-        } catch (ItemNotFoundException e) {
-            System.err.println("ERROR: " + e.getMessage());
-        } catch (OperationFailedException e) {
-            System.err.println("ERROR: Operation failed. Please try again or contact support.");
-            fileLogger.logException(e);
+        EnterItemResult result = contr.tryEnterItem(itemID, quantity);
+        switch (result.getStatus()) {
+            case NOT_FOUND:
+                System.err.println("ERROR: " + result.getFailureMessage());
+                break;
+            case OPERATION_FAILED:
+                System.err.println("ERROR: Operation failed. Please try again or contact support.");
+                fileLogger.log("Could not enter item " + itemID + ": " + result.getFailureMessage());
+                break;
+            default:
+                break;
         }
     }
 
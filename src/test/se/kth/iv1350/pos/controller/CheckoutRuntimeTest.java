@@ -0,0 +1,159 @@
+package se.kth.iv1350.pos.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.integration.*;
+import se.kth.iv1350.pos.model.Amount;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckoutRuntimeTest {
+    private Controller contr;
+    private CheckoutRuntime instanceToTest;
+    private final PrintStream originalOut = System.out;
+
+    @BeforeEach
+    void setUp() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        contr = new Controller(new InventorySystem(), new DiscountDatabase(), new AccountingSystem(), new Printer());
+        instanceToTest = new CheckoutRuntime(contr, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest.close();
+        instanceToTest = null;
+        contr = null;
+        System.setOut(originalOut);
+    }
+
+    @Test
+    void testCommandsOfManyRegistersAreExecuted() throws Exception {
+        int registers = 5_000;
+        List<CompletableFuture<Void>> payments = new ArrayList<>();
+        for (int registerId = 1; registerId <= registers; registerId++) {
+            instanceToTest.submit(registerId, RegisterCommand.startSale());
+            instanceToTest.submit(registerId, RegisterCommand.enterItem(101, 1));
+            instanceToTest.submit(registerId, RegisterCommand.enterItem(102, 2));
+            instanceToTest.submit(registerId, RegisterCommand.endSale());
+            payments.add(instanceToTest.submit(registerId, RegisterCommand.makePayment(new Amount(30.0))));
+        }
+        CompletableFuture.allOf(payments.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+
+        for (int registerId = 1; registerId <= registers; registerId++) {
+            RegisterSession session = contr.getSession(registerId);
+            assertTrue(session.getSale().isPaid(), "The sale of every register should be paid.");
+            assertEquals(new Amount(30.0 - 24.35), session.getChange(), "Every register should get the change of its own sale.");
+        }
+    }
+
+    @Test
+    void testFailedCommandIsReportedAndLaneContinues() throws Exception {
+        instanceToTest.submit(1, RegisterCommand.startSale());
+        CompletableFuture<Void> failed = instanceToTest.submit(1, RegisterCommand.enterItem(999, 1));
+        CompletableFuture<Void> next = instanceToTest.submit(1, RegisterCommand.enterItem(101, 1));
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS),
+                                                 "A failing command should complete its future exceptionally.");
+        assertTrue(thrown.getCause() instanceof ItemNotFoundException, "The cause should be the exception thrown by the command.");
+        next.get(5, TimeUnit.SECONDS);
+        assertEquals(new Amount(15.0), contr.getSession(1).getSale().getSaleInfoForDiscount().getRunningTotal(),
+                     "Commands after a failed command should still be executed.");
+    }
+
+    @Test
+    void testRegisterWithOpenSessionKeepsItsSession() throws Exception {
+        RegisterSession openSession = contr.openSession(7);
+        instanceToTest.submit(7, RegisterCommand.startSale());
+        instanceToTest.submit(7, RegisterCommand.enterItem(101, 1)).get(5, TimeUnit.SECONDS);
+        assertSame(openSession, contr.getSession(7), "The session that was already open should be used.");
+        assertNotNull(openSession.getSale(), "The command should be executed on the open session.");
+        instanceToTest.close();
+        assertSame(openSession, contr.getSession(7), "A session the runtime did not open should not be closed by it.");
+    }
+
+    @Test
+    void testSubmitRacingWithCloseIsExecutedOrRejected() throws Exception {
+        int registers = 200;
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        Thread submitter = new Thread(() -> {
+            for (int registerId = 1; registerId <= registers; registerId++) {
+                results.add(instanceToTest.submit(registerId, RegisterCommand.startSale()));
+            }
+        });
+        submitter.start();
+        instanceToTest.close();
+        submitter.join();
+        for (CompletableFuture<Void> result : results) {
+            assertTrue(result.isDone(), "Every command should be executed or rejected when close returns.");
+        }
+    }
+
+    @Test
+    void testCommandsQueuedBeforeCloseAreExecuted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocking = instanceToTest.submit(1, session -> release.await());
+        List<CompletableFuture<Void>> queued = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            queued.add(instanceToTest.submit(1, session -> { }));
+        }
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+        instanceToTest.close();
+
+        assertFalse(blocking.isCompletedExceptionally(), "The running command should finish normally.");
+        for (CompletableFuture<Void> result : queued) {
+            assertTrue(result.isDone() && !result.isCompletedExceptionally(),
+                       "A command queued before close should be executed before close returns.");
+        }
+    }
+
+    @Test
+    void testCloseTimeoutCancelsCommandsThatHaveNotStarted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        instanceToTest.submit(1, session -> {
+            started.countDown();
+            release.await();
+        });
+        CompletableFuture<Void> waiting = instanceToTest.submit(1, RegisterCommand.startSale());
+        started.await();
+        PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            instanceToTest.close(20, TimeUnit.MILLISECONDS);
+        } finally {
+            System.setErr(originalErr);
+            release.countDown();
+        }
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS),
+                                                  "A command that had not started when close timed out should fail.");
+        assertInstanceOf(IllegalStateException.class, failure.getCause(), "The command should fail because the runtime was closed.");
+        assertNotNull(contr.getSession(1), "The session of a lane with a running command should not be closed.");
+    }
+
+    @Test
+    void testSubmitAfterCloseFails() {
+        instanceToTest.close();
+        CompletableFuture<Void> result = instanceToTest.submit(1, RegisterCommand.startSale());
+        assertTrue(result.isCompletedExceptionally(), "Commands submitted after close should be rejected.");
+    }
+}
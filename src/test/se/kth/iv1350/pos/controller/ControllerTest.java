@@ -3,8 +3,18 @@ package se.kth.iv1350.pos.controller;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import se.kth.iv1350.pos.integration.*; 
 import se.kth.iv1350.pos.model.Amount; 
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ControllerTest {
@@ -25,6 +35,7 @@ public class ControllerTest {
 
     @AfterEach
     void tearDown() {
+        instanceToTest.shutdown();
         instanceToTest = null;
         invSys = null;
         discDb = null;
@@ -94,6 +105,35 @@ public class ControllerTest {
         assertTrue(thrown.getMessage().contains("Operation failed due to a database error."), "The exception message should indicate an operation failure due to DB.");
     }
 
+    @Test
+    void testTryEnterItemAddsFoundItem() {
+        instanceToTest.startSale();
+        EnterItemResult result = instanceToTest.tryEnterItem(101, 2);
+        assertEquals(EnterItemResult.Status.ADDED, result.getStatus(), "A known item should be added.");
+        assertEquals(1, instanceToTest.sale.getSaleInfoForDiscount().getItems().size(), "The item should be in the sale.");
+    }
+
+    @Test
+    void testTryEnterItemNotFoundDoesNotThrow() {
+        instanceToTest.startSale();
+        EnterItemResult result = instanceToTest.tryEnterItem(999, 1);
+        assertEquals(EnterItemResult.Status.NOT_FOUND, result.getStatus(), "An unknown item should be reported as not found.");
+        assertTrue(instanceToTest.sale.getSaleInfoForDiscount().getItems().isEmpty(), "Nothing should be added for an unknown item.");
+    }
+
+    @Test
+    void testTryEnterItemDatabaseFailureDoesNotThrow() {
+        instanceToTest.startSale();
+        EnterItemResult result = instanceToTest.tryEnterItem(666, 1);
+        assertEquals(EnterItemResult.Status.OPERATION_FAILED, result.getStatus(), "A database failure should be reported as a failed operation.");
+    }
+
+    @Test
+    void testTryEnterItemWithoutSaleIsIgnored() {
+        EnterItemResult result = instanceToTest.tryEnterItem(101, 1);
+        assertEquals(EnterItemResult.Status.IGNORED, result.getStatus(), "An item entered before startSale should be ignored.");
+    }
+
     // Tests for requestDiscount
 
     @Test
@@ -122,6 +162,42 @@ public class ControllerTest {
         assertEquals(initialTotal, actualTotal, "Requesting discount for customer 5678 should not change sale total.");
     }
 
+    @Test
+    void testRepeatedDiscountRequestIsNotLookedUpAgain() throws ItemNotFoundException, OperationFailedException {
+        int[] lookups = {0};
+        DiscountDatabase countingDb = new DiscountDatabase() {
+            @Override
+            public DiscountInfoDTO getDiscount(int customerID, SaleInfoDTO saleInfo) {
+                lookups[0]++;
+                return super.getDiscount(customerID, saleInfo);
+            }
+        };
+        Controller contr = new Controller(invSys, countingDb, accSys, printer);
+        contr.startSale();
+        contr.enterItem(101, 1);
+        contr.requestDiscount(1234);
+        contr.enterItem(101, 1);
+        contr.requestDiscount(1234);
+        assertEquals(1, lookups[0], "The discount of the same customer should only be looked up once.");
+        assertEquals(new Amount(27.0), contr.sale.getSaleInfoForDiscount().getRunningTotal(), "The discount should cover both coffees.");
+        contr.shutdown();
+    }
+
+    @Test
+    void testRepeatedDiscountRequestGivesSameDiscount(@TempDir Path tempDir) throws IOException, ItemNotFoundException, OperationFailedException {
+        Path rulesFile = tempDir.resolve("discount-rules.txt");
+        Files.writeString(rulesFile, "customer;5;PERCENTAGE;5\nbasket;30.00;PERCENTAGE;10\n");
+        Controller contr = new Controller(invSys, new DiscountDatabase(DiscountRules.load(rulesFile)), accSys, printer);
+        contr.startSale();
+        contr.enterItem(101, 2);
+        contr.requestDiscount(5);
+        assertEquals(new Amount(27.0), contr.sale.getSaleInfoForDiscount().getRunningTotal(), "The basket discount of 10% should be given.");
+        contr.requestDiscount(5);
+        assertEquals(new Amount(27.0), contr.sale.getSaleInfoForDiscount().getRunningTotal(),
+                     "The applied discount should not move the sale below the basket threshold.");
+        contr.shutdown();
+    }
+
     @Test
     void testRequestDiscountBeforeStartSaleDoesNothing() {
         instanceToTest.requestDiscount(1234);
@@ -165,6 +241,39 @@ public class ControllerTest {
         }, "Successful payment flow should not throw exceptions.");
     }
 
+    @Test
+    void testSaleObserverIsNotifiedAfterPayment() throws ItemNotFoundException, OperationFailedException {
+        List<Amount> paidTotals = Collections.synchronizedList(new ArrayList<>());
+        instanceToTest.addSaleObserver(paidTotals::add);
+        instanceToTest.startSale();
+        instanceToTest.enterItem(101, 1);
+        instanceToTest.endSale();
+        instanceToTest.makePayment(new Amount(20.0));
+        instanceToTest.shutdown();
+        assertEquals(List.of(new Amount(18.75)), paidTotals, "The observer should have been notified when shutdown returns.");
+    }
+
+    @Test
+    void testPaidSaleIsAddedToRevenueAggregator() throws ItemNotFoundException, OperationFailedException {
+        instanceToTest.startSale();
+        instanceToTest.enterItem(101, 1);
+        instanceToTest.endSale();
+        instanceToTest.makePayment(new Amount(20.0));
+        assertEquals(new Amount(18.75), instanceToTest.getRevenueAggregator().getTotalRevenue(), "The revenue should be updated by the payment.");
+        assertEquals(new Amount(18.75), instanceToTest.getRevenueAggregator().getRevenueInLastMinutes(2), "The sale should be in the last two minutes, even if a minute started after the payment.");
+    }
+
+    @Test
+    void testPaymentAfterShutdownIsRejectedBeforeSaleIsPaid() throws ItemNotFoundException, OperationFailedException {
+        instanceToTest.startSale();
+        instanceToTest.enterItem(101, 1);
+        instanceToTest.endSale();
+        instanceToTest.shutdown();
+        assertDoesNotThrow(() -> instanceToTest.makePayment(new Amount(20.0)), "A payment after shutdown should be rejected without an exception.");
+        assertFalse(instanceToTest.sale.isPaid(), "A rejected payment should not mark the sale as paid.");
+        assertEquals(new Amount(0), instanceToTest.getRevenueAggregator().getTotalRevenue(), "A rejected payment should not add revenue.");
+    }
+
     @Test
     void testMakePaymentBeforeStartSaleDoesNothing() {
         Amount paidAmount = new Amount(20.0);
@@ -0,0 +1,235 @@
+package se.kth.iv1350.pos.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.kth.iv1350.pos.integration.*;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.ReceiptDTO;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostPaymentPipelineTest {
+    private CountingPrinter printer;
+    private FlakyAccountingSystem accSys;
+    private CountingInventorySystem invSys;
+    private PostPaymentPipeline instanceToTest;
+    private Controller contr;
+
+    @BeforeEach
+    void setUp() {
+        printer = new CountingPrinter();
+        accSys = new FlakyAccountingSystem();
+        invSys = new CountingInventorySystem();
+        instanceToTest = new PostPaymentPipeline(printer, accSys, invSys);
+        contr = new Controller(invSys, new DiscountDatabase(), accSys, printer, instanceToTest);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest.shutdown();
+        instanceToTest = null;
+        contr = null;
+    }
+
+    @Test
+    void testAllStagesProcessPaidSales() throws ItemNotFoundException, OperationFailedException {
+        int sales = 20;
+        for (int i = 0; i < sales; i++) {
+            payOneCoffee();
+        }
+        instanceToTest.shutdown();
+
+        assertEquals(sales, printer.printed.get(), "Every paid sale should have its receipt printed.");
+        assertEquals(sales, accSys.recorded.get(), "Every paid sale should be sent to accounting.");
+        assertEquals(sales, invSys.updated.get(), "Every paid sale should be sent to inventory.");
+        assertEquals(0, instanceToTest.getFailedCount(), "No stage should fail permanently.");
+    }
+
+    @Test
+    void testFailedStageIsRetried() throws ItemNotFoundException, OperationFailedException {
+        accSys.failuresLeft.set(1);
+        payOneCoffee();
+        instanceToTest.shutdown();
+
+        assertEquals(1, accSys.recorded.get(), "A stage that fails once should succeed when retried.");
+        assertEquals(0, instanceToTest.getFailedCount(), "A retried stage should not be counted as failed.");
+    }
+
+    @Test
+    void testSlowStageDoesNotDelayPayment() throws ItemNotFoundException, OperationFailedException {
+        printer.blocker = new CountDownLatch(1);
+        long start = System.nanoTime();
+        payOneCoffee();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        printer.blocker.countDown();
+
+        assertTrue(elapsedMillis < 1000, "makePayment should return before the receipt is printed.");
+    }
+
+    @Test
+    void testSubmitAfterShutdownIsRejected() {
+        instanceToTest.shutdown();
+        assertThrows(IllegalStateException.class, () -> instanceToTest.submit(null, null, null),
+                     "A sale submitted after shutdown should be rejected, not left in a queue.");
+        assertEquals(0, instanceToTest.getCompletedCount() + instanceToTest.getFailedCount(), "No stage should have seen the sale.");
+    }
+
+    @Test
+    void testSubmitRacingWithShutdownIsProcessedOrRejected() throws InterruptedException {
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(4);
+        Thread[] submitters = new Thread[4];
+        for (int i = 0; i < submitters.length; i++) {
+            submitters[i] = new Thread(() -> {
+                started.countDown();
+                try {
+                    while (true) {
+                        instanceToTest.submit(null, null, null);
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException e) {
+                    // Rejected after shutdown
+                }
+            });
+            submitters[i].start();
+        }
+        started.await();
+        Thread.sleep(20);
+        instanceToTest.shutdown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        assertEquals(accepted.get(), printer.printed.get(), "Every accepted sale should be printed.");
+        assertEquals(accepted.get(), accSys.recorded.get(), "Every accepted sale should reach accounting.");
+        assertEquals(accepted.get(), invSys.updated.get(), "Every accepted sale should reach inventory.");
+    }
+
+    @Test
+    void testFailedReceiptIsNotPrintedAgain() throws ItemNotFoundException, OperationFailedException {
+        printer.failuresLeft.set(1);
+        payOneCoffee();
+        instanceToTest.shutdown();
+
+        assertEquals(1, printer.attempts.get(), "A receipt should never be printed twice, so it is not retried.");
+        assertEquals(1, instanceToTest.getFailedCount(), "The failed receipt should be counted.");
+        assertEquals(1, accSys.recorded.get(), "The other stages should still process the sale.");
+    }
+
+    @Test
+    void testFailedInventoryUpdateIsNotRetried() throws ItemNotFoundException, OperationFailedException {
+        invSys.failuresLeft.set(1);
+        payOneCoffee();
+        instanceToTest.shutdown();
+
+        assertEquals(1, invSys.attempts.get(), "An inventory update should not be retried, since it is not idempotent.");
+        assertEquals(1, instanceToTest.getFailedCount(), "The failed inventory update should be counted.");
+    }
+
+    @Test
+    void testRejectedPaymentLeavesSaleUnpaid() throws ItemNotFoundException, OperationFailedException {
+        instanceToTest.shutdown();
+        payOneCoffee();
+
+        assertFalse(contr.sale.isPaid(), "A payment the pipeline did not accept should not mark the sale as paid.");
+        assertEquals(0, printer.attempts.get(), "A rejected payment should not be printed.");
+    }
+
+    @Test
+    void testJournaledSaleIsFinishedAfterRestart(@TempDir Path dir) throws Exception {
+        Path journalFile = dir.resolve("journal.txt");
+        CountingPrinter stuckPrinter = new CountingPrinter();
+        stuckPrinter.blocker = new CountDownLatch(1);
+        PostPaymentPipeline crashed = new PostPaymentPipeline(stuckPrinter, accSys, invSys, journalFile);
+        contr = new Controller(invSys, new DiscountDatabase(), accSys, stuckPrinter, crashed);
+        payOneCoffee();
+        awaitDoneRecords(journalFile, 2);
+
+        PostPaymentPipeline restarted = new PostPaymentPipeline(printer, accSys, invSys, journalFile);
+        restarted.shutdown();
+        stuckPrinter.blocker.countDown();
+        crashed.shutdown();
+
+        assertEquals(1, printer.printed.get(), "The receipt that was not printed before the restart should be printed.");
+        assertEquals(1, accSys.recorded.get(), "A finished accounting update should not run again after a restart.");
+        assertEquals(1, invSys.updated.get(), "A finished inventory update should not run again after a restart.");
+        PostPaymentJournal reopened = PostPaymentJournal.open(journalFile);
+        assertTrue(reopened.getRecoveredSales().isEmpty(), "A sale finished by all stages should not be recovered again.");
+        reopened.close();
+    }
+
+    private static void awaitDoneRecords(Path journalFile, int count) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Files.readAllLines(journalFile).stream().filter(line -> line.startsWith("D|")).count() < count) {
+            assertTrue(System.nanoTime() < deadline, "The stages should finish the sale.");
+            Thread.sleep(5);
+        }
+    }
+
+    private void payOneCoffee() throws ItemNotFoundException, OperationFailedException {
+        contr.startSale();
+        contr.enterItem(101, 1);
+        contr.endSale();
+        contr.makePayment(new Amount(20.0));
+    }
+
+    private static class CountingPrinter extends Printer {
+        private final AtomicInteger printed = new AtomicInteger();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+        private volatile CountDownLatch blocker;
+
+        @Override
+        public void printReceipt(ReceiptDTO receiptData) {
+            attempts.incrementAndGet();
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("Simulated printer failure.");
+            }
+            if (blocker != null) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            printed.incrementAndGet();
+        }
+    }
+
+    private static class FlakyAccountingSystem extends AccountingSystem {
+        private final AtomicInteger recorded = new AtomicInteger();
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public void updateAccounting(SaleInfoDTO saleInfoAccounting) {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new DatabaseFailureException("Simulated accounting failure.");
+            }
+            recorded.incrementAndGet();
+        }
+    }
+
+    private static class CountingInventorySystem extends InventorySystem {
+        private final AtomicInteger updated = new AtomicInteger();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public void updateInventory(SaleInfoDTO saleInfoInventory) {
+            attempts.incrementAndGet();
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new DatabaseFailureException("Simulated inventory failure.");
+            }
+            updated.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package se.kth.iv1350.pos.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.integration.*;
+import se.kth.iv1350.pos.model.Amount;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegisterSessionTest {
+    private Controller contr;
+
+    @BeforeEach
+    void setUp() {
+        contr = new Controller(new InventorySystem(), new DiscountDatabase(), new AccountingSystem(), new Printer());
+    }
+
+    @AfterEach
+    void tearDown() {
+        contr = null;
+    }
+
+    @Test
+    void testSessionsHaveSeparateSales() throws ItemNotFoundException, OperationFailedException {
+        RegisterSession first = contr.openSession(1);
+        RegisterSession second = contr.openSession(2);
+        first.startSale();
+        second.startSale();
+
+        first.enterItem(101, 2);
+        second.enterItem(102, 1);
+
+        assertEquals(new Amount(30.0), first.getSale().getSaleInfoForDiscount().getRunningTotal(), "Items entered at register 1 should only be in its own sale.");
+        assertEquals(new Amount(2.5), second.getSale().getSaleInfoForDiscount().getRunningTotal(), "Items entered at register 2 should only be in its own sale.");
+    }
+
+    @Test
+    void testOpenSessionTwiceThrows() {
+        contr.openSession(1);
+        assertThrows(IllegalStateException.class, () -> contr.openSession(1), "A register should only have one open session.");
+    }
+
+    @Test
+    void testClosedSessionCanBeReopened() {
+        RegisterSession session = contr.openSession(1);
+        session.close();
+        assertNull(contr.getSession(1), "A closed session should be removed from the controller.");
+        assertDoesNotThrow(() -> contr.openSession(1), "A register should be able to open a new session after closing the old one.");
+    }
+
+    @Test
+    void testStartSaleWithUnpaidSaleThrows() throws ItemNotFoundException, OperationFailedException {
+        RegisterSession session = contr.openSession(1);
+        session.startSale();
+        session.enterItem(101, 1);
+        assertThrows(IllegalStateException.class, session::startSale, "Starting a sale should not discard an unpaid sale.");
+    }
+
+    @Test
+    void testStartSaleAfterPayment() throws ItemNotFoundException, OperationFailedException {
+        RegisterSession session = contr.openSession(1);
+        session.startSale();
+        session.enterItem(101, 1);
+        session.endSale();
+        session.makePayment(new Amount(20.0));
+        assertEquals(new Amount(1.25), session.getChange(), "The change should be calculated for the session's sale.");
+        assertDoesNotThrow(session::startSale, "A new sale should be possible after the previous one is paid.");
+    }
+
+    @Test
+    void testConcurrentSessions() throws Exception {
+        int registers = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Amount>> results = new ArrayList<>();
+            for (int registerId = 1; registerId <= registers; registerId++) {
+                RegisterSession session = contr.openSession(registerId);
+                results.add(executor.submit(() -> {
+                    session.startSale();
+                    for (int i = 0; i < 50; i++) {
+                        session.enterItem(102, 1);
+                    }
+                    return session.getSale().getSaleInfoForDiscount().getRunningTotal();
+                }));
+            }
+            for (Future<Amount> result : results) {
+                assertEquals(new Amount(125.0), result.get(), "Every register should have its own complete sale.");
+            }
+            assertEquals(registers, contr.getOpenSessionCount(), "All sessions should be open.");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchingAccountingSystemTest {
+    private InMemoryAccountingSystem ledger;
+    private BatchingAccountingSystem instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new InMemoryAccountingSystem();
+        instanceToTest = new BatchingAccountingSystem(ledger, 10, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest.close();
+        instanceToTest = null;
+        ledger = null;
+    }
+
+    @Test
+    void testFullBatchIsSentInOneTransaction() {
+        for (int i = 0; i < 25; i++) {
+            instanceToTest.updateAccounting(createSaleInfo(i));
+        }
+        assertEquals(20, ledger.getRecordedSales().size(), "Two full batches should have been sent.");
+        assertEquals(2, ledger.getTransactionCount(), "Each full batch should be sent in one transaction.");
+        assertEquals(5, instanceToTest.getPendingCount(), "Sales that do not fill a batch should be kept.");
+    }
+
+    @Test
+    void testCloseSendsRemainingSales() {
+        instanceToTest.updateAccounting(createSaleInfo(1));
+        instanceToTest.close();
+        assertEquals(1, ledger.getRecordedSales().size(), "Closing should send the remaining sales.");
+    }
+
+    @Test
+    void testSalesAreSentAfterMaxDelay() throws InterruptedException {
+        BatchingAccountingSystem timed = new BatchingAccountingSystem(ledger, 1000, Duration.ofMillis(20));
+        try {
+            timed.updateAccounting(createSaleInfo(1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ledger.getRecordedSales().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, ledger.getRecordedSales().size(), "A sale should be sent when the maximum delay has passed.");
+        } finally {
+            timed.close();
+        }
+    }
+
+    @Test
+    void testFailedBatchIsKeptAndSentLater() {
+        FailingOnceLedger failingLedger = new FailingOnceLedger();
+        BatchingAccountingSystem batcher = new BatchingAccountingSystem(failingLedger, 2, Duration.ofHours(1));
+        batcher.updateAccounting(createSaleInfo(1));
+        batcher.updateAccounting(createSaleInfo(2));
+        assertEquals(2, batcher.getPendingCount(), "A batch that could not be sent should be kept.");
+
+        batcher.close();
+        assertEquals(2, failingLedger.getRecordedSales().size(), "The kept batch should be sent exactly once later.");
+    }
+
+    @Test
+    void testCloseDoesNotThrowWhenFinalFlushFails() {
+        BatchingAccountingSystem batcher = new BatchingAccountingSystem(new FailingLedger(), 10, Duration.ofHours(1));
+        batcher.updateAccounting(createSaleInfo(1));
+        PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            assertDoesNotThrow(batcher::close, "A failed final flush should be logged, not thrown.");
+        } finally {
+            System.setErr(originalErr);
+        }
+        assertEquals(1, batcher.getPendingCount(), "The sale that could not be sent should be kept.");
+    }
+
+    @Test
+    void testUpdateAfterCloseThrows() {
+        instanceToTest.close();
+        assertThrows(IllegalStateException.class, () -> instanceToTest.updateAccounting(createSaleInfo(1)),
+                     "A closed batcher should not accept sales.");
+    }
+
+    @Test
+    void testBatchReachesSystemThatOnlyRecordsSingleSales() {
+        SingleSaleLedger singleSaleLedger = new SingleSaleLedger();
+        BatchingAccountingSystem batcher = new BatchingAccountingSystem(singleSaleLedger, 3, Duration.ofHours(1));
+        for (int i = 1; i <= 4; i++) {
+            batcher.updateAccounting(createSaleInfo(i));
+        }
+        batcher.close();
+        assertEquals(List.of(1.0, 2.0, 3.0, 4.0), singleSaleLedger.recordedTotals,
+                     "Every batched sale should be recorded, in the order it was paid.");
+    }
+
+    private SaleInfoDTO createSaleInfo(int total) {
+        return new SaleInfoDTO(new Amount(total), new ArrayList<>(), new Amount(0));
+    }
+
+    private static class SingleSaleLedger extends AccountingSystem {
+        private final List<Double> recordedTotals = new ArrayList<>();
+
+        @Override
+        public synchronized void updateAccounting(SaleInfoDTO saleInfoAccounting) {
+            recordedTotals.add(saleInfoAccounting.getRunningTotal().getAmount());
+        }
+    }
+
+    private static class FailingLedger extends InMemoryAccountingSystem {
+        @Override
+        public void updateAccountingBatch(List<SaleInfoDTO> salesInfoAccounting) {
+            throw new DatabaseFailureException("Simulated ledger failure.");
+        }
+    }
+
+    private static class FailingOnceLedger extends InMemoryAccountingSystem {
+        private boolean hasFailed;
+
+        @Override
+        public synchronized void updateAccountingBatch(List<SaleInfoDTO> salesInfoAccounting) {
+            if (!hasFailed) {
+                hasFailed = true;
+                throw new DatabaseFailureException("Simulated ledger failure.");
+            }
+            super.updateAccountingBatch(salesInfoAccounting);
+        }
+    }
+}
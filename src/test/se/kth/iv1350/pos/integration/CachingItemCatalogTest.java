@@ -0,0 +1,146 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingItemCatalogTest {
+    private static final Duration NOT_FOUND_TTL = Duration.ofSeconds(2);
+
+    private CountingCatalog backingCatalog;
+    private long nowNanos;
+    private CachingItemCatalog instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        List<ItemDTO> items = new ArrayList<>();
+        for (int itemID = 1; itemID <= 100; itemID++) {
+            items.add(new ItemDTO(itemID, new Amount(10), 25, "Item " + itemID));
+        }
+        backingCatalog = new CountingCatalog(new HashedItemCatalog(items));
+        nowNanos = 0;
+        instanceToTest = new CachingItemCatalog(backingCatalog, 16, NOT_FOUND_TTL, () -> nowNanos);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+        backingCatalog = null;
+    }
+
+    @Test
+    void testRepeatedLookupIsServedFromCache() {
+        ItemDTO first = instanceToTest.findItem(7);
+        ItemDTO second = instanceToTest.findItem(7);
+        assertSame(first, second, "The cached item should be returned.");
+        assertEquals(1, backingCatalog.lookups.get(), "The backing catalog should only be read once.");
+        assertEquals(1, instanceToTest.getHitCount(), "The second lookup should be a hit.");
+        assertEquals(1, instanceToTest.getMissCount(), "The first lookup should be a miss.");
+    }
+
+    @Test
+    void testNotFoundIsCachedUntilTtlExpires() {
+        assertNull(instanceToTest.findItem(999), "An unknown item should not be found.");
+        nowNanos += NOT_FOUND_TTL.toNanos() - 1;
+        assertNull(instanceToTest.findItem(999), "An unknown item should still not be found.");
+        assertEquals(1, backingCatalog.lookups.get(), "A cached not found result should not read the backing catalog.");
+        nowNanos += 1;
+        instanceToTest.findItem(999);
+        assertEquals(2, backingCatalog.lookups.get(), "An expired not found result should read the backing catalog again.");
+    }
+
+    @Test
+    void testFoundItemDoesNotExpire() {
+        instanceToTest.findItem(7);
+        nowNanos += Duration.ofDays(1).toNanos();
+        instanceToTest.findItem(7);
+        assertEquals(1, backingCatalog.lookups.get(), "A found item should stay cached.");
+    }
+
+    @Test
+    void testCacheIsBoundedAndCountsEvictions() {
+        for (int itemID = 1; itemID <= 100; itemID++) {
+            nowNanos++;
+            instanceToTest.findItem(itemID);
+        }
+        assertTrue(instanceToTest.getEvictionCount() >= 100 - 16, "Items beyond the capacity should be evicted.");
+        int lookupsBefore = backingCatalog.lookups.get();
+        for (int itemID = 1; itemID <= 100; itemID++) {
+            instanceToTest.findItem(itemID);
+        }
+        assertTrue(backingCatalog.lookups.get() - lookupsBefore > 100 - 16, "At most capacity items should be cached.");
+    }
+
+    @Test
+    void testRecentlyUsedItemSurvivesEviction() {
+        instanceToTest.findItem(7);
+        for (int itemID = 1; itemID <= 100; itemID++) {
+            nowNanos++;
+            instanceToTest.findItem(7);
+            instanceToTest.findItem(itemID);
+        }
+        int lookupsBefore = backingCatalog.lookups.get();
+        instanceToTest.findItem(7);
+        assertEquals(lookupsBefore, backingCatalog.lookups.get(), "A frequently used item should stay cached.");
+    }
+
+    @Test
+    void testFailedLookupIsNotCached() {
+        ItemCatalog failingCatalog = new CountingCatalog(backingCatalog) {
+            @Override
+            public ItemDTO findItem(int itemID) {
+                lookups.incrementAndGet();
+                throw new DatabaseFailureException("The catalog is unreachable.");
+            }
+        };
+        CachingItemCatalog cache = new CachingItemCatalog(failingCatalog, 16, NOT_FOUND_TTL, () -> nowNanos);
+        assertThrows(DatabaseFailureException.class, () -> cache.findItem(7), "The failure should be passed on.");
+        assertThrows(DatabaseFailureException.class, () -> cache.findItem(7), "A failure should not be cached.");
+        assertEquals(2, backingCatalog.lookups.get(), "Every failed lookup should reach the backing catalog.");
+    }
+
+    @Test
+    void testInventorySystemUsesCache() throws ItemNotFoundException {
+        InventorySystem inventory = new InventorySystem(instanceToTest);
+        inventory.getItemInfo(7);
+        inventory.getItemInfo(7);
+        assertThrows(ItemNotFoundException.class, () -> inventory.getItemInfo(999), "Unknown items should not be found.");
+        assertThrows(ItemNotFoundException.class, () -> inventory.getItemInfo(999), "Unknown items should not be found.");
+        assertEquals(2, backingCatalog.lookups.get(), "Only the first lookup of each ID should reach the backing catalog.");
+    }
+
+    private static class CountingCatalog implements ItemCatalog {
+        final AtomicInteger lookups;
+        private final ItemCatalog catalog;
+
+        CountingCatalog(ItemCatalog catalog) {
+            this.catalog = catalog;
+            this.lookups = catalog instanceof CountingCatalog ? ((CountingCatalog) catalog).lookups : new AtomicInteger();
+        }
+
+        @Override
+        public ItemDTO findItem(int itemID) {
+            lookups.incrementAndGet();
+            return catalog.findItem(itemID);
+        }
+
+        @Override
+        public int size() {
+            return catalog.size();
+        }
+
+        @Override
+        public void forEachItem(Consumer<ItemDTO> consumer) {
+            catalog.forEachItem(consumer);
+        }
+    }
+}
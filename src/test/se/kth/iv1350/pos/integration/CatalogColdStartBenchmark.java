@@ -0,0 +1,56 @@
+package se.kth.iv1350.pos.integration;
+
+import se.kth.iv1350.pos.model.Amount;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Measures how long it takes until the first item can be looked up, when the catalog is parsed
+ * from the text format and when it is mapped from the binary format. It is not a unit test, run
+ * it with the number of items as the only argument (default 400000).
+ */
+public class CatalogColdStartBenchmark {
+    private static final int DEFAULT_ITEM_COUNT = 400_000;
+
+    public static void main(String[] args) throws IOException {
+        int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITEM_COUNT;
+        Path directory = Files.createTempDirectory("catalog-benchmark");
+        Path textCatalog = directory.resolve("item-catalog.txt");
+        Path binaryCatalog = directory.resolve("item-catalog.bin");
+        try {
+            writeTextCatalog(textCatalog, itemCount);
+            MappedItemCatalog.write(HashedItemCatalog.load(textCatalog), binaryCatalog);
+            int lastItemID = itemCount;
+
+            long textStart = System.nanoTime();
+            ItemCatalog parsed = HashedItemCatalog.load(textCatalog);
+            parsed.findItem(lastItemID);
+            long textMicros = (System.nanoTime() - textStart) / 1000;
+
+            long mappedStart = System.nanoTime();
+            ItemCatalog mapped = MappedItemCatalog.open(binaryCatalog);
+            mapped.findItem(lastItemID);
+            long mappedMicros = (System.nanoTime() - mappedStart) / 1000;
+
+            System.out.println("Items: " + itemCount);
+            System.out.println("Text catalog, parse and first lookup:  " + textMicros + " us");
+            System.out.println("Binary catalog, map and first lookup:  " + mappedMicros + " us");
+        } finally {
+            Files.deleteIfExists(textCatalog);
+            Files.deleteIfExists(binaryCatalog);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void writeTextCatalog(Path file, int itemCount) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int itemID = 1; itemID <= itemCount; itemID++) {
+                writer.write(itemID + ";" + Amount.ofMinorUnits(100 + itemID % 10_000) + ";25;Item number " + itemID);
+                writer.newLine();
+            }
+        }
+    }
+}
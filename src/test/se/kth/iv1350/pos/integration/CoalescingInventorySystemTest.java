@@ -0,0 +1,127 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoalescingInventorySystemTest {
+    private RecordingInventorySystem inventory;
+    private CoalescingInventorySystem instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        inventory = new RecordingInventorySystem();
+        instanceToTest = new CoalescingInventorySystem(inventory, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest.close();
+        instanceToTest = null;
+        inventory = null;
+    }
+
+    @Test
+    void testDecreasesAreSummedPerItem() {
+        for (int i = 0; i < 100; i++) {
+            instanceToTest.updateInventory(createSaleInfo(createLine(101, 1), createLine(102, 2)));
+        }
+        assertEquals(0, inventory.calls, "Nothing should be written before the flush.");
+        assertEquals(2, instanceToTest.getPendingItemCount(), "There should be one pending decrease per item.");
+
+        instanceToTest.flush();
+
+        assertEquals(2, inventory.calls, "One decrease per item should be sent.");
+        assertEquals(100, inventory.decreased.get(101), "The decrease of coffee should be the sum of all sales.");
+        assertEquals(200, inventory.decreased.get(102), "The decrease of croissants should be the sum of all sales.");
+        assertEquals(0, instanceToTest.getPendingItemCount(), "No decreases should be pending after the flush.");
+    }
+
+    @Test
+    void testCloseSendsPendingDecreases() {
+        instanceToTest.updateInventory(createSaleInfo(createLine(101, 3)));
+        instanceToTest.close();
+        assertEquals(3, inventory.decreased.get(101), "Closing should send the pending decreases.");
+    }
+
+    @Test
+    void testItemLookupIsPassedThrough() throws ItemNotFoundException {
+        assertEquals("Coffee", instanceToTest.getItemInfo(101).getDescription(), "Item lookups should use the inventory system.");
+    }
+
+    @Test
+    void testReplacedCatalogIsSeenThroughWrapper() throws ItemNotFoundException {
+        ItemCatalog newCatalog = new HashedItemCatalog(List.of(new ItemDTO(101, new Amount(20.0), 25, "Espresso")));
+        inventory.replaceCatalog(newCatalog);
+
+        assertSame(newCatalog, instanceToTest.getCatalog(), "The wrapper should not keep the catalog it was created with.");
+        assertEquals("Espresso", instanceToTest.getItemInfo(101).getDescription(), "Lookups should use the replaced catalog.");
+        assertSame(inventory.getStockLevels(), instanceToTest.getStockLevels(), "The stock levels should be the wrapped ones.");
+    }
+
+    @Test
+    void testUpdatesRacingWithCloseAreFlushedOrRejected() throws InterruptedException {
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(4);
+        Thread[] sellers = new Thread[4];
+        for (int i = 0; i < sellers.length; i++) {
+            sellers[i] = new Thread(() -> {
+                started.countDown();
+                try {
+                    while (true) {
+                        instanceToTest.updateInventory(createSaleInfo(createLine(101, 1), createLine(102, 1)));
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException e) {
+                    // Rejected after close
+                }
+            });
+            sellers[i].start();
+        }
+        started.await();
+        Thread.sleep(20);
+        instanceToTest.close();
+        for (Thread seller : sellers) {
+            seller.join();
+        }
+
+        assertEquals(accepted.get(), inventory.decreasedOf(101), "Every accepted sale should be flushed before close returns.");
+        assertEquals(accepted.get(), inventory.decreasedOf(102), "No accepted sale should be partly flushed.");
+        assertEquals(0, instanceToTest.getPendingItemCount(), "Nothing should be pending after close.");
+    }
+
+    private SaleInfoDTO createSaleInfo(SaleLineDTO... lines) {
+        return new SaleInfoDTO(new Amount(0), List.of(lines), new Amount(0));
+    }
+
+    private SaleLineDTO createLine(int itemID, int quantity) {
+        return new SaleLineDTO(itemID, "Item " + itemID, quantity, new Amount(1), 25, new Amount(quantity));
+    }
+
+    private static class RecordingInventorySystem extends InventorySystem {
+        private final Map<Integer, Integer> decreased = new HashMap<>();
+        private int calls;
+
+        @Override
+        public synchronized void decreaseStock(int itemID, int quantity) {
+            decreased.merge(itemID, quantity, Integer::sum);
+            calls++;
+        }
+
+        synchronized int decreasedOf(int itemID) {
+            return decreased.getOrDefault(itemID, 0);
+        }
+    }
+}
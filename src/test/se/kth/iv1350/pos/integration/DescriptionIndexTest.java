@@ -0,0 +1,129 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DescriptionIndexTest {
+    private DescriptionIndex instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        instanceToTest = new DescriptionIndex(new HashedItemCatalog(List.of(
+            createItem(1, "Coffee, dark roast"),
+            createItem(2, "Coffee filter"),
+            createItem(3, "Cocoa"),
+            createItem(4, "Decaf coffee beans"),
+            createItem(5, "Coffeecake"),
+            createItem(6, "Bread, dark rye"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+    }
+
+    @Test
+    void testPrefixMatchesTokensAnywhereInDescription() {
+        assertEquals(List.of(1, 2, 4, 5), itemIDs(instanceToTest.search("coff", 10)), "Every description with a word starting with coff should match.");
+    }
+
+    @Test
+    void testExactWordIsRankedBeforeLongerWord() {
+        List<Integer> found = itemIDs(instanceToTest.search("coffee", 10));
+        assertEquals(5, found.get(found.size() - 1), "Coffeecake only starts with the query and should come last.");
+    }
+
+    @Test
+    void testAllQueryWordsMustMatch() {
+        assertEquals(List.of(1), itemIDs(instanceToTest.search("dark cof", 10)), "Only dark roast coffee has both words.");
+        assertEquals(List.of(6), itemIDs(instanceToTest.search("DARK ry", 10)), "Search should ignore case and check every word.");
+    }
+
+    @Test
+    void testLimitIsRespected() {
+        assertEquals(2, instanceToTest.search("co", 2).size(), "No more items than the limit should be returned.");
+    }
+
+    @Test
+    void testNoMatchOrEmptyQueryReturnsEmptyList() {
+        assertTrue(instanceToTest.search("tea", 10).isEmpty(), "An unknown word should match nothing.");
+        assertTrue(instanceToTest.search(" ,", 10).isEmpty(), "A query without words should match nothing.");
+    }
+
+    @Test
+    void testLargeCatalogFindsItemByUniqueWord() {
+        List<ItemDTO> items = new ArrayList<>();
+        for (int itemID = 1; itemID <= 400_000; itemID++) {
+            items.add(createItem(itemID, "Product " + itemID + " size " + (itemID % 7)));
+        }
+        DescriptionIndex largeIndex = new DescriptionIndex(new HashedItemCatalog(items));
+        assertEquals(List.of(123456), itemIDs(largeIndex.search("123456", 10)), "The item should be found by its unique word.");
+        assertEquals(10, largeIndex.search("product size 3", 10).size(), "A common prefix should return the limit.");
+    }
+
+    @Test
+    void testInventorySystemSearchFollowsReloadedCatalog() {
+        InventorySystem inventory = new InventorySystem();
+        assertEquals(List.of(101), itemIDs(inventory.searchItems("coff", 5)), "The shipped coffee should be found.");
+        inventory.replaceCatalog(new HashedItemCatalog(List.of(createItem(201, "Coffee beans"))));
+        assertEquals(List.of(201), itemIDs(inventory.searchItems("coff", 5)), "The search should use the new catalog.");
+    }
+
+    @Test
+    void testScanMatchesSameItemsAsIndex() {
+        ItemCatalog catalog = instanceToTest.getCatalog();
+        for (String query : List.of("coff", "coffee", "dark cof", "DARK ry", "tea", " ,")) {
+            assertEquals(new HashSet<>(itemIDs(instanceToTest.search(query, 10))), new HashSet<>(itemIDs(DescriptionIndex.scan(catalog, query, 10))),
+                         "The scan should match the same items as the index for '" + query + "'.");
+        }
+        List<Integer> scanned = itemIDs(DescriptionIndex.scan(catalog, "coffee", 10));
+        assertEquals(5, scanned.get(scanned.size() - 1), "The scan should also rank an exact word first.");
+        assertEquals(2, DescriptionIndex.scan(catalog, "co", 2).size(), "The scan should respect the limit.");
+    }
+
+    @Test
+    void testFirstSearchDoesNotWaitForIndexAndIndexIsBuiltInBackground() throws InterruptedException {
+        List<ItemDTO> items = new ArrayList<>();
+        for (int itemID = 1; itemID <= 200_000; itemID++) {
+            items.add(createItem(itemID, "Product " + itemID));
+        }
+        InventorySystem inventory = new InventorySystem(new HashedItemCatalog(items));
+        assertFalse(inventory.isSearchIndexReady(), "No index should be built when the inventory system is created.");
+        assertEquals(List.of(4711), itemIDs(inventory.searchItems("4711", 1)), "The first search should scan the catalog.");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!inventory.isSearchIndexReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(inventory.isSearchIndexReady(), "The first search should start building the index in the background.");
+        assertEquals(List.of(4711), itemIDs(inventory.searchItems("4711", 1)), "The index should find the same item.");
+    }
+
+    @Test
+    void testBackgroundReloadInstallsIndexWithCatalog() {
+        InventorySystem inventory = new InventorySystem();
+        ItemCatalog reloaded = new HashedItemCatalog(List.of(createItem(301, "Green tea")));
+        inventory.reloadCatalog(() -> reloaded).join();
+        assertEquals(List.of(301), itemIDs(inventory.searchItems("tea", 5)), "The reloaded catalog should be searched.");
+        assertEquals(List.of(), itemIDs(inventory.searchItems("coff", 5)), "The old catalog should no longer be searched.");
+    }
+
+    private static List<Integer> itemIDs(List<ItemDTO> items) {
+        List<Integer> ids = new ArrayList<>();
+        for (ItemDTO item : items) {
+            ids.add(item.getItemID());
+        }
+        return ids;
+    }
+
+    private static ItemDTO createItem(int itemID, String description) {
+        return new ItemDTO(itemID, new Amount(10), 25, description);
+    }
+}
@@ -7,6 +7,9 @@ import se.kth.iv1350.pos.model.Amount;
 import se.kth.iv1350.pos.model.SaleInfoDTO; 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 
 public class DiscountDatabaseTest {
@@ -43,7 +46,7 @@ public class DiscountDatabaseTest {
     void testGetDiscountFoundCorrectType() {
         int customerIDWithDiscount = 1234;
         DiscountInfoDTO result = instanceToTest.getDiscount(customerIDWithDiscount, dummySaleInfo);
-        assertEquals("Percentage", result.getDiscountType(), "Discount type should be 'Percentage' for customer 1234.");
+        assertEquals(DiscountType.PERCENTAGE, result.getDiscountType(), "Discount type should be PERCENTAGE for customer 1234.");
     }
 
     @Test
@@ -52,4 +55,22 @@ public class DiscountDatabaseTest {
         DiscountInfoDTO result = instanceToTest.getDiscount(customerIDWithoutDiscount, dummySaleInfo);
         assertNull(result, "Discount should not be found (should be null) for customer ID 5678.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testLargestDiscountIsGiven() throws IOException {
+        DiscountRules rules = DiscountRules.load(new BufferedReader(new StringReader(
+            "customer;1;PERCENTAGE;10\nbasket;50.00;AMOUNT;20.00\n")), "test");
+        DiscountDatabase database = new DiscountDatabase(rules);
+        DiscountInfoDTO result = database.getDiscount(1, dummySaleInfo);
+        assertEquals(DiscountType.AMOUNT, result.getDiscountType(), "20.00 off is more than 10% of 100.00.");
+        assertEquals(new Amount(20.00), result.getDiscountAmount(), "The basket discount should be given.");
+    }
+
+    @Test
+    void testReplaceRulesIsUsedByLaterLookups() throws IOException {
+        instanceToTest.replaceRules(DiscountRules.load(new BufferedReader(new StringReader(
+            "customer;5678;PERCENTAGE;15\n")), "test"));
+        assertNull(instanceToTest.getDiscount(1234, dummySaleInfo), "The old rules should no longer be used.");
+        assertEquals(15, instanceToTest.getDiscount(5678, dummySaleInfo).getDiscountPercentage(), "The new rules should be used.");
+    }
+}
@@ -0,0 +1,110 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiscountRulesTest {
+    private static final String RULES =
+        "# comment\n"
+        + "customer;1234;PERCENTAGE;10\n"
+        + "customer;42;amount;25.00\n"
+        + "item;101;AMOUNT;2.00\n"
+        + "item;102;PERCENTAGE;50\n"
+        + "basket;500.00;PERCENTAGE;5\n"
+        + "basket;100.00;AMOUNT;10.00\n"
+        + "basket;1000.00;PERCENTAGE;8\n";
+
+    private DiscountRules instanceToTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instanceToTest = DiscountRules.load(new BufferedReader(new StringReader(RULES)), "test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+    }
+
+    @Test
+    void testLoadDefaultContainsShippedCustomerRule() {
+        DiscountInfoDTO discount = DiscountRules.loadDefault().findCustomerDiscount(1234);
+        assertEquals(DiscountType.PERCENTAGE, discount.getDiscountType(), "Customer 1234 should have a percentage discount.");
+        assertEquals(10, discount.getDiscountPercentage(), "Customer 1234 should get 10%.");
+    }
+
+    @Test
+    void testCustomerRules() {
+        assertEquals(new Amount(25.00), instanceToTest.findCustomerDiscount(42).getDiscountAmount(), "The type should be case insensitive.");
+        assertNull(instanceToTest.findCustomerDiscount(7), "A customer without a rule should get no discount.");
+        assertEquals(7, instanceToTest.getRuleCount(), "Every rule should be compiled.");
+    }
+
+    @Test
+    void testItemRulesApplyPerUnitAndLine() {
+        SaleInfoDTO sale = new SaleInfoDTO(new Amount(0), List.of(
+            createLine(101, 3, new Amount(15.00)),
+            createLine(102, 2, new Amount(2.50)),
+            createLine(103, 1, new Amount(9.00))), new Amount(0));
+        assertEquals(600 + 250, instanceToTest.calculateItemDiscount(sale), "Coffee should give 2.00 per unit and croissants 50%.");
+    }
+
+    @Test
+    void testItemAmountIsNeverLargerThanLine() {
+        SaleInfoDTO sale = new SaleInfoDTO(new Amount(0), List.of(createLine(101, 1, new Amount(1.50))), new Amount(0));
+        assertEquals(150, instanceToTest.calculateItemDiscount(sale), "The discount should be limited to the line total.");
+    }
+
+    @Test
+    void testBasketRuleWithHighestReachedThresholdIsFound() {
+        assertNull(instanceToTest.findBasketDiscount(new Amount(99.99)), "No threshold should be reached.");
+        assertEquals(DiscountType.AMOUNT, instanceToTest.findBasketDiscount(new Amount(100.00)).getDiscountType(), "Exactly reaching a threshold should count.");
+        assertEquals(5, instanceToTest.findBasketDiscount(new Amount(999.99)).getDiscountPercentage(), "The 500 threshold should be the highest reached.");
+        assertEquals(8, instanceToTest.findBasketDiscount(new Amount(5000)).getDiscountPercentage(), "The highest threshold should be used.");
+    }
+
+    @Test
+    void testLaterRuleWithSameKeyWins() throws IOException {
+        DiscountRules rules = DiscountRules.load(new BufferedReader(new StringReader(
+            "customer;1;PERCENTAGE;10\ncustomer;1;PERCENTAGE;20\nbasket;10.00;PERCENTAGE;1\nbasket;10.00;PERCENTAGE;2\n")), "test");
+        assertEquals(20, rules.findCustomerDiscount(1).getDiscountPercentage(), "The last customer rule should be used.");
+        assertEquals(2, rules.findBasketDiscount(new Amount(10)).getDiscountPercentage(), "The last basket rule should be used.");
+    }
+
+    @Test
+    void testInvalidRulesThrow() {
+        for (String invalid : List.of("customer;1;PERCENTAGE;150\n", "customer;x;PERCENTAGE;5\n",
+                                      "coupon;1;PERCENTAGE;5\n", "item;1;FREE;5\n", "item;1;AMOUNT\n")) {
+            DatabaseFailureException thrown = assertThrows(DatabaseFailureException.class,
+                () -> DiscountRules.load(new BufferedReader(new StringReader(invalid)), "test"),
+                "The rule " + invalid.trim() + " should be rejected.");
+            assertTrue(thrown.getMessage().contains("line 1"), "The message should point out the invalid line.");
+        }
+    }
+
+    @Test
+    void testManyRulesAreIndexed() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int customerID = 1; customerID <= 50_000; customerID++) {
+            text.append("customer;").append(customerID).append(";PERCENTAGE;").append(customerID % 30).append('\n');
+        }
+        DiscountRules rules = DiscountRules.load(new BufferedReader(new StringReader(text.toString())), "test");
+        assertEquals(50_000, rules.getRuleCount(), "Every rule should be compiled.");
+        assertEquals(12345 % 30, rules.findCustomerDiscount(12345).getDiscountPercentage(), "Every customer should be found.");
+    }
+
+    private static SaleLineDTO createLine(int itemID, int quantity, Amount unitPrice) {
+        return new SaleLineDTO(itemID, "Item " + itemID, quantity, unitPrice, 25, unitPrice.multiply(quantity));
+    }
+}
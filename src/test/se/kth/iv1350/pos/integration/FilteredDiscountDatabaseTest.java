@@ -0,0 +1,92 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilteredDiscountDatabaseTest {
+    private CountingDiscountDatabase backend;
+    private FilteredDiscountDatabase instanceToTest;
+    private SaleInfoDTO saleInfo;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        backend = new CountingDiscountDatabase(rules("customer;1234;PERCENTAGE;10\ncustomer;42;AMOUNT;5.00\n"));
+        instanceToTest = new FilteredDiscountDatabase(backend, 16);
+        saleInfo = new SaleInfoDTO(new Amount(100), List.of(), new Amount(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+        backend = null;
+    }
+
+    @Test
+    void testCustomerWithoutDiscountIsAnsweredByFilter() {
+        for (int customerID = 10_000; customerID < 20_000; customerID++) {
+            assertNull(instanceToTest.getDiscount(customerID, saleInfo), "A customer without a rule should get no discount.");
+        }
+        int backendLookups = backend.lookups;
+        assertTrue(backendLookups < 500, "Almost all customers without a discount should be filtered, but " + backendLookups + " were looked up.");
+        assertEquals(10_000 - backendLookups, instanceToTest.getFilteredLookupCount(), "Every lookup that was not sent should be counted as filtered.");
+    }
+
+    @Test
+    void testCustomerWithDiscountIsCached() {
+        DiscountInfoDTO first = instanceToTest.getDiscount(1234, saleInfo);
+        DiscountInfoDTO second = instanceToTest.getDiscount(1234, saleInfo);
+        assertEquals(10, first.getDiscountPercentage(), "Customer 1234 should get 10%.");
+        assertSame(first, second, "The cached discount should be returned.");
+        assertEquals(1, backend.lookups, "The discount database should only be asked once.");
+        assertEquals(1, instanceToTest.getCacheHitCount(), "The second lookup should be a cache hit.");
+    }
+
+    @Test
+    void testReplacedRulesRebuildFilterAndCache() throws IOException {
+        instanceToTest.getDiscount(1234, saleInfo);
+        instanceToTest.replaceRules(rules("customer;5678;PERCENTAGE;20\n"));
+        assertNull(instanceToTest.getDiscount(1234, saleInfo), "A removed rule should not be served from the cache.");
+        assertEquals(20, instanceToTest.getDiscount(5678, saleInfo).getDiscountPercentage(), "A new customer should pass the filter.");
+    }
+
+    @Test
+    void testRulesReplacedInDatabaseAreDetected() throws IOException {
+        backend.replaceRules(rules("customer;5678;PERCENTAGE;20\n"));
+        assertEquals(20, instanceToTest.getDiscount(5678, saleInfo).getDiscountPercentage(), "The filter should follow the database's rules.");
+    }
+
+    @Test
+    void testCustomerIndependentRulesAreStillEvaluated() throws IOException {
+        instanceToTest.replaceRules(rules("customer;1234;PERCENTAGE;10\nbasket;50.00;AMOUNT;7.00\n"));
+        DiscountInfoDTO discount = instanceToTest.getDiscount(999_999, saleInfo);
+        assertEquals(new Amount(7.00), discount.getDiscountAmount(), "A basket rule should apply to a customer without a discount.");
+    }
+
+    private static DiscountRules rules(String text) throws IOException {
+        return DiscountRules.load(new BufferedReader(new StringReader(text)), "test");
+    }
+
+    private static class CountingDiscountDatabase extends DiscountDatabase {
+        private int lookups;
+
+        CountingDiscountDatabase(DiscountRules rules) {
+            super(rules);
+        }
+
+        @Override
+        public DiscountInfoDTO getCustomerDiscount(int customerID) {
+            lookups++;
+            return super.getCustomerDiscount(customerID);
+        }
+    }
+}
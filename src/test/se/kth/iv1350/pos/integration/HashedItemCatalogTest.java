@@ -0,0 +1,73 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashedItemCatalogTest {
+
+    @Test
+    void testLoadDefaultContainsShippedItems() {
+        HashedItemCatalog catalog = HashedItemCatalog.loadDefault();
+        ItemDTO coffee = catalog.findItem(101);
+        assertNotNull(coffee, "The shipped catalog should contain coffee.");
+        assertEquals(new Amount(15.00), coffee.getPrice(), "Coffee should have the price from the catalog file.");
+        assertEquals(25, (int) coffee.getTax(), "Coffee should have the tax rate from the catalog file.");
+    }
+
+    @Test
+    void testLoadParsesLinesAndSkipsComments() throws IOException {
+        String text = "# comment\n\n7;1.05;6;Newspaper; weekend edition\n";
+        HashedItemCatalog catalog = HashedItemCatalog.load(new BufferedReader(new StringReader(text)), "test");
+        assertEquals(1, catalog.size(), "Comments and empty lines should be ignored.");
+        ItemDTO item = catalog.findItem(7);
+        assertEquals(new Amount(1.05), item.getPrice(), "The price should be parsed exactly.");
+        assertEquals("Newspaper; weekend edition", item.getDescription(), "The description may contain the separator.");
+    }
+
+    @Test
+    void testLoadInvalidLineThrows() {
+        String text = "101;abc;25;Coffee\n";
+        DatabaseFailureException thrown = assertThrows(DatabaseFailureException.class,
+            () -> HashedItemCatalog.load(new BufferedReader(new StringReader(text)), "test"),
+            "An invalid price should make loading fail.");
+        assertTrue(thrown.getMessage().contains("line 1"), "The message should point out the invalid line.");
+    }
+
+    @Test
+    void testFindMissingItemReturnsNull() {
+        HashedItemCatalog catalog = new HashedItemCatalog(List.of());
+        assertNull(catalog.findItem(101), "An empty catalog should not contain any item.");
+    }
+
+    @Test
+    void testLargeCatalogFindsEveryItem() {
+        int itemCount = 400_000;
+        List<ItemDTO> items = new ArrayList<>(itemCount);
+        for (int itemID = 1; itemID <= itemCount; itemID++) {
+            items.add(new ItemDTO(itemID * 7, new Amount(1), 25, "Item " + itemID));
+        }
+        HashedItemCatalog catalog = new HashedItemCatalog(items);
+        assertEquals(itemCount, catalog.size(), "Every item should be in the catalog.");
+        for (int itemID = 1; itemID <= itemCount; itemID++) {
+            assertEquals(itemID * 7, catalog.findItem(itemID * 7).getItemID(), "Every item should be found by its ID.");
+        }
+        assertNull(catalog.findItem(3), "An ID that is not in the catalog should not be found.");
+    }
+
+    @Test
+    void testDuplicateIDUsesLastItem() {
+        HashedItemCatalog catalog = new HashedItemCatalog(List.of(
+            new ItemDTO(101, new Amount(15), 25, "Coffee"),
+            new ItemDTO(101, new Amount(16), 25, "Coffee")));
+        assertEquals(1, catalog.size(), "Duplicate IDs should only be stored once.");
+        assertEquals(new Amount(16), catalog.findItem(101).getPrice(), "The last item with an ID should be used.");
+    }
+}
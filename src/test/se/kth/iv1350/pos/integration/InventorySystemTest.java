@@ -3,6 +3,15 @@ package se.kth.iv1350.pos.integration;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import se.kth.iv1350.pos.model.Amount;
 import static org.junit.jupiter.api.Assertions.*;
 
 /*
@@ -70,4 +79,97 @@ public class InventorySystemTest {
         assertNotNull(result, "Precondition failed: DTO should not be null.");
         assertEquals(expectedDescription, result.getDescription(), "The returned DTO should have the correct description.");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLookupItemFoundReturnsItem() {
+        ItemLookupResult result = instanceToTest.lookupItem(101);
+        assertEquals(ItemLookupResult.Status.FOUND, result.getStatus(), "Item 101 should be found.");
+        assertEquals(101, result.getItem().getItemID(), "The result should contain the found item.");
+    }
+
+    @Test
+    public void testLookupItemNotFoundDoesNotThrow() {
+        ItemLookupResult result = instanceToTest.lookupItem(999);
+        assertEquals(ItemLookupResult.Status.NOT_FOUND, result.getStatus(), "Item 999 should not be found.");
+        assertNull(result.getItem(), "A not found result should not contain an item.");
+        assertTrue(result.getFailureMessage().contains("999"), "The message should contain the item ID.");
+    }
+
+    @Test
+    public void testLookupItemSimulatedDatabaseFailureDoesNotThrow() {
+        ItemLookupResult result = instanceToTest.lookupItem(666);
+        assertEquals(ItemLookupResult.Status.BACKEND_FAILURE, result.getStatus(), "Item 666 should simulate a DB failure.");
+        assertTrue(result.getFailureMessage().contains("Could not connect to the item database"), "The message should indicate a DB connection issue.");
+    }
+
+    @Test
+    public void testLookupItemCatalogFailureIsReturned() {
+        DatabaseFailureException failure = new DatabaseFailureException("The catalog is unreachable.");
+        InventorySystem failingInventory = new InventorySystem(new ItemCatalog() {
+            @Override
+            public ItemDTO findItem(int itemID) {
+                throw failure;
+            }
+
+            @Override
+            public int size() {
+                return 0;
+            }
+
+            @Override
+            public void forEachItem(Consumer<ItemDTO> consumer) {
+            }
+        });
+        ItemLookupResult result = failingInventory.lookupItem(101);
+        assertEquals(ItemLookupResult.Status.BACKEND_FAILURE, result.getStatus(), "A catalog failure should be returned as a result.");
+        assertSame(failure, result.getFailureCause(), "The result should keep the catalog failure as its cause.");
+    }
+
+    @Test
+    public void testReplaceCatalogChangesLookupsAndStocksNewItems() throws ItemNotFoundException {
+        instanceToTest.getStockLevels().decrease(101, 5);
+        long coffeeLevel = instanceToTest.getStockLevels().getLevel(101);
+        instanceToTest.replaceCatalog(new HashedItemCatalog(List.of(
+            new ItemDTO(101, new Amount(17.00), 25, "Coffee"),
+            new ItemDTO(103, new Amount(4.00), 12, "Bun"))));
+        assertEquals(new Amount(17.00), instanceToTest.getItemInfo(101).getPrice(), "The new price should be used.");
+        assertEquals(103, instanceToTest.getItemInfo(103).getItemID(), "A new item should be found.");
+        assertTrue(instanceToTest.getStockLevels().isStocked(103), "A new item should be kept in stock.");
+        assertEquals(coffeeLevel, instanceToTest.getStockLevels().getLevel(101), "An existing item should keep its stock level.");
+        assertThrows(ItemNotFoundException.class, () -> instanceToTest.getItemInfo(102), "A removed item should no longer be found.");
+    }
+
+    @Test
+    public void testReloadCatalogDoesNotInterruptLookups() throws Exception {
+        List<ItemDTO> items = new ArrayList<>();
+        for (int itemID = 1; itemID <= 100_000; itemID++) {
+            items.add(new ItemDTO(itemID, new Amount(1), 25, "Item " + itemID));
+        }
+        items.add(new ItemDTO(101, new Amount(15.00), 25, "Coffee"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger failedLookups = new AtomicInteger();
+        Thread scanner = new Thread(() -> {
+            while (running.get()) {
+                if (!instanceToTest.lookupItem(101).isFound()) {
+                    failedLookups.incrementAndGet();
+                }
+            }
+        });
+        scanner.start();
+        ItemCatalog reloaded = instanceToTest.reloadCatalog(() -> new HashedItemCatalog(items)).get(10, TimeUnit.SECONDS);
+        running.set(false);
+        scanner.join();
+        assertSame(reloaded, instanceToTest.getCatalog(), "The reloaded catalog should be in use.");
+        assertEquals(0, failedLookups.get(), "No lookup should fail while the catalog is reloaded.");
+    }
+
+    @Test
+    public void testFailedReloadKeepsCurrentCatalog() {
+        ItemCatalog current = instanceToTest.getCatalog();
+        CompletableFuture<ItemCatalog> reload = instanceToTest.reloadCatalog(() -> {
+            throw new DatabaseFailureException("The catalog could not be read.");
+        });
+        assertThrows(ExecutionException.class, () -> reload.get(10, TimeUnit.SECONDS), "The failure should be reported.");
+        assertSame(current, instanceToTest.getCatalog(), "The current catalog should be kept.");
+    }
+}
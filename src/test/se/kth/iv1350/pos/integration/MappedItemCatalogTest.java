@@ -0,0 +1,147 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedItemCatalogTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testWrittenCatalogCanBeOpened() {
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        MappedItemCatalog.write(HashedItemCatalog.loadDefault(), catalogFile);
+
+        MappedItemCatalog instanceToTest = MappedItemCatalog.open(catalogFile);
+        ItemDTO croissant = instanceToTest.findItem(102);
+
+        assertEquals(2, instanceToTest.size(), "The binary catalog should contain every item.");
+        assertEquals("Croissant", croissant.getDescription(), "The description should be read from the string pool.");
+        assertEquals(new Amount(2.50), croissant.getPrice(), "The price should be read exactly.");
+        assertEquals(12, (int) croissant.getTax(), "The tax rate should be read.");
+        assertNull(instanceToTest.findItem(999), "An item that is not in the catalog should not be found.");
+    }
+
+    @Test
+    void testLookupReturnsSameInstance() {
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        MappedItemCatalog.write(HashedItemCatalog.loadDefault(), catalogFile);
+        MappedItemCatalog instanceToTest = MappedItemCatalog.open(catalogFile);
+
+        assertSame(instanceToTest.findItem(101), instanceToTest.findItem(101), "A materialized item should be reused.");
+    }
+
+    @Test
+    void testLargeCatalogWithNonAsciiDescriptions() {
+        List<ItemDTO> items = new ArrayList<>();
+        for (int itemID = 1; itemID <= 50_000; itemID++) {
+            items.add(new ItemDTO(itemID * 3, Amount.ofMinorUnits(itemID), 25, "Räksmörgås " + itemID));
+        }
+        Path catalogFile = tempDir.resolve("large.bin");
+        MappedItemCatalog.write(new HashedItemCatalog(items), catalogFile);
+        MappedItemCatalog instanceToTest = MappedItemCatalog.open(catalogFile);
+
+        for (int itemID = 1; itemID <= 50_000; itemID++) {
+            ItemDTO item = instanceToTest.findItem(itemID * 3);
+            assertEquals("Räksmörgås " + itemID, item.getDescription(), "Every item should be found with its description.");
+            assertEquals(Amount.ofMinorUnits(itemID), item.getPrice(), "Every item should have its price.");
+        }
+    }
+
+    @Test
+    void testOpenInvalidFileThrows() throws IOException {
+        Path invalidFile = tempDir.resolve("invalid.bin");
+        Files.write(invalidFile, "101;15.00;25;Coffee".getBytes());
+        assertThrows(DatabaseFailureException.class, () -> MappedItemCatalog.open(invalidFile),
+                     "A file that is not a binary catalog should be rejected.");
+    }
+
+    @Test
+    void testOpenTruncatedFileThrows() throws IOException {
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        MappedItemCatalog.write(HashedItemCatalog.loadDefault(), catalogFile);
+        byte[] content = Files.readAllBytes(catalogFile);
+        Files.write(catalogFile, Arrays.copyOf(content, 60));
+        assertThrows(DatabaseFailureException.class, () -> MappedItemCatalog.open(catalogFile),
+                     "A file that is shorter than its header says should be rejected.");
+    }
+
+    @Test
+    void testDamagedSlotIsReportedAsDatabaseFailure() throws IOException {
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        MappedItemCatalog.write(HashedItemCatalog.loadDefault(), catalogFile);
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(catalogFile));
+        int slotCount = content.getInt(12);
+        for (int slot = 0; slot < slotCount; slot++) {
+            content.putInt(16 + slot * 4, 1000);
+        }
+        Files.write(catalogFile, content.array());
+
+        MappedItemCatalog instanceToTest = MappedItemCatalog.open(catalogFile);
+        assertThrows(DatabaseFailureException.class, () -> instanceToTest.findItem(101),
+                     "A slot that refers to a record outside the file should be reported.");
+    }
+
+    @Test
+    void testDamagedDescriptionIsReportedAsDatabaseFailure() throws IOException {
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        MappedItemCatalog.write(HashedItemCatalog.loadDefault(), catalogFile);
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(catalogFile));
+        int recordsStart = 16 + content.getInt(12) * 4;
+        content.putInt(recordsStart + 16, Integer.MAX_VALUE - 2);
+        content.putInt(recordsStart + 40, -1);
+        Files.write(catalogFile, content.array());
+
+        MappedItemCatalog instanceToTest = MappedItemCatalog.open(catalogFile);
+        assertThrows(DatabaseFailureException.class, () -> instanceToTest.forEachItem(item -> { }),
+                     "A description outside the string pool should be reported.");
+    }
+
+    @Test
+    void testColdStartThroughInventorySystemReadsOnlyUsedItems() {
+        List<ItemDTO> items = new ArrayList<>();
+        for (int itemID = 1; itemID <= 400_000; itemID++) {
+            items.add(new ItemDTO(itemID, Amount.ofMinorUnits(itemID), 25, "Product " + itemID));
+        }
+        Path catalogFile = tempDir.resolve("large.bin");
+        MappedItemCatalog.write(new HashedItemCatalog(items), catalogFile);
+        items = null;
+        // Collects the generated items now, so their garbage does not pause the measured start
+        System.gc();
+
+        long start = System.nanoTime();
+        MappedItemCatalog catalog = MappedItemCatalog.open(catalogFile);
+        InventorySystem invSys = new InventorySystem(catalog);
+        ItemLookupResult result = invSys.lookupItem(123_456);
+        invSys.updateInventory(new SaleInfoDTO(new Amount(0), List.of(new SaleLineDTO(123_456, "Product 123456", 2,
+                               Amount.ofMinorUnits(123_456), 25, Amount.ofMinorUnits(246_912))), new Amount(0)));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals("Product 123456", result.getItem().getDescription(), "The item should be found at once.");
+        assertEquals(98, invSys.getStockLevels().getLevel(123_456), "The stock of the sold item should be decreased.");
+        assertEquals(1, catalog.getMaterializedItemCount(), "Starting the inventory system should not read every item.");
+        assertTrue(elapsedMillis < 100, "A register should be ready to scan without reading the catalog, took " + elapsedMillis + " ms.");
+    }
+
+    @Test
+    void testInventorySystemUsesMappedCatalog() throws ItemNotFoundException {
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        MappedItemCatalog.write(HashedItemCatalog.loadDefault(), catalogFile);
+        InventorySystem invSys = new InventorySystem(MappedItemCatalog.open(catalogFile));
+
+        assertEquals("Coffee", invSys.getItemInfo(101).getDescription(), "InventorySystem should look items up in the mapped catalog.");
+    }
+}
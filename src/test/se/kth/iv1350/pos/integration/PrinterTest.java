@@ -0,0 +1,54 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.ReceiptDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrinterTest {
+    private ReceiptDTO receipt;
+
+    @BeforeEach
+    void setUp() {
+        List<SaleLineDTO> lines = List.of(new SaleLineDTO(101, "Coffee", 2, new Amount(15.0), 25, new Amount(30.0)),
+                                          new SaleLineDTO(102, "Croissant", 3, new Amount(2.5), 12, new Amount(7.5)));
+        receipt = new ReceiptDTO(LocalDateTime.of(2024, 5, 17, 14, 3), lines, new Amount(46.5), new Amount(50.0), new Amount(3.5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        receipt = null;
+    }
+
+    @Test
+    void testItemLinesShowQuantityUnitPriceAndLineTotal() {
+        String[] printed = Printer.formatReceipt(receipt).split("\n");
+
+        assertEquals("Time of Sale: 2024-05-17 14:03", printed[0], "The receipt should start with the time of the sale.");
+        assertEquals("Coffee 2 x " + new Amount(15.0) + " " + new Amount(30.0), printed[2],
+                     "The line should show description, quantity, unit price and line total.");
+        assertEquals("Croissant 3 x " + new Amount(2.5) + " " + new Amount(7.5), printed[3],
+                     "Every sale line should be printed in the order of the sale.");
+    }
+
+    @Test
+    void testTotalsArePrintedAfterItemLines() {
+        String printed = Printer.formatReceipt(receipt);
+
+        assertTrue(printed.endsWith("Total: " + new Amount(46.5) + "\n\nCash: " + new Amount(50.0) + "\nChange: " + new Amount(3.5) + "\n"),
+                   "The total, the cash and the change should end the receipt.");
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testDeprecatedToStringMatchesPrintedReceipt() {
+        assertEquals(Printer.formatReceipt(receipt), receipt.toString(), "ReceiptDTO.toString should still render the receipt.");
+    }
+}
@@ -0,0 +1,90 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PromotionRulesTest {
+    private static final String PROMOTIONS =
+        "# comment\n"
+        + "free;3 for 2 on coffee;101x3;1\n"
+        + "bundle;Coffee and croissant;101x1+102x1;16.00\n"
+        + "BUNDLE;Two sandwiches;201x2;50.00\n"
+        + "free;Cheapest of three free;301+302+303;1\n";
+
+    private PromotionRules instanceToTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        instanceToTest = load(PROMOTIONS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+    }
+
+    private static PromotionRules load(String promotions) throws IOException {
+        return PromotionRules.load(new BufferedReader(new StringReader(promotions)), "test");
+    }
+
+    @Test
+    void testPromotionsAreParsed() {
+        assertEquals(4, instanceToTest.size(), "Every promotion should be loaded.");
+        assertEquals("Coffee and croissant", instanceToTest.getName(1), "The name should be kept.");
+        assertTrue(instanceToTest.isBundle(1), "A bundle should be sold for a fixed price.");
+        assertEquals(1600, instanceToTest.getValue(1), "The bundle price should be in minor units.");
+        assertFalse(instanceToTest.isBundle(0), "A free promotion should not be a bundle.");
+        assertEquals(1, instanceToTest.getValue(0), "One unit should be free.");
+        assertEquals(3, instanceToTest.getRequiredQuantity(0, 0), "Three coffees should be required.");
+        assertEquals(1, instanceToTest.getRequiredQuantity(3, 2), "A quantity should default to one.");
+    }
+
+    @Test
+    void testPromotionsSharingItemsAreInSameComponent() {
+        int coffeeComponent = instanceToTest.getComponentOf(101);
+        assertEquals(coffeeComponent, instanceToTest.getComponentOf(102), "The bundle should connect coffee and croissant.");
+        assertEquals(2, instanceToTest.getPromotionCount(coffeeComponent), "Both coffee promotions should be in the component.");
+        assertNotEquals(coffeeComponent, instanceToTest.getComponentOf(201), "Unrelated promotions should be in different components.");
+        assertEquals(3, instanceToTest.getComponentCount(), "There should be three components.");
+        assertEquals(-1, instanceToTest.getComponentOf(999), "An item without promotions should have no component.");
+    }
+
+    @Test
+    void testRequiredItemIndexPointsToComponentItem() {
+        for (int promotion = 0; promotion < instanceToTest.size(); promotion++) {
+            int component = instanceToTest.getComponentOf(instanceToTest.getRequiredItemID(promotion, 0));
+            for (int requirement = 0; requirement < instanceToTest.getRequiredItemCount(promotion); requirement++) {
+                int index = instanceToTest.getRequiredItemIndex(promotion, requirement);
+                assertEquals(instanceToTest.getRequiredItemID(promotion, requirement), instanceToTest.getItem(component, index),
+                             "The index should point to the required item in the component.");
+            }
+        }
+    }
+
+    @Test
+    void testRepeatedItemIsMerged() throws IOException {
+        PromotionRules rules = load("free;Buy two get one;101+101+101;1\n");
+        assertEquals(1, rules.getRequiredItemCount(0), "A repeated item should be one requirement.");
+        assertEquals(3, rules.getRequiredQuantity(0, 0), "The quantities of a repeated item should be added.");
+    }
+
+    @Test
+    void testInvalidLinesAreRejected() {
+        assertThrows(DatabaseFailureException.class, () -> load("gift;Name;101x1;1\n"), "An unknown kind should be rejected.");
+        assertThrows(DatabaseFailureException.class, () -> load("free;Name;101x2;2\n"), "All units cannot be free.");
+        assertThrows(DatabaseFailureException.class, () -> load("bundle;Name;101x0;1.00\n"), "A quantity must be positive.");
+        assertThrows(DatabaseFailureException.class, () -> load("bundle;Name;101x1\n"), "A missing value should be rejected.");
+    }
+
+    @Test
+    void testLoadDefaultHasNoActivePromotions() {
+        assertEquals(0, PromotionRules.loadDefault().size(), "The shipped promotions should only contain examples.");
+    }
+}
@@ -0,0 +1,279 @@
+package se.kth.iv1350.pos.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.SaleInfoDTO;
+import se.kth.iv1350.pos.model.SaleLineDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StockLevelsTest {
+    private static final long INITIAL_LEVEL = 1_000_000;
+    private static final int THRESHOLD = 10;
+
+    private StockLevels instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        List<ItemDTO> items = List.of(
+            new ItemDTO(101, new Amount(15), 25, "Coffee"),
+            new ItemDTO(102, new Amount(2.5), 12, "Croissant"));
+        instanceToTest = new StockLevels(new HashedItemCatalog(items), INITIAL_LEVEL, THRESHOLD);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+    }
+
+    @Test
+    void testDecreaseSaleDecreasesEveryLine() {
+        instanceToTest.decrease(createSale(createLine(101, 3), createLine(102, 1)));
+        assertEquals(INITIAL_LEVEL - 3, instanceToTest.getLevel(101), "The sold quantity of coffee should be removed.");
+        assertEquals(INITIAL_LEVEL - 1, instanceToTest.getLevel(102), "The sold quantity of croissants should be removed.");
+    }
+
+    @Test
+    void testIncreaseAddsToLevel() {
+        assertEquals(INITIAL_LEVEL + 5, instanceToTest.increase(101, 5), "A delivery should increase the level.");
+    }
+
+    @Test
+    void testUnknownItemThrows() {
+        assertFalse(instanceToTest.isStocked(999), "Item 999 should not be stocked.");
+        assertThrows(IllegalArgumentException.class, () -> instanceToTest.decrease(999, 1),
+            "Decreasing an item that is not stocked should fail.");
+    }
+
+    @Test
+    void testLowStockListenerIsCalledOnceWhenThresholdIsCrossed() {
+        List<Long> reportedLevels = new ArrayList<>();
+        instanceToTest.addLowStockListener((itemID, level, threshold) -> reportedLevels.add(level));
+        instanceToTest.decrease(101, (int) (INITIAL_LEVEL - THRESHOLD));
+        assertTrue(reportedLevels.isEmpty(), "Reaching the threshold should not be reported.");
+        instanceToTest.decrease(101, 2);
+        instanceToTest.decrease(101, 2);
+        assertEquals(List.of((long) THRESHOLD - 2), reportedLevels, "Only the decrease that crossed the threshold should be reported.");
+    }
+
+    @Test
+    void testSnapshotListsItemsBelowThreshold() {
+        instanceToTest.setLowStockThreshold(102, (int) INITIAL_LEVEL);
+        instanceToTest.decrease(102, 1);
+        StockLevels.Snapshot snapshot = instanceToTest.snapshot();
+        assertEquals(List.of(102), snapshot.getItemsBelowThreshold(), "Only the croissant should need reordering.");
+        instanceToTest.decrease(102, 1);
+        assertEquals(INITIAL_LEVEL - 1, snapshot.getLevel(102), "A snapshot should not change after it is taken.");
+    }
+
+    @Test
+    void testConcurrentSalesAreNeverPartlyInSnapshot() throws InterruptedException {
+        int registers = 40;
+        int salesPerRegister = 2_000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger inconsistentSnapshots = new AtomicInteger();
+        SaleInfoDTO sale = createSale(createLine(101, 1), createLine(102, 1));
+        List<Thread> threads = new ArrayList<>();
+        for (int register = 0; register < registers; register++) {
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < salesPerRegister; i++) {
+                    instanceToTest.decrease(sale);
+                }
+            }));
+        }
+        Thread reporter = new Thread(() -> {
+            awaitQuietly(start);
+            while (running.get()) {
+                StockLevels.Snapshot snapshot = instanceToTest.snapshot();
+                if (snapshot.getLevel(101) != snapshot.getLevel(102)) {
+                    inconsistentSnapshots.incrementAndGet();
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        reporter.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        running.set(false);
+        reporter.join();
+
+        long expectedLevel = INITIAL_LEVEL - (long) registers * salesPerRegister;
+        assertEquals(expectedLevel, instanceToTest.getLevel(101), "No decrease should be lost.");
+        assertEquals(expectedLevel, instanceToTest.getLevel(102), "No decrease should be lost.");
+        assertEquals(0, inconsistentSnapshots.get(), "A snapshot should never contain half of a sale.");
+    }
+
+    @Test
+    void testLargeBasketsAreNeverPartlyInSnapshot() throws InterruptedException {
+        int itemCount = 60;
+        List<ItemDTO> items = new ArrayList<>();
+        SaleLineDTO[] basket = new SaleLineDTO[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new ItemDTO(1000 + i, new Amount(1), 25, "Item " + i));
+            basket[i] = createLine(1000 + i, 1);
+        }
+        StockLevels levels = new StockLevels(new HashedItemCatalog(items), INITIAL_LEVEL, THRESHOLD);
+        SaleInfoDTO sale = createSale(basket);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger inconsistentSnapshots = new AtomicInteger();
+        List<Thread> registers = new ArrayList<>();
+        for (int register = 0; register < 8; register++) {
+            registers.add(new Thread(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    levels.decrease(sale);
+                }
+            }));
+        }
+        Thread reporter = new Thread(() -> {
+            while (running.get()) {
+                StockLevels.Snapshot snapshot = levels.snapshot();
+                for (int i = 1; i < itemCount; i++) {
+                    if (snapshot.getLevel(1000 + i) != snapshot.getLevel(1000)) {
+                        inconsistentSnapshots.incrementAndGet();
+                        break;
+                    }
+                }
+            }
+        });
+        registers.forEach(Thread::start);
+        reporter.start();
+        for (Thread register : registers) {
+            register.join();
+        }
+        running.set(false);
+        reporter.join();
+
+        assertEquals(INITIAL_LEVEL - 8 * 2_000, levels.getLevel(1059), "No decrease should be lost.");
+        assertEquals(0, inconsistentSnapshots.get(), "A snapshot should never contain part of a basket.");
+    }
+
+    @Test
+    void testSalesLockingItemsInOppositeOrderDoNotDeadlock() throws InterruptedException {
+        int salesPerRegister = 20_000;
+        SaleInfoDTO forward = createSale(createLine(101, 1), createLine(102, 1));
+        SaleInfoDTO backward = createSale(createLine(102, 1), createLine(101, 1));
+        Thread first = new Thread(() -> {
+            for (int i = 0; i < salesPerRegister; i++) {
+                instanceToTest.decrease(forward);
+            }
+        });
+        Thread second = new Thread(() -> {
+            for (int i = 0; i < salesPerRegister; i++) {
+                instanceToTest.decrease(backward);
+            }
+        });
+        first.start();
+        second.start();
+        first.join(10_000);
+        second.join(10_000);
+        assertFalse(first.isAlive() || second.isAlive(), "Sales with the same items in another order should not deadlock.");
+        assertEquals(INITIAL_LEVEL - 2L * salesPerRegister, instanceToTest.getLevel(101), "No decrease should be lost.");
+    }
+
+    @Test
+    void testUnstockedItemIsReportedOnce() {
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        try {
+            SaleInfoDTO sale = createSale(createLine(999, 1), createLine(101, 1));
+            instanceToTest.decrease(sale);
+            instanceToTest.decrease(sale);
+        } finally {
+            System.setErr(originalErr);
+        }
+        String errors = errContent.toString();
+        assertTrue(errors.contains("Item 999"), "The unstocked item should be reported.");
+        assertEquals(errors.indexOf("Item 999"), errors.lastIndexOf("Item 999"), "The unstocked item should be reported only once.");
+        assertEquals(INITIAL_LEVEL - 2, instanceToTest.getLevel(101), "The stocked item should still be decreased.");
+    }
+
+    @Test
+    void testAddItemsKeepsExistingLevels() {
+        instanceToTest.decrease(101, 7);
+        int added = instanceToTest.addItems(new HashedItemCatalog(List.of(
+            new ItemDTO(101, new Amount(15), 25, "Coffee"),
+            new ItemDTO(103, new Amount(4), 12, "Bun"))));
+        assertEquals(1, added, "Only the new item should be added.");
+        assertEquals(INITIAL_LEVEL - 7, instanceToTest.getLevel(101), "An existing item should keep its level.");
+        assertEquals(INITIAL_LEVEL, instanceToTest.getLevel(103), "A new item should start with the initial level.");
+        assertEquals(3, instanceToTest.snapshot().size(), "The snapshot should contain the new item.");
+    }
+
+    @Test
+    void testUpdatesContinueWhileAddedCatalogIsRead() throws InterruptedException {
+        CountDownLatch catalogBeingRead = new CountDownLatch(1);
+        CountDownLatch updateDone = new CountDownLatch(1);
+        ItemCatalog newCatalog = new HashedItemCatalog(List.of(new ItemDTO(103, new Amount(4), 12, "Bun")));
+        ItemCatalog slowCatalog = new ItemCatalog() {
+            @Override
+            public ItemDTO findItem(int itemID) {
+                return newCatalog.findItem(itemID);
+            }
+
+            @Override
+            public int size() {
+                return newCatalog.size();
+            }
+
+            @Override
+            public void forEachItem(Consumer<ItemDTO> consumer) {
+                catalogBeingRead.countDown();
+                awaitQuietly(updateDone);
+                newCatalog.forEachItem(consumer);
+            }
+        };
+        Thread reload = new Thread(() -> instanceToTest.addItems(slowCatalog));
+        reload.start();
+        catalogBeingRead.await();
+        Thread register = new Thread(() -> {
+            instanceToTest.decrease(createSale(createLine(101, 3)));
+            updateDone.countDown();
+        });
+        register.start();
+        register.join(5_000);
+        assertFalse(register.isAlive(), "A sale should not wait while the new catalog is read.");
+        reload.join();
+        assertEquals(INITIAL_LEVEL - 3, instanceToTest.getLevel(101), "The decrease made during the reload should be kept.");
+        assertEquals(INITIAL_LEVEL, instanceToTest.getLevel(103), "The new item should be added.");
+    }
+
+    @Test
+    void testInventorySystemUpdatesStockLevels() {
+        InventorySystem inventory = new InventorySystem();
+        long before = inventory.getStockLevels().getLevel(101);
+        inventory.updateInventory(createSale(createLine(101, 2)));
+        assertEquals(before - 2, inventory.getStockLevels().getLevel(101), "A completed sale should decrease the stock.");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private SaleInfoDTO createSale(SaleLineDTO... lines) {
+        return new SaleInfoDTO(new Amount(0), List.of(lines), new Amount(0));
+    }
+
+    private SaleLineDTO createLine(int itemID, int quantity) {
+        return new SaleLineDTO(itemID, "Item " + itemID, quantity, new Amount(1), 25, new Amount(quantity));
+    }
+}
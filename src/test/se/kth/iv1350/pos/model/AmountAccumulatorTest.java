@@ -0,0 +1,53 @@
+package se.kth.iv1350.pos.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AmountAccumulatorTest {
+    private AmountAccumulator instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        instanceToTest = new AmountAccumulator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+    }
+
+    @Test
+    void testNewAccumulatorIsZero() {
+        assertEquals(new Amount(0), instanceToTest.toAmount(), "A new accumulator should be zero.");
+    }
+
+    @Test
+    void testAddMultiplied() {
+        instanceToTest.add(new Amount(2.50));
+        instanceToTest.addMultiplied(new Amount(15.00), 2);
+        assertEquals(new Amount(32.50), instanceToTest.toAmount(), "2.50 plus 2 x 15.00 should be 32.50.");
+    }
+
+    @Test
+    void testAddPercentageMultipliedRoundsPerUnit() {
+        instanceToTest.addPercentageMultiplied(new Amount(2.50), 12, 2);
+        assertEquals(new Amount(0.60), instanceToTest.toAmount(), "12% of 2.50 for 2 units should be 0.60.");
+    }
+
+    @Test
+    void testSubtractPercentage() {
+        instanceToTest.add(new Amount(30.00));
+        instanceToTest.subtractPercentage(10);
+        assertEquals(new Amount(27.00), instanceToTest.toAmount(), "Subtracting 10% from 30.00 should give 27.00.");
+    }
+
+    @Test
+    void testToAmountIsSnapshot() {
+        instanceToTest.add(new Amount(10.00));
+        Amount snapshot = instanceToTest.toAmount();
+        instanceToTest.add(new Amount(5.00));
+        assertEquals(new Amount(10.00), snapshot, "A snapshot should not change when the accumulator changes.");
+    }
+}
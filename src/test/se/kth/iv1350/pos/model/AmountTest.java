@@ -69,4 +69,34 @@ public class AmountTest {
         Object other = new Object();
         assertFalse(amount1.equals(other), "Amount should not be equal to an object of a different class.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRepeatedPlusHasNoRoundingDrift() {
+        Amount result = new Amount(0);
+        for (int i = 0; i < 1000; i++) {
+            result = result.plus(new Amount(0.10));
+        }
+        assertEquals(new Amount(100.00), result, "Adding 0.10 a thousand times should be exactly 100.00.");
+    }
+
+    @Test
+    void testOfMinorUnits() {
+        Amount result = Amount.ofMinorUnits(1570);
+        assertEquals(new Amount(15.70), result, "1570 minor units should equal 15.70.");
+        assertEquals(1570, result.getMinorUnits(), "getMinorUnits should return the exact value.");
+    }
+
+    @Test
+    void testPercentageRoundsHalfUp() {
+        Amount amount = new Amount(2.50);
+        Amount expected = new Amount(0.30);
+        Amount result = amount.percentage(12);
+        assertEquals(expected, result, "12% of 2.50 should be 0.30.");
+    }
+
+    @Test
+    void testToStringNegativeAmount() {
+        Amount amount = new Amount(-5.05);
+        assertEquals("-5.05", amount.toString(), "Negative amounts should keep their sign and two decimals.");
+    }
+}
@@ -0,0 +1,153 @@
+package se.kth.iv1350.pos.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.kth.iv1350.pos.integration.PromotionRules;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PromotionEngineTest {
+    private static final Amount COFFEE_PRICE = new Amount(15.00);
+    private static final Amount CROISSANT_PRICE = new Amount(2.50);
+
+    @TempDir
+    Path tempDir;
+
+    private PromotionRules rules;
+    private PromotionEngine instanceToTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        rules = load("free;3 for 2 on coffee;101x3;1\n"
+                     + "bundle;Coffee and croissant;101x1+102x1;16.00\n"
+                     + "free;Cheapest of three free;301+302+303;1\n");
+        instanceToTest = new PromotionEngine(rules);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+        rules = null;
+    }
+
+    private PromotionRules load(String promotions) throws IOException {
+        Path file = tempDir.resolve("promotions-" + System.nanoTime() + ".txt");
+        Files.writeString(file, promotions, StandardCharsets.UTF_8);
+        return PromotionRules.load(file);
+    }
+
+    @Test
+    void testThreeForTwo() {
+        instanceToTest.itemAdded(101, 2, COFFEE_PRICE);
+        assertEquals(0, instanceToTest.getSavings(), "Two coffees should not give a promotion.");
+        assertEquals(1500, instanceToTest.itemAdded(101, 1, COFFEE_PRICE), "The third coffee should be free.");
+        assertEquals(1, instanceToTest.getApplicationCount(0), "3 for 2 should be applied once.");
+    }
+
+    @Test
+    void testBundle() {
+        instanceToTest.itemAdded(101, 1, COFFEE_PRICE);
+        assertEquals(150, instanceToTest.itemAdded(102, 1, CROISSANT_PRICE), "The bundle should save 17.50 - 16.00.");
+    }
+
+    @Test
+    void testOverlappingPromotionsGiveLowestPrice() {
+        instanceToTest.itemAdded(101, 4, COFFEE_PRICE);
+        instanceToTest.itemAdded(102, 1, CROISSANT_PRICE);
+        assertEquals(1500 + 150, instanceToTest.getSavings(), "3 for 2 and the bundle should both be applied.");
+
+        instanceToTest.itemAdded(102, 2, CROISSANT_PRICE);
+        assertEquals(1500 + 150, instanceToTest.getSavings(), "Three bundles save less than 3 for 2 and one bundle.");
+        assertEquals(1, instanceToTest.getApplicationCount(1), "The bundle should be applied once.");
+    }
+
+    @Test
+    void testFreeUnitHasNoVAT() {
+        instanceToTest.itemAdded(101, 3, COFFEE_PRICE, 25);
+        assertEquals(375, instanceToTest.getSavingsVAT(), "The VAT of the free coffee should be saved too.");
+    }
+
+    @Test
+    void testBundleSavingsVATIsSplitByTaxRate() {
+        instanceToTest.itemAdded(101, 1, COFFEE_PRICE, 25);
+        instanceToTest.itemAdded(102, 1, CROISSANT_PRICE, 12);
+        assertEquals(32 + 3, instanceToTest.getSavingsVAT(),
+                     "1.29 of the saving should be taxed at 25% and the 0.21 on the croissant at 12%.");
+    }
+
+    @Test
+    void testCheapestUnitIsFree() {
+        instanceToTest.itemAdded(301, 1, new Amount(10.00));
+        instanceToTest.itemAdded(302, 1, new Amount(4.00));
+        assertEquals(400, instanceToTest.itemAdded(303, 1, new Amount(7.00)), "The cheapest of the three items should be free.");
+    }
+
+    @Test
+    void testUnrelatedItemDoesNotChangeSavings() {
+        instanceToTest.itemAdded(101, 3, COFFEE_PRICE);
+        assertEquals(1500, instanceToTest.itemAdded(999, 5, new Amount(1.00)), "An item without promotions should not change the savings.");
+    }
+
+    @Test
+    void testBundlePricedAboveItemsIsNotApplied() throws IOException {
+        PromotionEngine engine = new PromotionEngine(load("bundle;Expensive;101x1+102x1;20.00\n"));
+        engine.itemAdded(101, 1, COFFEE_PRICE);
+        assertEquals(0, engine.itemAdded(102, 1, CROISSANT_PRICE), "A bundle that costs more than its items should not be applied.");
+    }
+
+    @Test
+    void testLargeOverlappingBasketStaysBelowOneMillisecondPerScan() throws IOException {
+        StringBuilder promotions = new StringBuilder();
+        Random random = new Random(7);
+        for (int promotion = 0; promotion < 60; promotion++) {
+            int first = 1000 + random.nextInt(40);
+            int second = 1000 + random.nextInt(40);
+            promotions.append("bundle;P").append(promotion).append(';')
+                      .append(first).append("x2+").append(second).append("x1;")
+                      .append(10 + random.nextInt(20)).append(".00\n");
+        }
+        PromotionRules overlapping = load(promotions.toString());
+        for (int warmUp = 0; warmUp < 20; warmUp++) {
+            scanBasket(new PromotionEngine(overlapping), new Random(warmUp));
+        }
+
+        // The best of a few baskets is used, so a single garbage collection pause does not fail the test
+        long bestWorstNanos = Long.MAX_VALUE;
+        for (int basket = 0; basket < 3; basket++) {
+            PromotionEngine engine = new PromotionEngine(overlapping);
+            bestWorstNanos = Math.min(bestWorstNanos, scanBasket(engine, new Random(100 + basket)));
+            assertTrue(engine.getSavings() > 0, "Some bundles should be applied.");
+        }
+        assertTrue(bestWorstNanos < 1_000_000, "The slowest scan took " + bestWorstNanos / 1_000 + " µs, it should be below 1 ms.");
+    }
+
+    // Scans 200 lines and returns the time of the slowest scan
+    private static long scanBasket(PromotionEngine engine, Random random) {
+        long worstNanos = 0;
+        for (int line = 0; line < 200; line++) {
+            int itemID = 1000 + random.nextInt(40);
+            int quantity = 1 + random.nextInt(3);
+            Amount price = new Amount(5 + random.nextInt(10));
+            long started = System.nanoTime();
+            engine.itemAdded(itemID, quantity, price);
+            worstNanos = Math.max(worstNanos, System.nanoTime() - started);
+        }
+        return worstNanos;
+    }
+
+    @Test
+    void testExhaustedBudgetKeepsGreedySolution() {
+        PromotionEngine engine = new PromotionEngine(rules, 1);
+        engine.itemAdded(101, 3, COFFEE_PRICE);
+        assertFalse(engine.isLastSearchComplete(), "A budget of one node should run out.");
+        assertEquals(1500, engine.getSavings(), "The first path should apply the best promotion as often as possible.");
+    }
+}
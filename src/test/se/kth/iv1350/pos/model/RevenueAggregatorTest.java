@@ -0,0 +1,126 @@
+package se.kth.iv1350.pos.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevenueAggregatorTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private AtomicLong clock;
+    private RevenueAggregator instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(100 * DAY);
+        instanceToTest = new RevenueAggregator(clock::get, ZoneOffset.UTC);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+        clock = null;
+    }
+
+    @Test
+    void testTotalAndCount() {
+        instanceToTest.newSaleWasPaid(new Amount(10.00));
+        instanceToTest.newSaleWasPaid(new Amount(2.50));
+        assertEquals(new Amount(12.50), instanceToTest.getTotalRevenue(), "The total should be the sum of all sales.");
+        assertEquals(2, instanceToTest.getSaleCount(), "Every sale should be counted.");
+    }
+
+    @Test
+    void testLastMinutesOnlyIncludeRecentSales() {
+        instanceToTest.newSaleWasPaid(new Amount(10.00));
+        clock.addAndGet(5 * MINUTE);
+        instanceToTest.newSaleWasPaid(new Amount(1.00));
+
+        assertEquals(new Amount(1.00), instanceToTest.getRevenueInLastMinutes(1), "Only the current minute should be included.");
+        assertEquals(new Amount(1.00), instanceToTest.getRevenueInLastMinutes(5), "The sale six minutes ago should not be included.");
+        assertEquals(new Amount(11.00), instanceToTest.getRevenueInLastMinutes(6), "Both sales should be within six minutes.");
+    }
+
+    @Test
+    void testOldMinuteBucketsAreReused() {
+        instanceToTest.newSaleWasPaid(new Amount(10.00));
+        clock.addAndGet(RevenueAggregator.MINUTE_BUCKETS * MINUTE);
+        instanceToTest.newSaleWasPaid(new Amount(3.00));
+
+        assertEquals(new Amount(3.00), instanceToTest.getRevenueInLastMinutes(RevenueAggregator.MINUTE_BUCKETS),
+                     "A sale that rolled out of the ring should not be counted.");
+        assertEquals(new Amount(13.00), instanceToTest.getRevenueInLastHours(2), "The hours should still include both sales.");
+    }
+
+    @Test
+    void testHoursAndDays() {
+        instanceToTest.newSaleWasPaid(new Amount(7.00));
+        clock.addAndGet(3 * HOUR);
+        instanceToTest.newSaleWasPaid(new Amount(2.00));
+        clock.addAndGet(DAY);
+        instanceToTest.newSaleWasPaid(new Amount(1.00));
+
+        assertEquals(new Amount(1.00), instanceToTest.getRevenueInLastHours(20), "Only the latest sale is within the last 20 hours.");
+        assertEquals(new Amount(1.00), instanceToTest.getRevenueInLastDays(1), "Only one sale was paid today.");
+        assertEquals(new Amount(10.00), instanceToTest.getRevenueInLastDays(2), "Yesterday's sales should be included.");
+    }
+
+    @Test
+    void testDaysFollowTimeZone() {
+        RevenueAggregator stockholm = new RevenueAggregator(clock::get, ZoneOffset.ofHours(2));
+        clock.set(100 * DAY - 3 * HOUR);
+        stockholm.newSaleWasPaid(new Amount(5.00));
+        clock.set(100 * DAY - HOUR);
+        assertEquals(new Amount(0), stockholm.getRevenueInLastDays(1), "23:00 local time should start a new day at 00:00 UTC+2.");
+        assertEquals(new Amount(5.00), stockholm.getRevenueInLastDays(2), "The sale should be on the previous local day.");
+    }
+
+    @Test
+    void testInvalidRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> instanceToTest.getRevenueInLastMinutes(0), "Zero minutes should be rejected.");
+        assertThrows(IllegalArgumentException.class, () -> instanceToTest.getRevenueInLastMinutes(RevenueAggregator.MINUTE_BUCKETS + 1),
+                     "More minutes than buckets should be rejected.");
+    }
+
+    @Test
+    void testConcurrentLanesAreAllCounted() throws InterruptedException {
+        RevenueAggregator shared = new RevenueAggregator();
+        int lanes = 40;
+        int salesPerLane = 2_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int sale = 0; sale < salesPerLane; sale++) {
+                    shared.newSaleWasPaid(Amount.ofMinorUnits(1));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long expected = (long) lanes * salesPerLane;
+        assertEquals(expected, shared.getSaleCount(), "Every sale from every lane should be counted.");
+        assertEquals(Amount.ofMinorUnits(expected), shared.getTotalRevenue(), "No revenue should be lost.");
+        assertEquals(Amount.ofMinorUnits(expected), shared.getRevenueInLastMinutes(2), "The sales should be in the latest minutes.");
+    }
+}
@@ -0,0 +1,188 @@
+package se.kth.iv1350.pos.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1350.pos.integration.ItemDTO;
+import se.kth.iv1350.pos.integration.PromotionRules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SaleEventBusTest {
+    private SaleEventBus instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        instanceToTest = new SaleEventBus(8, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest.shutdown();
+        instanceToTest = null;
+    }
+
+    @Test
+    void testObserversAreNotifiedInOrderOnOtherThread() {
+        List<Amount> received = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        instanceToTest.subscribe(amount -> {
+            received.add(amount);
+            threads.add(Thread.currentThread());
+        });
+        for (int sale = 1; sale <= 20; sale++) {
+            instanceToTest.publish(new Amount(sale));
+        }
+        instanceToTest.shutdown();
+
+        assertEquals(20, received.size(), "Every published sale should be delivered before shutdown returns.");
+        for (int sale = 1; sale <= 20; sale++) {
+            assertEquals(new Amount(sale), received.get(sale - 1), "Sales should be delivered in publishing order.");
+        }
+        assertNotSame(Thread.currentThread(), threads.get(0), "The observer should be notified on its own thread.");
+    }
+
+    @Test
+    void testSlowObserverDoesNotDelayPublishingWithinCapacity() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        SaleEventBus.Subscription subscription = instanceToTest.subscribe(amount -> awaitQuietly(release));
+        for (int sale = 0; sale < 8; sale++) {
+            instanceToTest.publish(new Amount(1));
+        }
+        assertTrue(subscription.getLag() > 0, "The blocked observer should be behind.");
+        release.countDown();
+        instanceToTest.shutdown();
+        assertEquals(0, subscription.getLag(), "The observer should have caught up after shutdown.");
+        assertEquals(8, subscription.getNotifiedCount(), "Every sale should be delivered.");
+        assertTrue(subscription.getBatchCount() < subscription.getNotifiedCount(), "Sales that piled up should be handled in batches.");
+        assertTrue(subscription.getMaxLag() > 1, "The largest lag should be recorded.");
+    }
+
+    @Test
+    void testFullRingWaitsForSlowestObserver() {
+        List<Amount> received = Collections.synchronizedList(new ArrayList<>());
+        instanceToTest.subscribe(amount -> {
+            sleepQuietly(1);
+            received.add(amount);
+        });
+        instanceToTest.subscribe(amount -> { });
+        for (int sale = 0; sale < 50; sale++) {
+            instanceToTest.publish(new Amount(sale));
+        }
+        instanceToTest.shutdown();
+        assertEquals(50, received.size(), "No sale should be overwritten before the slow observer has seen it.");
+        assertEquals(new Amount(49), received.get(49), "The last sale should be delivered last.");
+    }
+
+    @Test
+    void testBlockedPublishIsCounted() {
+        CountDownLatch release = new CountDownLatch(1);
+        instanceToTest.subscribe(amount -> awaitQuietly(release));
+        for (int sale = 0; sale < 8; sale++) {
+            instanceToTest.publish(new Amount(1));
+        }
+        assertEquals(0, instanceToTest.getBlockedPublishCount(), "A publish should not wait while the ring has room.");
+        Thread releaser = new Thread(() -> {
+            sleepQuietly(20);
+            release.countDown();
+        });
+        releaser.start();
+        instanceToTest.publish(new Amount(1));
+        assertEquals(1, instanceToTest.getBlockedPublishCount(), "A publish to a full ring should be counted.");
+    }
+
+    @Test
+    void testCancelledObserverIsNotNotifiedAndDoesNotBlockPublishing() {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Amount> received = Collections.synchronizedList(new ArrayList<>());
+        SaleEventBus.Subscription subscription = instanceToTest.subscribe(amount -> {
+            awaitQuietly(release);
+            received.add(amount);
+        });
+        instanceToTest.publish(new Amount(1));
+        Thread releaser = new Thread(() -> {
+            sleepQuietly(20);
+            release.countDown();
+        });
+        releaser.start();
+        subscription.cancel();
+        int receivedAtCancel = received.size();
+        for (int sale = 0; sale < 50; sale++) {
+            instanceToTest.publish(new Amount(2));
+        }
+        instanceToTest.shutdown();
+
+        assertTrue(subscription.isCancelled(), "The subscription should be cancelled.");
+        assertEquals(receivedAtCancel, received.size(), "A cancelled observer should not be notified again.");
+        assertEquals(0, instanceToTest.getBlockedPublishCount(), "Publishing should not wait for a cancelled observer.");
+    }
+
+    @Test
+    void testIdleConsumerIsParked() throws InterruptedException {
+        List<Thread> consumers = Collections.synchronizedList(new ArrayList<>());
+        instanceToTest.subscribe(amount -> consumers.add(Thread.currentThread()));
+        instanceToTest.publish(new Amount(1));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (consumers.isEmpty() || consumers.get(0).getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "An idle consumer should park until the next event.");
+            Thread.sleep(1);
+        }
+        instanceToTest.publish(new Amount(2));
+        instanceToTest.shutdown();
+        assertEquals(2, consumers.size(), "A parked consumer should be woken by the next event.");
+    }
+
+    @Test
+    void testFailingObserverIsCountedAndDoesNotStopDelivery() {
+        SaleEventBus.Subscription subscription = instanceToTest.subscribe(amount -> {
+            if (amount.getMinorUnits() == 100) {
+                throw new IllegalStateException("Test failure");
+            }
+        });
+        instanceToTest.publish(new Amount(1));
+        instanceToTest.publish(new Amount(2));
+        instanceToTest.shutdown();
+        assertEquals(1, subscription.getFailedCount(), "The failing notification should be counted.");
+        assertEquals(1, subscription.getNotifiedCount(), "The next sale should still be delivered.");
+    }
+
+    @Test
+    void testPublishAfterShutdownThrows() {
+        instanceToTest.shutdown();
+        assertThrows(IllegalStateException.class, () -> instanceToTest.publish(new Amount(1)), "A stopped bus should not accept sales.");
+    }
+
+    @Test
+    void testPaidSaleIsPublished() {
+        List<Amount> received = Collections.synchronizedList(new ArrayList<>());
+        instanceToTest.subscribe(received::add);
+        Sale sale = new Sale(PromotionRules.NONE, instanceToTest);
+        sale.addItem(new ItemDTO(101, new Amount(15.0), 25, "Coffee"), 1);
+        sale.calculateAndGetFinalTotal();
+        sale.processPaymentAndGetReceiptDetails(new Amount(20.0));
+        instanceToTest.shutdown();
+        assertEquals(List.of(new Amount(18.75)), received, "The paid total should be published.");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
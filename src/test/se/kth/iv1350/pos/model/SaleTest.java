@@ -3,11 +3,22 @@ package se.kth.iv1350.pos.model;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import se.kth.iv1350.pos.integration.DiscountInfoDTO; 
+import se.kth.iv1350.pos.integration.DiscountInfoDTO;
+import se.kth.iv1350.pos.integration.DiscountType;
 import se.kth.iv1350.pos.integration.ItemDTO;
+import se.kth.iv1350.pos.integration.PromotionRules;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class SaleTest {
+    @TempDir
+    Path tempDir;
+
     private Sale instanceToTest;
     private ItemDTO coffeeDTO;
     private ItemDTO croissantDTO;
@@ -47,20 +58,22 @@ public class SaleTest {
     @Test
     void testApplyPercentageDiscount() {
         instanceToTest.addItem(coffeeDTO, 2);
-        DiscountInfoDTO percentageDiscount = new DiscountInfoDTO(new Amount(0), 10, "Percentage"); // 10% off
+        DiscountInfoDTO percentageDiscount = new DiscountInfoDTO(new Amount(0), 10, DiscountType.PERCENTAGE); // 10% off
 
         instanceToTest.applyDiscount(percentageDiscount);
 
         Amount expectedTotalAfterDiscount = new Amount(30.0 * 0.9);
         Amount actualTotalAfterDiscount = instanceToTest.getSaleInfoForDiscount().getRunningTotal();
         assertEquals(expectedTotalAfterDiscount, actualTotalAfterDiscount, "Applying 10% discount to 30.0 should result in 27.0.");
+        assertEquals(new Amount(30.0), instanceToTest.getSaleInfoForDiscount().getTotalBeforeDiscount(),
+                     "The total the discount is calculated from should not include the discount.");
     }
 
     @Test
     void testApplyAmountDiscount() {
         instanceToTest.addItem(coffeeDTO, 2); 
         Amount discountValue = new Amount(5.0);
-        DiscountInfoDTO amountDiscount = new DiscountInfoDTO(discountValue, 0, "Amount"); // 5.0 off
+        DiscountInfoDTO amountDiscount = new DiscountInfoDTO(discountValue, 0, DiscountType.AMOUNT); // 5.0 off
 
         instanceToTest.applyDiscount(amountDiscount);
 
@@ -70,6 +83,45 @@ public class SaleTest {
     }
 
 
+    @Test
+    void testDiscountAppliesToItemsAddedLater() {
+        instanceToTest.addItem(coffeeDTO, 1);
+        instanceToTest.applyDiscount(new DiscountInfoDTO(new Amount(0), 10, DiscountType.PERCENTAGE));
+        instanceToTest.addItem(coffeeDTO, 1);
+        assertEquals(new Amount(27.0), instanceToTest.getSaleInfoForDiscount().getRunningTotal(), "The discount should also cover the item added after it.");
+    }
+
+    @Test
+    void testRepeatedDiscountDoesNotStack() {
+        instanceToTest.addItem(coffeeDTO, 2);
+        DiscountInfoDTO percentageDiscount = new DiscountInfoDTO(new Amount(0), 10, DiscountType.PERCENTAGE);
+        instanceToTest.applyDiscount(percentageDiscount);
+        instanceToTest.applyDiscount(percentageDiscount);
+        assertEquals(new Amount(27.0), instanceToTest.getSaleInfoForDiscount().getRunningTotal(), "Applying the same discount twice should not discount twice.");
+    }
+
+    @Test
+    void testNewDiscountReplacesOldDiscount() {
+        instanceToTest.addItem(coffeeDTO, 2);
+        instanceToTest.applyDiscount(new DiscountInfoDTO(new Amount(0), 10, DiscountType.PERCENTAGE));
+        instanceToTest.applyDiscount(new DiscountInfoDTO(new Amount(5.0), 0, DiscountType.AMOUNT));
+        assertEquals(new Amount(25.0), instanceToTest.getSaleInfoForDiscount().getRunningTotal(), "Only the latest discount should be applied.");
+    }
+
+    @Test
+    void testAmountDiscountNeverMakesTotalNegative() {
+        instanceToTest.addItem(croissantDTO, 1);
+        instanceToTest.applyDiscount(new DiscountInfoDTO(new Amount(50.0), 0, DiscountType.AMOUNT));
+        assertEquals(new Amount(0), instanceToTest.getSaleInfoForDiscount().getRunningTotal(), "The total before tax should not be below zero.");
+    }
+
+    @Test
+    void testDiscountRequestRemembersCustomer() {
+        instanceToTest.applyDiscount(1234, null);
+        assertTrue(instanceToTest.isDiscountRequestedBy(1234), "The customer should be remembered also without a discount.");
+        assertFalse(instanceToTest.isDiscountRequestedBy(5678), "Another customer should not be reported.");
+    }
+
     @Test
     void testApplyNullDiscount() {
         instanceToTest.addItem(coffeeDTO, 2); 
@@ -122,7 +174,7 @@ public class SaleTest {
     @Test
     void testGetTotalWithTaxWithPercentageDiscount() {
         instanceToTest.addItem(coffeeDTO, 2);
-        DiscountInfoDTO percentageDiscount = new DiscountInfoDTO(new Amount(0), 10, "Percentage"); // 10% off
+        DiscountInfoDTO percentageDiscount = new DiscountInfoDTO(new Amount(0), 10, DiscountType.PERCENTAGE); // 10% off
         instanceToTest.applyDiscount(percentageDiscount); 
 
         Amount expectedTotal = new Amount(27.0 + 7.50); 
@@ -137,7 +189,7 @@ public class SaleTest {
     void testGetTotalWithTaxWithAmountDiscount() {
         instanceToTest.addItem(coffeeDTO, 2); 
         Amount discountValue = new Amount(5.0);
-        DiscountInfoDTO amountDiscount = new DiscountInfoDTO(discountValue, 0, "Amount"); // 5.0 off
+        DiscountInfoDTO amountDiscount = new DiscountInfoDTO(discountValue, 0, DiscountType.AMOUNT); // 5.0 off
         instanceToTest.applyDiscount(amountDiscount); 
 
         Amount expectedTotal = new Amount(25.0 + 7.50); 
@@ -148,6 +200,21 @@ public class SaleTest {
         assertEquals(expectedTotal, actualTotal, "Total with tax should be discounted running total + original VAT after amount discount.");
     }
 
+    @Test
+    void testPromotionsAreAppliedBeforeDiscount() throws IOException {
+        Path promotionsFile = tempDir.resolve("promotions.txt");
+        Files.writeString(promotionsFile, "free;3 for 2 on coffee;101x3;1\n");
+        Sale sale = new Sale(PromotionRules.load(promotionsFile));
+        sale.addItem(coffeeDTO, 3);
+        assertEquals(new Amount(15.0), sale.getPromotionSavings(), "The third coffee should be free.");
+        assertEquals(new Amount(30.0), sale.getSaleInfoForDiscount().getRunningTotal(), "The running total should include the promotion.");
+
+        sale.applyDiscount(new DiscountInfoDTO(new Amount(0), 10, DiscountType.PERCENTAGE));
+        assertEquals(new Amount(7.50), sale.getSaleInfoForDiscount().getTotalVAT(), "No VAT should be paid on the free coffee.");
+        assertEquals(new Amount(27.0 + 7.50), sale.calculateAndGetFinalTotal(),
+                     "The discount should apply to the promoted total, VAT is only reduced by the promotion.");
+    }
+
     // Tests for Payment Processing
 
     @Test
@@ -215,6 +282,51 @@ public class SaleTest {
         assertEquals(new Amount(15.0), saleInfo.getRunningTotal(), "DTO running total should match sale state.");
     }
 
+    @Test
+    void testSaleInfoContainsTypedLines() {
+        instanceToTest.addItem(croissantDTO, 2);
+        SaleLineDTO line = instanceToTest.getSaleInfoForInventory().getItems().get(0);
+        assertEquals(102, line.getItemID(), "Line should contain the item ID.");
+        assertEquals("Croissant", line.getDescription(), "Line should contain the item description.");
+        assertEquals(2, line.getQuantity(), "Line should contain the quantity.");
+        assertEquals(new Amount(2.5), line.getUnitPrice(), "Line should contain the unit price.");
+        assertEquals(12, line.getTaxRate(), "Line should contain the tax rate.");
+        assertEquals(new Amount(5.0), line.getLineTotal(), "Line total should be unit price times quantity.");
+    }
+
+    @Test
+    void testRepeatedScansAreMergedIntoOneLine() {
+        instanceToTest.addItem(coffeeDTO, 1);
+        instanceToTest.addItem(croissantDTO, 1);
+        instanceToTest.addItem(coffeeDTO, 2);
+        SaleInfoDTO saleInfo = instanceToTest.getSaleInfoForInventory();
+        assertEquals(2, saleInfo.getItems().size(), "Repeated scans of the same item should not add new lines.");
+        assertEquals(3, saleInfo.getItems().get(0).getQuantity(), "The quantity of the merged line should be the sum of the scans.");
+        assertEquals(new Amount(15.0 * 3 + 2.5), saleInfo.getRunningTotal(), "The running total should include every scan.");
+    }
+
+    @Test
+    void testRepeatedScanWithChangedPriceGetsNewLine() {
+        instanceToTest.addItem(coffeeDTO, 1);
+        instanceToTest.addItem(new ItemDTO(101, new Amount(12.0), 25, "Coffee"), 1);
+        SaleInfoDTO saleInfo = instanceToTest.getSaleInfoForInventory();
+        assertEquals(2, saleInfo.getItems().size(), "A scan with a different price should not be merged.");
+    }
+
+    @Test
+    void testSaleInfoIsSharedUntilSaleChanges() {
+        instanceToTest.addItem(coffeeDTO, 1);
+        SaleInfoDTO forAccounting = instanceToTest.getSaleInfoForAccounting();
+        SaleInfoDTO forInventory = instanceToTest.getSaleInfoForInventory();
+        assertSame(forAccounting, forInventory, "An unchanged sale should return the same snapshot.");
+
+        instanceToTest.addItem(croissantDTO, 1);
+        SaleInfoDTO afterChange = instanceToTest.getSaleInfoForInventory();
+        assertNotSame(forInventory, afterChange, "A changed sale should return a new snapshot.");
+        assertSame(forInventory.getItems().get(0), afterChange.getItems().get(0), "Unchanged lines should be shared between snapshots.");
+        assertEquals(1, forInventory.getItems().size(), "An old snapshot should not change when the sale changes.");
+    }
+
     // Observer pattern tests
     @Test
     void testAddSaleObserver() {
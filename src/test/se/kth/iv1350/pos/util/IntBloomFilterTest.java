@@ -0,0 +1,56 @@
+package se.kth.iv1350.pos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntBloomFilterTest {
+    private static final int VALUE_COUNT = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private IntBloomFilter instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        instanceToTest = new IntBloomFilter(VALUE_COUNT, FALSE_POSITIVE_RATE);
+        for (int value = 0; value < VALUE_COUNT; value++) {
+            instanceToTest.add(value * 2);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+    }
+
+    @Test
+    void testAddedValuesAreAlwaysFound() {
+        for (int value = 0; value < VALUE_COUNT; value++) {
+            assertTrue(instanceToTest.mightContain(value * 2), "An added value must never be reported as missing.");
+        }
+    }
+
+    @Test
+    void testFalsePositiveRateIsNearConfiguredRate() {
+        int falsePositives = 0;
+        for (int value = 0; value < VALUE_COUNT; value++) {
+            if (instanceToTest.mightContain(value * 2 + 1)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < VALUE_COUNT * FALSE_POSITIVE_RATE * 2, "Too many values that were never added were reported: " + falsePositives);
+    }
+
+    @Test
+    void testEmptyFilterContainsNothing() {
+        IntBloomFilter empty = new IntBloomFilter(0, FALSE_POSITIVE_RATE);
+        assertFalse(empty.mightContain(1234), "An empty filter should not contain any value.");
+    }
+
+    @Test
+    void testInvalidRateThrows() {
+        assertThrows(IllegalArgumentException.class, () -> new IntBloomFilter(10, 1.0), "A rate of 1 should be rejected.");
+    }
+}
@@ -0,0 +1,75 @@
+package se.kth.iv1350.pos.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntIntHashMapTest {
+    private static final int MISSING = -1;
+    private IntIntHashMap instanceToTest;
+
+    @BeforeEach
+    void setUp() {
+        instanceToTest = new IntIntHashMap();
+    }
+
+    @AfterEach
+    void tearDown() {
+        instanceToTest = null;
+    }
+
+    @Test
+    void testGetMissingKeyReturnsMissingValue() {
+        assertEquals(MISSING, instanceToTest.get(101, MISSING), "A key that was never put should not be found.");
+        assertFalse(instanceToTest.containsKey(101), "containsKey should be false for a missing key.");
+    }
+
+    @Test
+    void testPutAndGet() {
+        instanceToTest.put(101, 7);
+        instanceToTest.put(101, 8);
+        assertEquals(8, instanceToTest.get(101, MISSING), "The latest value should be returned.");
+        assertEquals(1, instanceToTest.size(), "Replacing a value should not change the size.");
+    }
+
+    @Test
+    void testZeroKeyIsSupported() {
+        instanceToTest.put(0, 3);
+        assertEquals(3, instanceToTest.get(0, MISSING), "The key zero should be stored like any other key.");
+        assertEquals(1, instanceToTest.size(), "The key zero should be counted.");
+    }
+
+    @Test
+    void testAddTo() {
+        assertEquals(2, instanceToTest.addTo(101, 2), "addTo on a missing key should start from zero.");
+        assertEquals(5, instanceToTest.addTo(101, 3), "addTo should add to the existing value.");
+    }
+
+    @Test
+    void testGrowsBeyondInitialCapacity() {
+        int entries = 10_000;
+        for (int key = 1; key <= entries; key++) {
+            instanceToTest.put(key, key * 2);
+        }
+        assertEquals(entries, instanceToTest.size(), "All entries should be kept when the map grows.");
+        for (int key = 1; key <= entries; key++) {
+            assertEquals(key * 2, instanceToTest.get(key, MISSING), "Every entry should be found after growing.");
+        }
+    }
+
+    @Test
+    void testForEachAndClear() {
+        instanceToTest.put(0, 1);
+        instanceToTest.put(101, 2);
+        instanceToTest.put(102, 3);
+        int[] sum = new int[1];
+        instanceToTest.forEach((key, value) -> sum[0] += value);
+        assertEquals(6, sum[0], "forEach should visit every entry once.");
+
+        instanceToTest.clear();
+        assertTrue(instanceToTest.isEmpty(), "The map should be empty after clear.");
+        assertFalse(instanceToTest.containsKey(101), "Cleared keys should not be found.");
+    }
+}
@@ -4,21 +4,25 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.RevenueAggregator;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TotalRevenueFileOutputTest {
     private TotalRevenueFileOutput instanceToTest;
     private static final String ACTUAL_LOG_FILE_NAME = "total-revenue-log.txt";
+    private static final String SNAPSHOT_FILE_NAME = "total-revenue-snapshot.txt";
 
     @BeforeEach
     void setUp() throws IOException {
         Files.deleteIfExists(Paths.get(ACTUAL_LOG_FILE_NAME));
+        Files.deleteIfExists(Paths.get(SNAPSHOT_FILE_NAME));
         instanceToTest = new TotalRevenueFileOutput(); 
     }
 
@@ -28,6 +32,7 @@ public class TotalRevenueFileOutputTest {
             instanceToTest.closeLogger(); 
         }
         Files.deleteIfExists(Paths.get(ACTUAL_LOG_FILE_NAME));
+        Files.deleteIfExists(Paths.get(SNAPSHOT_FILE_NAME));
     }
 
     @Test
@@ -67,6 +72,115 @@ public class TotalRevenueFileOutputTest {
                    "Log file should correctly log zero total revenue. Content:\n" + content);
     }
 
+    @Test
+    void testWriteBehindKeepsEntriesUntilThresholdIsReached() throws IOException {
+        instanceToTest.closeLogger();
+        instanceToTest = new TotalRevenueFileOutput(1024, Duration.ofHours(1));
+        instanceToTest.newSaleWasPaid(new Amount(10.00));
+        instanceToTest.newSaleWasPaid(new Amount(5.00));
+
+        assertTrue(instanceToTest.getPendingBytes() > 0, "The entries should be kept in memory.");
+        assertEquals("", readFileContent(new File(ACTUAL_LOG_FILE_NAME)), "Nothing should be written before the threshold is reached.");
+
+        instanceToTest.closeLogger();
+        String content = readFileContent(new File(ACTUAL_LOG_FILE_NAME));
+        assertTrue(content.contains("Total Revenue: 10.00") && content.contains("Total Revenue: 15.00"),
+                   "closeLogger should write all collected entries. Content:\n" + content);
+        assertEquals(2, Files.lines(Paths.get(ACTUAL_LOG_FILE_NAME)).count(), "There should be one line per sale.");
+        instanceToTest = null;
+    }
+
+    @Test
+    void testWriteBehindFlushesWhenThresholdIsReached() throws IOException {
+        instanceToTest.closeLogger();
+        instanceToTest = new TotalRevenueFileOutput(100, Duration.ofHours(1));
+        for (int sale = 0; sale < 10; sale++) {
+            instanceToTest.newSaleWasPaid(new Amount(1.00));
+        }
+        long writtenLines = Files.lines(Paths.get(ACTUAL_LOG_FILE_NAME)).count();
+        assertTrue(writtenLines > 0 && writtenLines < 10, "Entries should be written in groups, " + writtenLines + " lines were written.");
+        assertTrue(instanceToTest.getPendingBytes() < 100, "The pending entries should stay below the threshold.");
+    }
+
+    @Test
+    void testWriteBehindFlushesAfterInterval() throws IOException, InterruptedException {
+        instanceToTest.closeLogger();
+        instanceToTest = new TotalRevenueFileOutput(1024, Duration.ofMillis(20));
+        instanceToTest.newSaleWasPaid(new Amount(42.00));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (instanceToTest.getPendingBytes() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(readFileContent(new File(ACTUAL_LOG_FILE_NAME)).contains("Total Revenue: 42.00"), "The timer should write the entry.");
+    }
+
+    @Test
+    void testSharedAggregatorTotalIsLogged() throws IOException {
+        instanceToTest.closeLogger();
+        RevenueAggregator shared = new RevenueAggregator();
+        shared.newSaleWasPaid(new Amount(8.00));
+        shared.newSaleWasPaid(new Amount(2.00));
+        instanceToTest = new TotalRevenueFileOutput(shared);
+        instanceToTest.newSaleWasPaid(new Amount(2.00));
+        String content = readFileContent(new File(ACTUAL_LOG_FILE_NAME));
+        assertTrue(content.contains("Total Revenue: 10.00"), "The shared total should be logged. Content:\n" + content);
+    }
+
+    @Test
+    void testRestartRestoresTotalFromSnapshot() throws IOException {
+        instanceToTest.closeLogger();
+        instanceToTest = new TotalRevenueFileOutput(null, 1024, Duration.ofHours(1), 100);
+        instanceToTest.newSaleWasPaid(new Amount(10.00));
+        instanceToTest.newSaleWasPaid(new Amount(5.00));
+        instanceToTest.closeLogger();
+        assertEquals(0, Files.size(Paths.get(ACTUAL_LOG_FILE_NAME)), "closeLogger should compact the log into the snapshot.");
+
+        instanceToTest = new TotalRevenueFileOutput(null, 1024, Duration.ofHours(1), 100);
+        assertEquals(new Amount(15.00), instanceToTest.getTotalRevenue(), "The total should be restored from the snapshot.");
+        instanceToTest.newSaleWasPaid(new Amount(1.00));
+        instanceToTest.flush();
+        assertTrue(readFileContent(new File(ACTUAL_LOG_FILE_NAME)).contains("Total Revenue: 16.00"),
+                   "New entries should continue from the restored total.");
+    }
+
+    @Test
+    void testLogIsCompactedAfterEntriesPerSnapshot() throws IOException {
+        instanceToTest.closeLogger();
+        instanceToTest = new TotalRevenueFileOutput(null, 1024, Duration.ofHours(1), 3);
+        instanceToTest.newSaleWasPaid(new Amount(1.00));
+        instanceToTest.newSaleWasPaid(new Amount(2.00));
+        instanceToTest.flush();
+        assertEquals(2, Files.lines(Paths.get(ACTUAL_LOG_FILE_NAME)).count(), "The log should not be compacted before the third entry.");
+
+        instanceToTest.newSaleWasPaid(new Amount(3.00));
+        assertEquals(0, Files.size(Paths.get(ACTUAL_LOG_FILE_NAME)), "The third entry should compact the log.");
+        assertTrue(readFileContent(new File(SNAPSHOT_FILE_NAME)).startsWith("600;0"), "The snapshot should hold the total in minor units.");
+    }
+
+    @Test
+    void testTailAfterSnapshotIsRestoredAndPartialEntryRemoved() throws IOException {
+        instanceToTest.closeLogger();
+        Files.writeString(Paths.get(SNAPSHOT_FILE_NAME), "1000;0\n");
+        String completeEntries = "2026-01-01T10:00:00: Total Revenue: 12.00\n"
+                                 + "2026-01-01T10:00:01: Total Revenue: 20.50\n";
+        Files.writeString(Paths.get(ACTUAL_LOG_FILE_NAME), completeEntries + "2026-01-01T10:00:02: Total Rev");
+
+        RevenueAggregator shared = new RevenueAggregator();
+        instanceToTest = new TotalRevenueFileOutput(shared, 1024, Duration.ofHours(1), 100);
+        assertEquals(new Amount(20.50), instanceToTest.getTotalRevenue(), "The last complete entry should be restored.");
+        assertEquals(new Amount(20.50), shared.getTotalRevenue(), "The restored total should be added to the shared aggregator.");
+        assertEquals(completeEntries, readFileContent(new File(ACTUAL_LOG_FILE_NAME)), "The partial entry should be removed.");
+    }
+
+    @Test
+    void testSnapshotPastEndOfLogMeansLogWasCompacted() throws IOException {
+        instanceToTest.closeLogger();
+        Files.writeString(Paths.get(SNAPSHOT_FILE_NAME), "700;5000\n");
+        Files.writeString(Paths.get(ACTUAL_LOG_FILE_NAME), "");
+        instanceToTest = new TotalRevenueFileOutput(null, 1024, Duration.ofHours(1), 100);
+        assertEquals(new Amount(7.00), instanceToTest.getTotalRevenue(), "The snapshot total should be used when the log was compacted.");
+    }
+
     private String readFileContent(File file) throws IOException {
         return new String(Files.readAllBytes(Paths.get(file.getPath())));
     }
@@ -4,7 +4,9 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import se.kth.iv1350.pos.model.Amount;
+import se.kth.iv1350.pos.model.RevenueAggregator;
 import java.io.ByteArrayOutputStream;
+import java.time.Duration;
 import java.io.PrintStream;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -61,4 +63,53 @@ public class TotalRevenueViewTest {
         assertTrue(output.contains("Current Total Revenue: 25.00"), 
                    "Adding a zero amount sale should not change the existing total revenue.");
     }
+
+    @Test
+    void testSharedAggregatorTotalIsShown() {
+        RevenueAggregator shared = new RevenueAggregator();
+        shared.newSaleWasPaid(new Amount(30.0));
+        shared.newSaleWasPaid(new Amount(12.0));
+        TotalRevenueView sharedView = new TotalRevenueView(shared);
+        sharedView.newSaleWasPaid(new Amount(12.0));
+        assertTrue(outContent.toString().contains("Current Total Revenue: 42.00"),
+                   "The view should show the shared total, including sales from other registers.");
+    }
+
+    @Test
+    void testDefaultModePrintsEverySale() {
+        instanceToTest.newSaleWasPaid(new Amount(1.0));
+        instanceToTest.newSaleWasPaid(new Amount(1.0));
+        assertEquals(2, instanceToTest.getRenderedFrameCount(), "The default mode should show every sale.");
+    }
+
+    @Test
+    void testRateLimitedModeCoalescesUpdates() {
+        TotalRevenueView limitedView = new TotalRevenueView(null, Duration.ofHours(1));
+        for (int sale = 0; sale < 100; sale++) {
+            limitedView.newSaleWasPaid(new Amount(1.0));
+        }
+        assertEquals(0, limitedView.getRenderedFrameCount(), "Nothing should be shown before the first refresh.");
+        assertEquals("", outContent.toString(), "Nothing should be printed before the first refresh.");
+
+        limitedView.close();
+        assertEquals(1, limitedView.getRenderedFrameCount(), "close should show the latest total once.");
+        String output = outContent.toString();
+        assertTrue(output.contains("Current Total Revenue: 100.00"), "The latest total should be shown. Output:\n" + output);
+        assertFalse(output.contains("Current Total Revenue: 99.00"), "Intermediate totals should be dropped.");
+    }
+
+    @Test
+    void testRateLimitedModeRefreshesPeriodically() throws InterruptedException {
+        RevenueAggregator shared = new RevenueAggregator();
+        TotalRevenueView limitedView = new TotalRevenueView(shared, Duration.ofMillis(10));
+        shared.newSaleWasPaid(new Amount(25.0));
+        limitedView.newSaleWasPaid(new Amount(25.0));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (limitedView.getRenderedFrameCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        limitedView.close();
+        assertEquals(1, limitedView.getRenderedFrameCount(), "One frame should be shown for one change.");
+        assertTrue(outContent.toString().contains("Current Total Revenue: 25.00"), "The shared total should be shown.");
+    }
 }